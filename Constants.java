@@ -18,6 +18,10 @@ public class Constants {
     public static final String AEM_PAGE = "cq:Page";
     public static final String PN_PAGE_TAGS = "jcr:content/cq:tags";
     public static final String PN_PAGE_TEMPLATE = "jcr:content/cq:template";
+    public static final String PN_SOCIAL_METADATA_SNAPSHOT = "socialMetadata";
+    public static final String PN_REDIRECT_TARGET = "redirectTarget";
+    public static final String SOCIAL_METADATA_SUBSERVICE = "social-metadata";
+    public static final String SOCIAL_SELECTOR = "social";
 
     /*~~~~~~~~~~~~~~~~~ Profiles ~~~~~~~~~~~~~~~~~*/
 
@@ -50,6 +54,7 @@ public class Constants {
     /* Facebook */
     public final static String FACEBOOK_APP_ID = "258306851682396";
     public final static String FACEBOOK_URL = "https://www.facebook.com/HutchinsonCenter";
+    public final static int OG_DESCRIPTION_MAX_LENGTH = 300;
 
 	/* Twitter */
 	public final static String TWITTER_BASE = "twitter.com/intent/tweet";
@@ -61,6 +66,7 @@ public class Constants {
     public final static String PN_TWITTER_RELATED_USERS = "related";
     public final static String TWITTER_CARD_TYPE = "summary";
     public final static String TWITTER_CARD_TYPE_IMAGE = "summary_large_image";
+    public final static int TWITTER_DESCRIPTION_MAX_LENGTH = 200;
 	
 	/* LinkedIn */
 	public final static String LINKEDIN_BASE = "www.linkedin.com/shareArticle";
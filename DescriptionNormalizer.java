@@ -0,0 +1,273 @@
+package org.fhcrc.www.core;
+
+/**
+ * Cleans up an author-entered description for social media: strips HTML
+ * tags, decodes character entities, collapses whitespace and shortens the
+ * text at a word boundary. One scan over the input produces the text for
+ * every platform; each platform's version is a prefix of the same cleaned
+ * text, cut to its own limit and ended with an ellipsis.
+ */
+public final class DescriptionNormalizer {
+
+	private static final char ELLIPSIS = '\u2026';
+	private static final int MAX_ENTITY_LENGTH = 10;
+
+	private static final String[] ENTITY_NAMES = {
+			"amp", "lt", "gt", "quot", "apos", "nbsp", "hellip", "mdash", "ndash",
+			"lsquo", "rsquo", "ldquo", "rdquo", "copy", "reg", "trade", "middot", "bull"
+	};
+	private static final char[] ENTITY_VALUES = {
+			'&', '<', '>', '"', '\'', ' ', ELLIPSIS, '\u2014', '\u2013',
+			'\u2018', '\u2019', '\u201C', '\u201D', '\u00A9', '\u00AE', '\u2122', '\u00B7', '\u2022'
+	};
+
+	private DescriptionNormalizer() {
+	}
+
+	/**
+	 * The cleaned description for Open Graph and for Twitter.
+	 */
+	public static final class Descriptions {
+
+		private final String openGraph;
+		private final String twitter;
+
+		Descriptions(String openGraph, String twitter) {
+
+			this.openGraph = openGraph;
+			this.twitter = twitter;
+
+		}
+
+		public String getOpenGraph() {
+
+			return openGraph;
+
+		}
+
+		public String getTwitter() {
+
+			return twitter;
+
+		}
+
+	}
+
+	/**
+	 * @param ogLimit the longest og:description, in characters, including the ellipsis
+	 * @param twitterLimit the longest twitter:description, in characters, including the ellipsis
+	 * @return the cleaned descriptions, or null values for a null description
+	 */
+	public static Descriptions normalize(String description, int ogLimit, int twitterLimit) {
+
+		if (description == null) {
+
+			return new Descriptions(null, null);
+
+		}
+
+		int limit = Math.max(ogLimit, twitterLimit);
+		int length = description.length();
+		StringBuilder out = new StringBuilder(Math.min(length, limit + 1));
+		// The last space that a shortened description for each platform could end before
+		int ogCut = -1;
+		int twitterCut = -1;
+		boolean pendingSpace = false;
+
+		// Reading one character past the longest limit is enough to know it must be shortened
+		for (int i = 0; i < length && out.length() <= limit; i++) {
+
+			char c = description.charAt(i);
+
+			if (c == '<' && isTagStart(description, i + 1)) {
+
+				int end = description.indexOf('>', i + 1);
+
+				if (end > 0) {
+
+					// A tag separates words, e.g. <br> or </p><p>
+					pendingSpace = true;
+					i = end;
+					continue;
+
+				}
+
+			} else if (c == '&') {
+
+				int end = findEntityEnd(description, i);
+
+				if (end > 0) {
+
+					c = decodeEntity(description, i + 1, end);
+
+					if (c != 0) {
+
+						i = end;
+
+					} else {
+
+						c = '&';
+
+					}
+
+				}
+
+			}
+
+			if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+
+				pendingSpace = true;
+				continue;
+
+			}
+
+			if (pendingSpace && out.length() > 0) {
+
+				int space = out.length();
+
+				if (space < ogLimit) {
+					ogCut = space;
+				}
+
+				if (space < twitterLimit) {
+					twitterCut = space;
+				}
+
+				out.append(' ');
+
+			}
+
+			pendingSpace = false;
+			out.append(c);
+
+		}
+
+		String text = out.toString();
+
+		return new Descriptions(shorten(text, ogLimit, ogCut), shorten(text, twitterLimit, twitterCut));
+
+	}
+
+	/**
+	 * Cuts the text before the last space that leaves room for the ellipsis,
+	 * or in the middle of the word if there is no such space.
+	 */
+	private static String shorten(String text, int limit, int lastSpace) {
+
+		if (text.length() <= limit) {
+
+			return text;
+
+		}
+
+		int end = lastSpace > 0 ? lastSpace : Math.max(0, limit - 1);
+
+		// Do not leave a dangling comma or colon before the ellipsis
+		while (end > 0 && isTrailingPunctuation(text.charAt(end - 1))) {
+
+			end--;
+
+		}
+
+		return new StringBuilder(end + 1).append(text, 0, end).append(ELLIPSIS).toString();
+
+	}
+
+	/**
+	 * A '<' only starts a tag when followed by a letter, '/' or '!', so text
+	 * such as "a < b" is kept.
+	 */
+	private static boolean isTagStart(String text, int index) {
+
+		if (index >= text.length()) {
+
+			return false;
+
+		}
+
+		char c = text.charAt(index);
+		return Character.isLetter(c) || c == '/' || c == '!';
+
+	}
+
+	private static boolean isTrailingPunctuation(char c) {
+
+		return c == ',' || c == ';' || c == ':' || c == '-' || c == '\u2013' || c == '\u2014';
+
+	}
+
+	/**
+	 * @return the index of the ';' ending the entity starting at start, or -1
+	 */
+	private static int findEntityEnd(String text, int start) {
+
+		int max = Math.min(text.length(), start + MAX_ENTITY_LENGTH + 2);
+
+		for (int i = start + 1; i < max; i++) {
+
+			char c = text.charAt(i);
+
+			if (c == ';') {
+
+				return i > start + 1 ? i : -1;
+
+			}
+
+			if (!Character.isLetterOrDigit(c) && c != '#') {
+
+				return -1;
+
+			}
+
+		}
+
+		return -1;
+
+	}
+
+	/**
+	 * @return the character for the entity name between start and end, or 0
+	 * if it is not one we know. Numeric entities outside the Basic
+	 * Multilingual Plane are not decoded.
+	 */
+	private static char decodeEntity(String text, int start, int end) {
+
+		if (text.charAt(start) == '#') {
+
+			try {
+
+				boolean hex = end > start + 1 && (text.charAt(start + 1) == 'x' || text.charAt(start + 1) == 'X');
+				int codePoint = hex
+						? Integer.parseInt(text.substring(start + 2, end), 16)
+						: Integer.parseInt(text.substring(start + 1, end));
+
+				return codePoint > 0 && codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT
+						&& !Character.isSurrogate((char) codePoint) ? (char) codePoint : 0;
+
+			} catch (NumberFormatException e) {
+
+				return 0;
+
+			}
+
+		}
+
+		int nameLength = end - start;
+
+		for (int i = 0; i < ENTITY_NAMES.length; i++) {
+
+			String name = ENTITY_NAMES[i];
+
+			if (name.length() == nameLength && text.regionMatches(start, name, 0, nameLength)) {
+
+				return ENTITY_VALUES[i];
+
+			}
+
+		}
+
+		return 0;
+
+	}
+
+}
@@ -0,0 +1,134 @@
+package org.fhcrc.www.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The meta tag properties the social media helper knows how to write. Pages
+ * store their metadata in arrays indexed through these constants rather
+ * than in hash maps keyed by the property names. Properties whose values
+ * repeat from page to page, such as the site name or the Facebook app id,
+ * are shared so a cache full of pages holds one copy of each value.
+ */
+public enum MetadataProperty {
+
+	OG_URL("og:url", false, false),
+	OG_TITLE("og:title", false, true),
+	OG_DESCRIPTION("og:description", false, true),
+	OG_SITE_NAME("og:site_name", true, false),
+	OG_LOCALE("og:locale", true, false),
+	OG_TYPE("og:type", true, false),
+	OG_IMAGE("og:image", false, false),
+	OG_IMAGE_WIDTH("og:image:width", true, false),
+	OG_IMAGE_HEIGHT("og:image:height", true, false),
+	OG_IMAGE_TYPE("og:image:type", true, false),
+	FB_APP_ID("fb:app_id", true, false),
+	ARTICLE_PUBLISHER("article:publisher", true, false),
+	ARTICLE_PUBLISHED_TIME("article:published_time", false, false),
+	PROFILE_FIRST_NAME("profile:first_name", false, true),
+	PROFILE_LAST_NAME("profile:last_name", false, true),
+	TWITTER_CARD("twitter:card", true, true),
+	TWITTER_SITE("twitter:site", true, false),
+	TWITTER_TITLE("twitter:title", false, true),
+	TWITTER_DESCRIPTION("twitter:description", false, true),
+	TWITTER_IMAGE("twitter:image", false, false);
+
+	/* Past this many distinct values, new ones are kept as they are */
+	private static final int MAX_SHARED_VALUES = 1024;
+
+	private final String name;
+	private final boolean shared;
+	private final boolean pageContent;
+
+	MetadataProperty(String name, boolean shared, boolean pageContent) {
+
+		this.name = name;
+		this.shared = shared;
+		this.pageContent = pageContent;
+
+	}
+
+	/**
+	 * @return the property attribute of the meta tag, e.g. og:title
+	 */
+	public String getName() {
+
+		return name;
+
+	}
+
+	/**
+	 * @return true if the value is computed from the page's own properties
+	 * alone, and not from the request, URL mapping, site settings, DAM
+	 * assets or the instance's time zone, so it is the same wherever the
+	 * page is rendered
+	 */
+	public boolean isPageContent() {
+
+		return pageContent;
+
+	}
+
+	/**
+	 * @return the property with the given meta tag name, or null if it is
+	 * not one of the known properties
+	 */
+	public static MetadataProperty forName(String name) {
+
+		return name == null ? null : Lookup.BY_NAME.get(name);
+
+	}
+
+	/**
+	 * @return the shared copy of the value if this property's values repeat
+	 * across pages, otherwise the value itself
+	 */
+	public String share(String value) {
+
+		if (!shared || value == null) {
+
+			return value;
+
+		}
+
+		String existing = Lookup.SHARED_VALUES.get(value);
+
+		if (existing != null) {
+
+			return existing;
+
+		}
+
+		if (Lookup.SHARED_VALUES.size() >= MAX_SHARED_VALUES) {
+
+			return value;
+
+		}
+
+		existing = Lookup.SHARED_VALUES.putIfAbsent(value, value);
+		return existing == null ? value : existing;
+
+	}
+
+	/* Enum constants are created before the enum's own static fields */
+	private static final class Lookup {
+
+		private static final Map<String, MetadataProperty> BY_NAME = new HashMap<String, MetadataProperty>();
+
+		private static final ConcurrentMap<String, String> SHARED_VALUES = new ConcurrentHashMap<String, String>();
+
+		static {
+
+			for (MetadataProperty property : values()) {
+
+				BY_NAME.put(property.name, property);
+
+			}
+
+		}
+
+	}
+
+}
@@ -0,0 +1,134 @@
+package org.fhcrc.www.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * One entry of a composite multifield, holding only the properties that
+ * were asked for. Values are stored by the position of their property in
+ * the requested property list, and the property names are shared by every
+ * entry read in the same pass. The Map view makes entries usable from HTL
+ * (e.g. ${item.title}); like the maps returned by
+ * {@link Utils#getMultiFieldValues}, it only contains properties that are
+ * present on the entry.
+ */
+public final class MultiFieldValue extends AbstractMap<String, String> {
+
+	private final String[] names;
+	private final String[] values;
+	private final int size;
+
+	MultiFieldValue(String[] names, String[] values, int size) {
+
+		this.names = names;
+		this.values = values;
+		this.size = size;
+
+	}
+
+	/**
+	 * @return the value of the property at this position in the requested
+	 * property list, or null if the entry does not have it
+	 */
+	public String get(int index) {
+
+		return values[index];
+
+	}
+
+	@Override
+	public String get(Object key) {
+
+		for (int i = 0; i < names.length; i++) {
+
+			if (names[i].equals(key)) {
+
+				return values[i];
+
+			}
+
+		}
+
+		return null;
+
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+
+		return get(key) != null;
+
+	}
+
+	@Override
+	public int size() {
+
+		return size;
+
+	}
+
+	@Override
+	public Set<Entry<String, String>> entrySet() {
+
+		return new AbstractSet<Entry<String, String>>() {
+
+			@Override
+			public Iterator<Entry<String, String>> iterator() {
+
+				return new Iterator<Entry<String, String>>() {
+
+					private int next = advance(0);
+
+					private int advance(int from) {
+
+						while (from < values.length && values[from] == null) {
+
+							from++;
+
+						}
+
+						return from;
+
+					}
+
+					@Override
+					public boolean hasNext() {
+
+						return next < values.length;
+
+					}
+
+					@Override
+					public Entry<String, String> next() {
+
+						if (!hasNext()) {
+
+							throw new NoSuchElementException();
+
+						}
+
+						Entry<String, String> entry = new SimpleImmutableEntry<String, String>(names[next], values[next]);
+						next = advance(next + 1);
+						return entry;
+
+					}
+
+				};
+
+			}
+
+			@Override
+			public int size() {
+
+				return size;
+
+			}
+
+		};
+
+	}
+
+}
@@ -0,0 +1,166 @@
+package org.fhcrc.www.core;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable character trie over repository paths that finds the value
+ * of the longest configured path at or above a given path. A configured
+ * path only matches whole segments, so /content/site matches
+ * /content/site/en but not /content/site2. Lookups walk the path once and
+ * allocate nothing.
+ */
+final class PathTrie<V> {
+
+	private static final char[] NO_KEYS = new char[0];
+
+	private final Node<V> root;
+
+	/**
+	 * @param values values keyed by path, without a trailing slash
+	 */
+	PathTrie(Map<String, V> values) {
+
+		MutableNode<V> builder = new MutableNode<V>();
+
+		for (Map.Entry<String, V> entry : values.entrySet()) {
+
+			String path = entry.getKey();
+			MutableNode<V> node = builder;
+
+			for (int i = 0; i < path.length(); i++) {
+
+				node = node.child(path.charAt(i));
+
+			}
+
+			node.value = entry.getValue();
+
+		}
+
+		root = builder.freeze();
+
+	}
+
+	/**
+	 * @return the value of the longest configured path that is path itself
+	 * or one of its ancestors, or defaultValue if there is none
+	 */
+	V longestPrefix(String path, V defaultValue) {
+
+		if (path == null) {
+
+			return defaultValue;
+
+		}
+
+		V best = defaultValue;
+		Node<V> node = root;
+		int length = path.length();
+
+		for (int i = 0; i < length; i++) {
+
+			char c = path.charAt(i);
+
+			if (c == '/' && node.value != null) {
+
+				best = node.value;
+
+			}
+
+			node = node.child(c);
+
+			if (node == null) {
+
+				return best;
+
+			}
+
+		}
+
+		return node.value != null ? node.value : best;
+
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> Node<V>[] newNodes(int length) {
+
+		// Generic arrays cannot be created directly; the nodes never leave the trie
+		return (Node<V>[]) new Node<?>[length];
+
+	}
+
+	private static final class Node<V> {
+
+		private final char[] keys;
+		private final Node<V>[] children;
+		private final V value;
+
+		Node(char[] keys, Node<V>[] children, V value) {
+
+			this.keys = keys;
+			this.children = children;
+			this.value = value;
+
+		}
+
+		Node<V> child(char c) {
+
+			int index = Arrays.binarySearch(keys, c);
+			return index < 0 ? null : children[index];
+
+		}
+
+	}
+
+	/**
+	 * Used while building; frozen into sorted, array-backed nodes.
+	 */
+	private static final class MutableNode<V> {
+
+		private final TreeMap<Character, MutableNode<V>> children = new TreeMap<Character, MutableNode<V>>();
+		private V value;
+
+		MutableNode<V> child(char c) {
+
+			MutableNode<V> child = children.get(c);
+
+			if (child == null) {
+
+				child = new MutableNode<V>();
+				children.put(c, child);
+
+			}
+
+			return child;
+
+		}
+
+		Node<V> freeze() {
+
+			if (children.isEmpty()) {
+
+				return new Node<V>(NO_KEYS, PathTrie.<V>newNodes(0), value);
+
+			}
+
+			char[] keys = new char[children.size()];
+			Node<V>[] frozen = newNodes(children.size());
+			int i = 0;
+
+			for (Map.Entry<Character, MutableNode<V>> child : children.entrySet()) {
+
+				keys[i] = child.getKey();
+				frozen[i] = child.getValue().freeze();
+				i++;
+
+			}
+
+			return new Node<V>(keys, frozen, value);
+
+		}
+
+	}
+
+}
@@ -0,0 +1,168 @@
+package org.fhcrc.www.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The share links offered for a page. Each network's URL is compiled once
+ * from a template into constant, already-encoded pieces and the positions
+ * where the page's URL, title and description go, so building a link only
+ * appends strings and percent-encodes the page's own values. The site name
+ * and Twitter handle come from the page's site, see {@link SiteProfile}.
+ */
+public enum ShareLink {
+
+	TWITTER("twitter", Constants.SECURE_URL_PREFIX + Constants.TWITTER_BASE + Constants.URL_PARAMETER_PREFIX
+			+ Constants.PN_TWITTER_TWEET_TEXT + Constants.URL_PARAMETER_EQUALS + "{title}" + Constants.URL_PARAMETER_DELIMITER
+			+ Constants.PN_TWITTER_URL + Constants.URL_PARAMETER_EQUALS + "{url}" + Constants.URL_PARAMETER_DELIMITER
+			+ Constants.PN_TWITTER_USERNAME + Constants.URL_PARAMETER_EQUALS + "{twitter}"),
+
+	LINKEDIN("linkedin", Constants.SECURE_URL_PREFIX + Constants.LINKEDIN_BASE + Constants.URL_PARAMETER_PREFIX
+			+ Constants.PN_LINKEDIN_MINI + Constants.URL_PARAMETER_DELIMITER
+			+ Constants.PN_LINKEDIN_URL + Constants.URL_PARAMETER_EQUALS + "{url}" + Constants.URL_PARAMETER_DELIMITER
+			+ Constants.PN_LINKEDIN_TITLE + Constants.URL_PARAMETER_EQUALS + "{title}" + Constants.URL_PARAMETER_DELIMITER
+			+ Constants.PN_LINKEDIN_SUMMARY + Constants.URL_PARAMETER_EQUALS + "{description}" + Constants.URL_PARAMETER_DELIMITER
+			+ Constants.PN_LINKEDIN_SOURCE + Constants.URL_PARAMETER_EQUALS + "{site}"),
+
+	EMAIL("email", Constants.MAILTO_URL_PREFIX + Constants.URL_PARAMETER_PREFIX
+			+ Constants.MAILTO_SUBJECT + Constants.URL_PARAMETER_EQUALS + "{title}" + Constants.URL_PARAMETER_DELIMITER
+			+ Constants.MAILTO_BODY + Constants.URL_PARAMETER_EQUALS + "{description}%0A%0A{url}");
+
+	private static final int URL = 0;
+	private static final int TITLE = 1;
+	private static final int DESCRIPTION = 2;
+	private static final int SITE_NAME = 3;
+	private static final int TWITTER_USER_NAME = 4;
+
+	private final String key;
+	/* literals[i] comes before the value at fields[i]; the last literal ends the link */
+	private final String[] literals;
+	private final int[] fields;
+	private final int literalLength;
+
+	ShareLink(String key, String template) {
+
+		this.key = key;
+
+		List<String> literalList = new ArrayList<String>();
+		List<Integer> fieldList = new ArrayList<Integer>();
+		int start = 0;
+		int length = 0;
+
+		while (true) {
+
+			int next = -1;
+			int field = -1;
+
+			for (int i = 0; i < Placeholders.ALL.length; i++) {
+
+				int index = template.indexOf(Placeholders.ALL[i], start);
+
+				if (index >= 0 && (next < 0 || index < next)) {
+
+					next = index;
+					field = i;
+
+				}
+
+			}
+
+			String literal = template.substring(start, next < 0 ? template.length() : next);
+			literalList.add(literal);
+			length += literal.length();
+
+			if (next < 0) {
+
+				break;
+
+			}
+
+			fieldList.add(field);
+			start = next + Placeholders.ALL[field].length();
+
+		}
+
+		this.literals = literalList.toArray(new String[literalList.size()]);
+		this.fields = new int[fieldList.size()];
+
+		for (int i = 0; i < fields.length; i++) {
+
+			fields[i] = fieldList.get(i);
+
+		}
+
+		this.literalLength = length;
+
+	}
+
+	/**
+	 * @return the name of the link, e.g. for ${socialMedia.shareLinks.twitter}
+	 */
+	public String getKey() {
+
+		return key;
+
+	}
+
+	/**
+	 * Builds the share link for a page from its canonical URL, title and
+	 * description and its site's name and Twitter handle (without the @).
+	 * Null values are left empty.
+	 */
+	public String build(String url, String title, String description, String siteName, String twitterUserName) {
+
+		int length = literalLength;
+
+		for (int field : fields) {
+
+			String value = value(field, url, title, description, siteName, twitterUserName);
+			// Most characters in titles and descriptions are left as they are
+			length += value == null ? 0 : value.length() + (value.length() >> 2);
+
+		}
+
+		return appendTo(new StringBuilder(length), url, title, description, siteName, twitterUserName).toString();
+
+	}
+
+	/**
+	 * Appends the share link for a page to sb.
+	 */
+	public StringBuilder appendTo(StringBuilder sb, String url, String title, String description, String siteName, String twitterUserName) {
+
+		for (int i = 0; i < fields.length; i++) {
+
+			sb.append(literals[i]);
+			Utils.percentEncode(value(fields[i], url, title, description, siteName, twitterUserName), sb);
+
+		}
+
+		return sb.append(literals[fields.length]);
+
+	}
+
+	private static String value(int field, String url, String title, String description, String siteName, String twitterUserName) {
+
+		switch (field) {
+			case URL:
+				return url;
+			case TITLE:
+				return title;
+			case DESCRIPTION:
+				return description;
+			case SITE_NAME:
+				return siteName;
+			default:
+				return twitterUserName;
+		}
+
+	}
+
+	/* Enum constructors cannot read the enum's own static arrays, so they are kept here */
+	private static final class Placeholders {
+
+		static final String[] ALL = {"{url}", "{title}", "{description}", "{site}", "{twitter}"};
+
+	}
+
+}
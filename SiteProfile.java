@@ -0,0 +1,163 @@
+package org.fhcrc.www.core;
+
+/**
+ * The settings for one site hosted on the instance: its domain and the
+ * accounts and names used in its social media metadata. Profiles are
+ * immutable, and every derived value (such as the URL prefix) is built
+ * once when the profile is created.
+ *
+ * The fingerprint sums up every setting, so cached metadata and URLs that
+ * were built with a profile can record it and be told apart from those
+ * built with a changed configuration, even across restarts.
+ */
+public final class SiteProfile {
+
+	/**
+	 * The www.fredhutch.org site, used for any path that no configured site covers.
+	 */
+	public static final SiteProfile DEFAULT = new SiteProfile(Constants.INTERNAL_LINK_PREFIX, Constants.WWW_DOMAIN,
+			Constants.ORGANIZATION_NAME, Constants.FACEBOOK_APP_ID, Constants.FACEBOOK_URL,
+			Constants.TWITTER_USER_NAME, Constants.WWW_LOCALE);
+
+	private final String contentRoot;
+	private final String domain;
+	private final String urlPrefix;
+	private final String organizationName;
+	private final String facebookAppId;
+	private final String facebookUrl;
+	private final String twitterUserName;
+	private final String twitterSite;
+	private final String locale;
+	private final long fingerprint;
+
+	public SiteProfile(String contentRoot, String domain, String organizationName, String facebookAppId,
+			String facebookUrl, String twitterUserName, String locale) {
+
+		this.contentRoot = contentRoot;
+		this.domain = domain;
+		this.urlPrefix = Constants.SECURE_URL_PREFIX + domain;
+		this.organizationName = organizationName;
+		this.facebookAppId = facebookAppId;
+		this.facebookUrl = facebookUrl;
+		this.twitterUserName = twitterUserName;
+		this.twitterSite = "@" + twitterUserName;
+		this.locale = locale;
+		this.fingerprint = fingerprint(contentRoot, domain, organizationName, facebookAppId, facebookUrl,
+				twitterUserName, locale);
+
+	}
+
+	/**
+	 * @return the content path the site lives under, e.g. /content/fredhutch
+	 */
+	public String getContentRoot() {
+
+		return contentRoot;
+
+	}
+
+	/**
+	 * @return the site's host name, e.g. www.fredhutch.org
+	 */
+	public String getDomain() {
+
+		return domain;
+
+	}
+
+	/**
+	 * @return the scheme and host that absolute URLs on the site start with,
+	 * e.g. https://www.fredhutch.org
+	 */
+	public String getUrlPrefix() {
+
+		return urlPrefix;
+
+	}
+
+	public String getOrganizationName() {
+
+		return organizationName;
+
+	}
+
+	public String getFacebookAppId() {
+
+		return facebookAppId;
+
+	}
+
+	/**
+	 * @return the site's Facebook page, used as the article publisher
+	 */
+	public String getFacebookUrl() {
+
+		return facebookUrl;
+
+	}
+
+	/**
+	 * @return the Twitter handle without the @
+	 */
+	public String getTwitterUserName() {
+
+		return twitterUserName;
+
+	}
+
+	/**
+	 * @return the Twitter handle with the @, as used in twitter:site
+	 */
+	public String getTwitterSite() {
+
+		return twitterSite;
+
+	}
+
+	/**
+	 * @return the Open Graph locale, e.g. en_US
+	 */
+	public String getLocale() {
+
+		return locale;
+
+	}
+
+	/**
+	 * @return a hash of every setting of the profile, stable across restarts
+	 */
+	public long getFingerprint() {
+
+		return fingerprint;
+
+	}
+
+	/**
+	 * 64 bit FNV-1a over the settings, each followed by a separator so that
+	 * moving characters from one setting to the next changes the result.
+	 */
+	private static long fingerprint(String... settings) {
+
+		long hash = 0xcbf29ce484222325L;
+
+		for (String setting : settings) {
+
+			if (setting != null) {
+
+				for (int i = 0; i < setting.length(); i++) {
+
+					hash = (hash ^ setting.charAt(i)) * 0x100000001b3L;
+
+				}
+
+			}
+
+			hash = (hash ^ 0xffff) * 0x100000001b3L;
+
+		}
+
+		return hash;
+
+	}
+
+}
@@ -0,0 +1,66 @@
+package org.fhcrc.www.core;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the site a content path belongs to among a fixed set of site
+ * profiles. The profiles are compiled into a path trie once, so a lookup
+ * reads no configuration and allocates nothing. Paths outside every site
+ * get {@link SiteProfile#DEFAULT}.
+ */
+public final class SiteProfiles {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(SiteProfiles.class);
+
+	private final PathTrie<SiteProfile> trie;
+
+	/**
+	 * @param profiles the configured sites; when two share a content root,
+	 * the first one is used
+	 */
+	public SiteProfiles(Collection<SiteProfile> profiles) {
+
+		Map<String, SiteProfile> byRoot = new LinkedHashMap<String, SiteProfile>();
+
+		for (SiteProfile profile : profiles) {
+
+			String root = stripTrailingSlash(profile.getContentRoot());
+
+			if (byRoot.containsKey(root)) {
+
+				LOGGER.warn("More than one site is configured for {}, using the first one", root);
+				continue;
+
+			}
+
+			byRoot.put(root, profile);
+
+		}
+
+		trie = new PathTrie<SiteProfile>(byRoot);
+		LOGGER.debug("Compiled site profiles for {}", byRoot.keySet());
+
+	}
+
+	/**
+	 * @return the profile of the site with the longest content root at or
+	 * above path, or the default profile
+	 */
+	public SiteProfile forPath(String path) {
+
+		return trie.longestPrefix(path, SiteProfile.DEFAULT);
+
+	}
+
+	private static String stripTrailingSlash(String path) {
+
+		return path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+
+	}
+
+}
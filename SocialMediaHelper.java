@@ -1,7 +1,11 @@
 package org.fhcrc.www.core.components;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
+import com.day.cq.wcm.api.Page;
+
 public interface SocialMediaHelper {
 	
 	/**
@@ -9,4 +13,37 @@ public interface SocialMediaHelper {
 	 */
     Map<String, String> getMetadata();
 
+	/**
+	 * @return the social media metadata for the current page as a block of
+	 * already-escaped meta tags, one per line
+	 */
+    String getMetaTags();
+
+	/**
+	 * @return share URLs for the current page keyed by network (twitter,
+	 * linkedin, email), built from its canonical URL, title and description
+	 */
+    Map<String, String> getShareLinks();
+
+	/**
+	 * @return schema.org structured data for the current page as HTML-safe
+	 * JSON-LD
+	 */
+    String getJsonLd();
+
+	/**
+	 * Returns the metadata of several pages at once, e.g. for a listing of
+	 * teasers. Canonical URLs are mapped in one pass and cached pages are
+	 * not rebuilt.
+	 * @return one metadata map per page, in the same order; null pages, and
+	 * pages whose metadata could not be built, get an empty map
+	 */
+    List<Map<String, String>> getMetadata(Collection<Page> pages);
+
+	/**
+	 * Like {@link #getMetadata(Collection)}, optionally building the pages
+	 * that are not cached on several threads.
+	 */
+    List<Map<String, String>> getMetadata(Collection<Page> pages, boolean parallel);
+
 }
@@ -1,8 +1,17 @@
 package org.fhcrc.www.core;
 
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
@@ -12,6 +21,8 @@ import com.day.cq.wcm.api.Page;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.fhcrc.www.core.metrics.SocialMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,13 +31,53 @@ public class Utils {
 	public static int PAGE_TITLE_LEVEL = 0;
 	public static int NAV_TITLE_LEVEL = 1;
 	private final static Logger LOGGER = LoggerFactory.getLogger(Utils.class);
+
+	private static final String PUBLICATION_DATE_PATTERN = "yyyy-MM-dd'T'HH:mmZ";
+	private static final ZoneId PUBLICATION_DATE_ZONE = ZoneId.systemDefault();
+	private static final DateTimeFormatter PUBLICATION_DATE_FORMATTER =
+			DateTimeFormatter.ofPattern(PUBLICATION_DATE_PATTERN).withZone(PUBLICATION_DATE_ZONE);
+	/* Dates in this range format identically with java.time and SimpleDateFormat */
+	private static final long MIN_FAST_FORMAT_MILLIS = getFastFormatStart(PUBLICATION_DATE_ZONE);
+	private static final long MAX_FAST_FORMAT_MILLIS = 253402300800000L;
+	private static final int FORMATTED_DATE_CACHE_SIZE = 1024;
+	private static final FormattedDate[] FORMATTED_DATES = new FormattedDate[FORMATTED_DATE_CACHE_SIZE];
+
+	private static final int LINK_DIGITS = 10;
+	private static final int MAX_DISPLAY_DIGITS = 11;
+	private static final int PHONE_LINK_LENGTH = 19;
+
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+	/* ASCII characters that are left as-is by percentEncode (RFC 3986 unreserved) */
+	private static final boolean[] UNRESERVED = new boolean[128];
+
+	static {
+
+		for (char c = 'a'; c <= 'z'; c++) {
+			UNRESERVED[c] = true;
+		}
+
+		for (char c = 'A'; c <= 'Z'; c++) {
+			UNRESERVED[c] = true;
+		}
+
+		for (char c = '0'; c <= '9'; c++) {
+			UNRESERVED[c] = true;
+		}
+
+		UNRESERVED['-'] = true;
+		UNRESERVED['.'] = true;
+		UNRESERVED['_'] = true;
+		UNRESERVED['~'] = true;
+
+	}
 	
 	/**
 	 * Returns a valid URL for use in HTML attributes (e.g. an anchor's
 	 * href attribute). If an AEM is passed in, it adds '.html' to
 	 * the end of the path. If a non-aem path is passed in with no URL prefix,
 	 * 'https://' is prepended to it. If a URL starting with one of the 
-	 * allowedPrefixes is sent in, it is simply returned.
+	 * allowed prefixes (http://, https://, mailto:, tel:) is sent in, it is
+	 * simply returned without allocating a new String.
 	 */
 	public static String cleanLink(String path) {
 		
@@ -35,40 +86,221 @@ public class Utils {
 			return "";
 		}
 		
-		String[] allowedPrefixes = {"http://", "https://", "mailto:", "tel:"};
+		/* If the path is a fully qualified URL, just return it */
+		if (hasAllowedPrefix(path)) {
+			return path;
+		}
 		
-		StringBuffer sb = new StringBuffer();
+		return appendRelativeLink(path, new StringBuilder(path.length() + Constants.SECURE_URL_PREFIX.length())).toString();
 		
-		/* If the path is a fully qualified URL, just return it */
-		for (String prefix : allowedPrefixes) {
-			
-			if (path.startsWith(prefix)) {
-				
-				LOGGER.debug("cleanLink found allowed prefix: {} on path {}", prefix, path);
-				return path;
+	}
 
-			}
-			
+	/**
+	 * Appends the cleaned version of path to sb, following the same rules as
+	 * {@link #cleanLink(String)}. Nothing is appended for a null path.
+	 * @return sb, for chaining
+	 */
+	public static StringBuilder cleanLink(String path, StringBuilder sb) {
+
+		if (path == null) {
+			LOGGER.error("cleanLink was passed a null path");
+			return sb;
 		}
-		
-		/* If it is an internal link, add '.html' to the end */
-		if (path.startsWith(Constants.INTERNAL_LINK_PREFIX)) {
-			
-			LOGGER.debug("cleanLink found internal link: {}", path);
-			sb.append(path);
-			sb.append(".html");
-			
+
+		if (hasAllowedPrefix(path)) {
+			return sb.append(path);
+		}
+
+		return appendRelativeLink(path, sb);
+
+	}
+
+	/**
+	 * Writes the cleaned version of path to out, following the same rules as
+	 * {@link #cleanLink(String)}. Nothing is written for a null path.
+	 * @return out, for chaining
+	 * @throws IOException if out cannot be written to
+	 */
+	public static <A extends Appendable> A cleanLink(String path, A out) throws IOException {
+
+		if (path == null) {
+			LOGGER.error("cleanLink was passed a null path");
+			return out;
+		}
+
+		if (hasAllowedPrefix(path)) {
+			out.append(path);
+		} else if (path.startsWith(Constants.INTERNAL_LINK_PREFIX)) {
+			/* If it is an internal link, add '.html' to the end */
+			out.append(path).append(Constants.HTML_EXTENSION);
 		} else {
+			/* Assuming this is a URL with no prefix, e.g. 'www.example.com' */
+			out.append(Constants.SECURE_URL_PREFIX).append(path);
+		}
+
+		return out;
 
-			LOGGER.debug("cleanLink found external link: {}. Prepending with scheme {}", path, Constants.SECURE_URL_PREFIX);
+	}
+
+	private static StringBuilder appendRelativeLink(String path, StringBuilder sb) {
+
+		if (path.startsWith(Constants.INTERNAL_LINK_PREFIX)) {
+			/* If it is an internal link, add '.html' to the end */
+			sb.append(path).append(Constants.HTML_EXTENSION);
+		} else {
 			/* Assuming this is a URL with no prefix, e.g. 'www.example.com' */
-			sb.append(Constants.SECURE_URL_PREFIX);
-			sb.append(path);
-			
+			sb.append(Constants.SECURE_URL_PREFIX).append(path);
 		}
-		
-		return sb.toString();
-		
+
+		return sb;
+
+	}
+
+	/**
+	 * Checks for http://, https://, mailto: and tel: by looking at the first
+	 * character before comparing any prefix.
+	 */
+	private static boolean hasAllowedPrefix(String path) {
+
+		if (path.isEmpty()) {
+			return false;
+		}
+
+		switch (path.charAt(0)) {
+			case 'h':
+				return path.startsWith("http") && (path.startsWith("://", 4) || path.startsWith("s://", 4));
+			case 'm':
+				return path.startsWith(Constants.MAILTO_URL_PREFIX);
+			case 't':
+				return path.startsWith(Constants.TELEPHONE_URL_PREFIX);
+			default:
+				return false;
+		}
+
+	}
+
+	/**
+	 * Appends a value to sb percent-encoded as UTF-8, for use as a query
+	 * parameter value or a mailto: header. Only unreserved characters are
+	 * left as they are, and spaces become %20 rather than '+' so the result
+	 * also works in mailto: links. An unpaired surrogate is encoded as '?',
+	 * as URLEncoder does. Nothing is appended for a null value.
+	 */
+	public static StringBuilder percentEncode(String value, StringBuilder sb) {
+
+		if (value == null) {
+
+			return sb;
+
+		}
+
+		int length = value.length();
+		int start = 0;
+
+		for (int i = 0; i < length; i++) {
+
+			char c = value.charAt(i);
+
+			if (c < 128 && UNRESERVED[c]) {
+
+				continue;
+
+			}
+
+			sb.append(value, start, i);
+
+			if (c < 0x80) {
+
+				appendPercentEncoded(c, sb);
+
+			} else if (c < 0x800) {
+
+				appendPercentEncoded(0xC0 | (c >> 6), sb);
+				appendPercentEncoded(0x80 | (c & 0x3F), sb);
+
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				appendPercentEncoded(0xF0 | (codePoint >> 18), sb);
+				appendPercentEncoded(0x80 | ((codePoint >> 12) & 0x3F), sb);
+				appendPercentEncoded(0x80 | ((codePoint >> 6) & 0x3F), sb);
+				appendPercentEncoded(0x80 | (codePoint & 0x3F), sb);
+
+			} else if (Character.isSurrogate(c)) {
+
+				appendPercentEncoded('?', sb);
+
+			} else {
+
+				appendPercentEncoded(0xE0 | (c >> 12), sb);
+				appendPercentEncoded(0x80 | ((c >> 6) & 0x3F), sb);
+				appendPercentEncoded(0x80 | (c & 0x3F), sb);
+
+			}
+
+			start = i + 1;
+
+		}
+
+		return sb.append(value, start, length);
+
+	}
+
+	private static void appendPercentEncoded(int b, StringBuilder sb) {
+
+		sb.append('%');
+		sb.append(HEX_DIGITS[(b >> 4) & 0xF]);
+		sb.append(HEX_DIGITS[b & 0xF]);
+
+	}
+
+	/**
+	 * Appends a value to sb, escaped for use inside a double or single quoted
+	 * HTML attribute.
+	 */
+	public static void escapeHtmlAttribute(String value, StringBuilder sb) {
+
+		if (value == null) {
+
+			return;
+
+		}
+
+		int start = 0;
+		int length = value.length();
+
+		for (int i = 0; i < length; i++) {
+
+			String replacement;
+
+			switch (value.charAt(i)) {
+				case '&':
+					replacement = "&amp;";
+					break;
+				case '<':
+					replacement = "&lt;";
+					break;
+				case '>':
+					replacement = "&gt;";
+					break;
+				case '"':
+					replacement = "&#34;";
+					break;
+				case '\'':
+					replacement = "&#39;";
+					break;
+				default:
+					continue;
+			}
+
+			sb.append(value, start, i);
+			sb.append(replacement);
+			start = i + 1;
+
+		}
+
+		sb.append(value, start, length);
+
 	}
 
 	/**
@@ -86,6 +318,7 @@ public class Utils {
 		}
 
 		String pageTitle = null;
+		SocialMetrics.TITLE_REQUESTED.increment();
 
 		if (pageLevel == PAGE_TITLE_LEVEL) {
 
@@ -95,6 +328,7 @@ public class Utils {
 				LOGGER.debug("Page Title found: {}", pageTitle);
 			} else {
 				pageTitle = p.getTitle();
+				SocialMetrics.TITLE_FALLBACK_TO_TITLE.increment();
 				LOGGER.debug("No Page Title found. Using Title instead: {}", pageTitle);
 			}
 		} else if (pageLevel == NAV_TITLE_LEVEL) {
@@ -105,9 +339,11 @@ public class Utils {
 				LOGGER.debug("Navigation Title found: {}", pageTitle);
 			} else if (p.getPageTitle() != null && !p.getPageTitle().trim().equals("")) {
 				pageTitle = p.getPageTitle();
+				SocialMetrics.TITLE_FALLBACK_TO_PAGE_TITLE.increment();
 				LOGGER.debug("No Navigation Title found. Using Page Title instead: {}", pageTitle);
 			} else {
 				pageTitle = p.getTitle();
+				SocialMetrics.TITLE_FALLBACK_TO_TITLE.increment();
 				LOGGER.debug("No Navigation Title or Page Title found. Using Title instead: {}", pageTitle);
 			}
 
@@ -120,6 +356,7 @@ public class Utils {
 
 		if (pageTitle == null) {
 
+			SocialMetrics.TITLE_MISSING.increment();
 			LOGGER.error("getTitle function could not find a title for this page: {}", p.getPath());
 			return "";
 
@@ -130,29 +367,172 @@ public class Utils {
 	}
 
 	/**
-	 * Returns a page's fully-qualified canonical URL
+	 * Returns a page's fully-qualified canonical URL on www.fredhutch.org
 	 */
 	public static String getCanonicalURL(ResourceResolver resourceResolver, SlingHttpServletRequest request, Page p) throws IllegalArgumentException {
 
-		if (resourceResolver == null || request == null || p == null) {
+		return getCanonicalURL(resourceResolver, request, p, SiteProfile.DEFAULT);
+
+	}
+
+	/**
+	 * Returns a page's fully-qualified canonical URL on the given site
+	 */
+	public static String getCanonicalURL(ResourceResolver resourceResolver, SlingHttpServletRequest request, Page p,
+			SiteProfile site) throws IllegalArgumentException {
+
+		if (resourceResolver == null || request == null || p == null || site == null) {
 
 			throw new IllegalArgumentException();
 
 		}
 
 		LOGGER.debug("Creating Canonical URL for page {}", p.getPath());
-		StringBuffer sb = new StringBuffer();
 
-		sb.append(Constants.SECURE_URL_PREFIX);
-		sb.append(Constants.WWW_DOMAIN);
-		sb.append(resourceResolver.map(request, p.getPath()));
+		long start = SocialMetrics.start();
+		String mappedPath = resourceResolver.map(request, p.getPath());
+		SocialMetrics.URL_MAPPING.record(start);
+
+		return buildCanonicalURL(site, mappedPath, request.getRequestPathInfo().getExtension());
+
+	}
+
+	/**
+	 * Returns a page's fully-qualified canonical URL on www.fredhutch.org
+	 * when there is no request to map against (e.g. during replication or
+	 * background jobs). The path is mapped using the resource resolver's own
+	 * mapping configuration.
+	 */
+	public static String getCanonicalURL(ResourceResolver resourceResolver, Page p, String extension) throws IllegalArgumentException {
+
+		return getCanonicalURL(resourceResolver, p, extension, SiteProfile.DEFAULT);
+
+	}
+
+	/**
+	 * Returns a page's fully-qualified canonical URL on the given site when
+	 * there is no request to map against
+	 */
+	public static String getCanonicalURL(ResourceResolver resourceResolver, Page p, String extension, SiteProfile site)
+			throws IllegalArgumentException {
+
+		if (resourceResolver == null || p == null || site == null) {
+
+			throw new IllegalArgumentException();
+
+		}
+
+		LOGGER.debug("Creating Canonical URL for page {} without a request", p.getPath());
+
+		long start = SocialMetrics.start();
+		String mappedPath = resourceResolver.map(p.getPath());
+		SocialMetrics.URL_MAPPING.record(start);
+
+		return buildCanonicalURL(site, mappedPath, extension);
+
+	}
+
+	private static String buildCanonicalURL(SiteProfile site, String mappedPath, String extension) {
+
+		String urlPrefix = site.getUrlPrefix();
+		StringBuilder sb = new StringBuilder(urlPrefix.length() + mappedPath.length() + 6);
+
+		sb.append(urlPrefix);
+		sb.append(mappedPath);
 		sb.append(".");
-		sb.append(request.getRequestPathInfo().getExtension());
+		sb.append(extension);
 
 		return sb.toString();
 
 	}
 
+	/**
+	 * Formats a date as yyyy-MM-dd'T'HH:mmZ (e.g. 2018-09-26T09:30-0700) in
+	 * the server's time zone, for use in article:published_time. The output
+	 * is identical to SimpleDateFormat with the same pattern. Formatted
+	 * values are cached by minute, so dates shared by many articles are only
+	 * formatted once and a cache hit does not allocate.
+	 * @param date the date to format
+	 * @return the formatted date, or an empty string if date is null
+	 */
+	public static String formatPublicationDate(Date date) {
+
+		if (date == null) {
+
+			return "";
+
+		}
+
+		long millis = date.getTime();
+
+		if (millis < MIN_FAST_FORMAT_MILLIS || millis >= MAX_FAST_FORMAT_MILLIS) {
+
+			// Historical zone offsets and calendars only SimpleDateFormat handles the same way
+			return new SimpleDateFormat(PUBLICATION_DATE_PATTERN).format(date);
+
+		}
+
+		long minute = Math.floorDiv(millis, 60000L);
+		int slot = (int) (minute ^ (minute >>> 32)) & (FORMATTED_DATE_CACHE_SIZE - 1);
+		FormattedDate cached = FORMATTED_DATES[slot];
+
+		if (cached != null && cached.minute == minute) {
+
+			SocialMetrics.DATE_CACHE_HITS.increment();
+			return cached.value;
+
+		}
+
+		SocialMetrics.DATE_CACHE_MISSES.increment();
+
+		String value = PUBLICATION_DATE_FORMATTER.format(Instant.ofEpochMilli(millis));
+		FORMATTED_DATES[slot] = new FormattedDate(minute, value);
+
+		return value;
+
+	}
+
+	/**
+	 * Returns the first instant from which dates can be formatted with
+	 * java.time and cached by minute: after 1900, and after the zone's last
+	 * offset that is not a whole number of minutes (local mean time).
+	 */
+	private static long getFastFormatStart(ZoneId zone) {
+
+		long start = -2208988800000L;
+
+		for (ZoneOffsetTransition transition : zone.getRules().getTransitions()) {
+
+			if (transition.getOffsetBefore().getTotalSeconds() % 60 != 0) {
+
+				start = Math.max(start, transition.toEpochSecond() * 1000L);
+
+			}
+
+		}
+
+		return start;
+
+	}
+
+	/**
+	 * An immutable cache slot, so readers on other threads either see a
+	 * complete entry or an older one.
+	 */
+	private static final class FormattedDate {
+
+		private final long minute;
+		private final String value;
+
+		FormattedDate(long minute, String value) {
+
+			this.minute = minute;
+			this.value = value;
+
+		}
+
+	}
+
 	/**
 	 * Formats a phone number for display on a page. Only formats strings that
 	 * contain either 10 or 11 digits currently. If the input cannot be
@@ -169,40 +549,18 @@ public class Utils {
 
 		}
 
-		final String TEL_DELIMITER = ".";
-
-		String phoneNumberJustDigits = removeNonDigits(phoneNumber);
-		StringBuffer sb = new StringBuffer();
-
-		if (phoneNumberJustDigits.length() == 10) {
-
-			sb.append(phoneNumberJustDigits.substring(0, 3));
-			sb.append(TEL_DELIMITER);
-			sb.append(phoneNumberJustDigits.substring(3, 6));
-			sb.append(TEL_DELIMITER);
-			sb.append(phoneNumberJustDigits.substring(6));
-			LOGGER.debug("10-digit telephone number found: {}", sb.toString());
-
-
-		} else if (phoneNumberJustDigits.length() == 11) {
+		char[] firstDigits = new char[MAX_DISPLAY_DIGITS];
+		char[] lastDigits = new char[LINK_DIGITS];
+		int digitCount = scanDigits(phoneNumber, firstDigits, lastDigits);
 
-			sb.append(phoneNumberJustDigits.substring(0, 1));
-			sb.append(TEL_DELIMITER);
-			sb.append(phoneNumberJustDigits.substring(1, 4));
-			sb.append(TEL_DELIMITER);
-			sb.append(phoneNumberJustDigits.substring(4, 7));
-			sb.append(TEL_DELIMITER);
-			sb.append(phoneNumberJustDigits.substring(7));
-			LOGGER.debug("11-digit telephone number found: {}", sb.toString());
-
-		} else {
+		if (!isDisplayable(digitCount)) {
 
 			LOGGER.warn("Phone number did not have 10-11 digits: {}", phoneNumber);
 			return phoneNumber;
 
 		}
 
-		return sb.toString();
+		return appendDisplayNumber(firstDigits, digitCount, new StringBuilder(digitCount + 3)).toString();
 
 	}
 
@@ -221,59 +579,212 @@ public class Utils {
 
 		}
 
-		final String TEL_DELIMITER = "-";
-		final String US_COUNTRY_CODE = "+1";
-		phoneNumber = removeNonDigits(phoneNumber);
-		StringBuffer sb = new StringBuffer();
+		char[] firstDigits = new char[MAX_DISPLAY_DIGITS];
+		char[] lastDigits = new char[LINK_DIGITS];
+		int digitCount = scanDigits(phoneNumber, firstDigits, lastDigits);
+
+		if (!isLinkable(phoneNumber, digitCount)) {
+
+			return "";
+
+		}
+
+		return appendPhoneLink(lastDigits, digitCount, new StringBuilder(PHONE_LINK_LENGTH)).toString();
+
+	}
+
+	/**
+	 * Writes both the display form and the tel: link form of a phone number
+	 * from a single scan of its digits. The display form follows
+	 * {@link #formatPhoneNumber(String)} and the link form follows
+	 * {@link #formatPhoneLink(String)}; nothing is appended for a null
+	 * number, and nothing is appended to link if a link cannot be built.
+	 * Either builder may be null if that form is not needed.
+	 */
+	public static void formatPhoneNumber(String phoneNumber, StringBuilder display, StringBuilder link) {
+
+		formatPhoneNumber(phoneNumber, display, link, new char[MAX_DISPLAY_DIGITS], new char[LINK_DIGITS]);
+
+	}
+
+	/**
+	 * Formats a whole column of phone numbers (e.g. every phoneNumber or
+	 * faxNumber in a directory listing), reusing one buffer for all of them.
+	 * Either output array may be null if that form is not needed; otherwise
+	 * it must be at least as long as phoneNumbers. Each entry matches what
+	 * {@link #formatPhoneNumber(String)} and {@link #formatPhoneLink(String)}
+	 * return for the same input.
+	 */
+	public static void formatPhoneNumbers(String[] phoneNumbers, String[] display, String[] links) {
+
+		StringBuilder displayBuffer = display == null ? null : new StringBuilder(PHONE_LINK_LENGTH);
+		StringBuilder linkBuffer = links == null ? null : new StringBuilder(PHONE_LINK_LENGTH);
+		char[] firstDigits = new char[MAX_DISPLAY_DIGITS];
+		char[] lastDigits = new char[LINK_DIGITS];
+
+		for (int i = 0; i < phoneNumbers.length; i++) {
+
+			if (displayBuffer != null) {
+				displayBuffer.setLength(0);
+			}
+
+			if (linkBuffer != null) {
+				linkBuffer.setLength(0);
+			}
+
+			formatPhoneNumber(phoneNumbers[i], displayBuffer, linkBuffer, firstDigits, lastDigits);
+
+			if (display != null) {
+				display[i] = displayBuffer.toString();
+			}
+
+			if (links != null) {
+				links[i] = linkBuffer.toString();
+			}
+
+		}
+
+	}
+
+	private static void formatPhoneNumber(String phoneNumber, StringBuilder display, StringBuilder link,
+			char[] firstDigits, char[] lastDigits) {
+
+		if (phoneNumber == null) {
+
+			LOGGER.warn("formatPhoneNumber was passed a null value");
+			return;
+
+		}
+
+		int digitCount = scanDigits(phoneNumber, firstDigits, lastDigits);
+
+		if (display != null) {
+
+			if (isDisplayable(digitCount)) {
+
+				appendDisplayNumber(firstDigits, digitCount, display);
+
+			} else {
+
+				LOGGER.warn("Phone number did not have 10-11 digits: {}", phoneNumber);
+				display.append(phoneNumber);
+
+			}
+
+		}
+
+		if (link != null && isLinkable(phoneNumber, digitCount)) {
+
+			appendPhoneLink(lastDigits, digitCount, link);
+
+		}
+
+	}
+
+	/**
+	 * Copies the first 11 digits [0-9] of target into firstDigits and keeps
+	 * the last 10 in lastDigits as a ring buffer indexed by digit position.
+	 * @return the total number of digits in target
+	 */
+	private static int scanDigits(String target, char[] firstDigits, char[] lastDigits) {
+
+		int digitCount = 0;
+
+		for (int i = 0, length = target.length(); i < length; i++) {
+
+			char c = target.charAt(i);
+
+			if (c >= '0' && c <= '9') {
+
+				if (digitCount < MAX_DISPLAY_DIGITS) {
+					firstDigits[digitCount] = c;
+				}
+
+				lastDigits[digitCount % LINK_DIGITS] = c;
+				digitCount++;
+
+			}
+
+		}
 
-		// If the number is longer than 10, cut it to the last 10 digits
-		if (phoneNumber.length() > 10) {
+		return digitCount;
+
+	}
+
+	private static boolean isDisplayable(int digitCount) {
+
+		return digitCount == LINK_DIGITS || digitCount == MAX_DISPLAY_DIGITS;
+
+	}
+
+	private static boolean isLinkable(String phoneNumber, int digitCount) {
+
+		// If the number is longer than 10, it is cut to the last 10 digits
+		if (digitCount > LINK_DIGITS) {
 
 			LOGGER.warn("formatPhoneLink received a number longer than 10 digits: {}", phoneNumber);
-			phoneNumber = phoneNumber.substring(phoneNumber.length() - 10);
+
+		} else if (digitCount < LINK_DIGITS) {
+
+			// If we can't construct a 10-digit number, there is no link
+			LOGGER.error("formatPhoneLink could not construct a 10-digit number from input {}", phoneNumber);
+			return false;
 
 		}
 
-		if (phoneNumber.length() == 10) {
+		return true;
 
-			sb.append(Constants.TELEPHONE_URL_PREFIX);
-			sb.append(US_COUNTRY_CODE);
-			sb.append(TEL_DELIMITER);
-			sb.append(phoneNumber.substring(0, 3));
-			sb.append(TEL_DELIMITER);
-			sb.append(phoneNumber.substring(3, 6));
-			sb.append(TEL_DELIMITER);
-			sb.append(phoneNumber.substring(6));
-			LOGGER.debug("formatPhoneLink complete: {}", sb.toString());
+	}
 
-		} else {
+	/**
+	 * Appends xxx.xxx.xxxx for 10 digits or x.xxx.xxx.xxxx for 11 digits.
+	 */
+	private static StringBuilder appendDisplayNumber(char[] digits, int digitCount, StringBuilder sb) {
 
-			// If we can't construct a 10-digit number, return empty string
-			LOGGER.error("formatPhoneLink could not construct a 10-digit number from modified input {}", phoneNumber);
-			return "";
+		final char TEL_DELIMITER = '.';
+		int start = 0;
+
+		if (digitCount == MAX_DISPLAY_DIGITS) {
+
+			sb.append(digits[0]).append(TEL_DELIMITER);
+			start = 1;
 
 		}
 
-		return sb.toString();
+		sb.append(digits, start, 3);
+		sb.append(TEL_DELIMITER);
+		sb.append(digits, start + 3, 3);
+		sb.append(TEL_DELIMITER);
+		sb.append(digits, start + 6, 4);
+
+		return sb;
 
 	}
 
 	/**
-	 * Removes any characters from a string that are not digits [0-9]
-	 * @param target String from which to remove all digits
-	 * @return the target String with all non-digits removed
+	 * Appends tel:+1-xxx-xxx-xxxx using the last 10 digits of the number.
 	 */
-	private static String removeNonDigits(String target) {
+	private static StringBuilder appendPhoneLink(char[] lastDigits, int digitCount, StringBuilder sb) {
 
-		if (target == null) {
+		final char TEL_DELIMITER = '-';
+		final String US_COUNTRY_CODE = "+1";
+		// The oldest of the last 10 digits sits at digitCount % 10 in the ring buffer
+		int first = digitCount % LINK_DIGITS;
 
-			return "";
+		sb.append(Constants.TELEPHONE_URL_PREFIX);
+		sb.append(US_COUNTRY_CODE);
+
+		for (int i = 0; i < LINK_DIGITS; i++) {
+
+			if (i == 0 || i == 3 || i == 6) {
+				sb.append(TEL_DELIMITER);
+			}
+
+			sb.append(lastDigits[(first + i) % LINK_DIGITS]);
 
 		}
 
-		String notDigits = "[^\\d]";
-		target = target.replaceAll(notDigits, "");
-		return target;
+		return sb;
 
 	}
 
@@ -350,4 +861,125 @@ public class Utils {
 
 	}
 
+	/**
+	 * A lazy version of {@link #getMultiFieldValues} built on the Sling
+	 * Resource API. Entries are read one at a time as the result is iterated,
+	 * only the requested properties are read, and iteration stops after
+	 * limit entries. Entries with none of the properties are skipped, as
+	 * with getMultiFieldValues.
+	 * @param resource The resource the multifield values live under, usually a Page's content resource or a Style resource
+	 * @param relPath The location of the multifield values relative to the resource (e.g. './mediaLinks')
+	 * @param properties The properties of each multifield value that should be read
+	 * @param limit The maximum number of entries to return, or a negative number for all of them
+	 * @return an Iterable suitable to be iterated over using data-sly-list or -repeat
+	 * @throws NullPointerException if there is no resource at relPath underneath resource
+	 * @throws IllegalArgumentException if properties is null
+	 */
+	public static Iterable<MultiFieldValue> streamMultiFieldValues(Resource resource, String relPath, String[] properties, int limit)
+		throws NullPointerException, IllegalArgumentException {
+
+		final Resource multiFieldResource = resource.getChild(relPath);
+
+		if (multiFieldResource == null) {
+
+			throw new NullPointerException("There was no node located at " + relPath);
+
+		} else if (properties == null) {
+
+			throw new IllegalArgumentException("The array of properties passed was null");
+
+		}
+
+		final String[] names = properties.clone();
+		final int max = limit < 0 ? Integer.MAX_VALUE : limit;
+
+		return new Iterable<MultiFieldValue>() {
+
+			@Override
+			public Iterator<MultiFieldValue> iterator() {
+
+				return new MultiFieldIterator(multiFieldResource.listChildren(), names, max);
+
+			}
+
+		};
+
+	}
+
+	/**
+	 * Same as {@link #streamMultiFieldValues(Resource, String, String[], int)} with no limit.
+	 */
+	public static Iterable<MultiFieldValue> streamMultiFieldValues(Resource resource, String relPath, String[] properties)
+		throws NullPointerException, IllegalArgumentException {
+
+		return streamMultiFieldValues(resource, relPath, properties, -1);
+
+	}
+
+	private static final class MultiFieldIterator implements Iterator<MultiFieldValue> {
+
+		private final Iterator<Resource> children;
+		private final String[] names;
+		private int remaining;
+		private MultiFieldValue next;
+
+		MultiFieldIterator(Iterator<Resource> children, String[] names, int limit) {
+
+			this.children = children;
+			this.names = names;
+			this.remaining = limit;
+
+		}
+
+		@Override
+		public boolean hasNext() {
+
+			while (next == null && remaining > 0 && children.hasNext()) {
+
+				ValueMap properties = children.next().getValueMap();
+				String[] values = new String[names.length];
+				int size = 0;
+
+				for (int i = 0; i < names.length; i++) {
+
+					values[i] = properties.get(names[i], String.class);
+
+					if (values[i] != null) {
+
+						size++;
+
+					}
+
+				}
+
+				if (size > 0) {
+
+					next = new MultiFieldValue(names, values, size);
+					remaining--;
+
+				}
+
+			}
+
+			return next != null;
+
+		}
+
+		@Override
+		public MultiFieldValue next() {
+
+			if (!hasNext()) {
+
+				throw new NoSuchElementException();
+
+			}
+
+			MultiFieldValue value = next;
+			next = null;
+			return value;
+
+		}
+
+	}
+
 }
@@ -0,0 +1,58 @@
+#!/bin/bash
+#
+# Compares crawler requests per second against a publish instance with the
+# social crawler fast path off (full page render) and on (head-only
+# document). Run it against publish directly, not through the dispatcher,
+# so every request reaches AEM. Needs ab (Apache Bench) and curl.
+#
+#   ./crawler-load-test.sh http://localhost:4503 /content/fredhutch/en/news/some-article.html
+#
+# Environment: REQUESTS (default 2000), CONCURRENCY (default 20),
+# CONSOLE_USER (default admin:admin) for switching the filter on and off.
+#
+# Each run ends with a row for the results table in benchmarks/README.md.
+
+set -euo pipefail
+
+HOST=${1:?publish URL, e.g. http://localhost:4503}
+PAGE=${2:?page path, e.g. /content/fredhutch/en.html}
+REQUESTS=${REQUESTS:-2000}
+CONCURRENCY=${CONCURRENCY:-20}
+CONSOLE_USER=${CONSOLE_USER:-admin:admin}
+USER_AGENT="facebookexternalhit/1.1 (+http://www.facebook.com/externalhit_uatext.php)"
+PID=org.fhcrc.www.core.filters.SocialCrawlerFilter
+
+set_fast_path() {
+	curl -sf -u "$CONSOLE_USER" -o /dev/null \
+		-d "apply=true&action=ajaxConfigManager&propertylist=enabled&enabled=$1" \
+		"$HOST/system/console/configMgr/$PID"
+	# Give the component time to be reconfigured
+	sleep 2
+}
+
+run() {
+	# Warm up the page and the metadata cache before measuring
+	ab -q -n 200 -c "$CONCURRENCY" -H "User-Agent: $USER_AGENT" "$HOST$PAGE" > /dev/null
+	ab -q -n "$REQUESTS" -c "$CONCURRENCY" -H "User-Agent: $USER_AGENT" "$HOST$PAGE" > "$RESULT"
+	grep -E "Requests per second|Time per request|Document Length|Failed requests|^ +95%" "$RESULT"
+	awk -v run="$1" -v date="$(date +%Y-%m-%d)" -v page="$PAGE" -v n="$REQUESTS" -v c="$CONCURRENCY" '
+		/^Requests per second/ { rps = $4 }
+		/^Time per request/ && !mean { mean = $4 }
+		/^ +95%/ { p95 = $2 }
+		/^Document Length/ { bytes = $3 }
+		/^Failed requests/ { failed = $3 }
+		END { printf "| %s | %s | %s | %s x %s | %s | %s | %s | %s | %s |\n", date, page, run, n, c, rps, mean, p95, bytes, failed }
+	' "$RESULT"
+}
+
+RESULT=$(mktemp)
+trap 'rm -f "$RESULT"' EXIT
+
+echo "== Before: full page render for crawlers"
+set_fast_path false
+run before
+
+echo
+echo "== After: head-only document for crawlers"
+set_fast_path true
+run after
@@ -0,0 +1,39 @@
+#!/bin/bash
+#
+# Builds the core classes and the JMH benchmarks with javac and runs them,
+# for machines where the Maven reactor cannot download its dependencies.
+# Otherwise use mvn package and java -jar target/benchmarks.jar.
+#
+#   ./run-benchmarks.sh /path/to/jars                        # everything
+#   ./run-benchmarks.sh /path/to/jars MetadataBenchmark      # one class
+#   ./run-benchmarks.sh /path/to/jars -f 1 -wi 3 -i 5 Clean  # a quick run
+#
+# The jar directory must hold the AEM API jar the bundle builds against
+# (uber-jar 6.5 apis), jmh-core, jmh-generator-annprocess and their
+# dependencies jopt-simple and commons-math3. Classes are written to
+# benchmarks/target. Needs JDK 8 or later.
+
+set -euo pipefail
+
+JARS=${1:?directory with the AEM API, JMH and JMH annotation processor jars}
+shift
+
+HERE=$(cd "$(dirname "$0")" && pwd)
+CORE=$(dirname "$HERE")
+TARGET="$HERE/target"
+CLASSPATH=$(ls "$JARS"/*.jar | tr '\n' ':')
+
+rm -rf "$TARGET"
+mkdir -p "$TARGET/core" "$TARGET/benchmarks"
+
+echo "== Compiling the core classes"
+find "$CORE" -name '*.java' -not -path "$HERE/*" -not -path "$CORE/core/*" > "$TARGET/core-sources.txt"
+javac -nowarn -proc:none -source 8 -target 8 -d "$TARGET/core" -cp "$CLASSPATH" @"$TARGET/core-sources.txt"
+
+# The JMH annotation processor generates the benchmark harness and
+# META-INF/BenchmarkList, which the runner needs to find the benchmarks
+echo "== Compiling the benchmarks"
+find "$HERE/src" -name '*.java' > "$TARGET/benchmark-sources.txt"
+javac -nowarn -source 8 -target 8 -d "$TARGET/benchmarks" -cp "$TARGET/core:$CLASSPATH" @"$TARGET/benchmark-sources.txt"
+
+exec java -cp "$TARGET/benchmarks:$TARGET/core:$CLASSPATH" org.fhcrc.www.core.benchmarks.BenchmarkMain "$@"
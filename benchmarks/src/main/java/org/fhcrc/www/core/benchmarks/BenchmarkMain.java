@@ -0,0 +1,33 @@
+package org.fhcrc.www.core.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached, so every result
+ * includes allocations per operation next to throughput and latency.
+ * Accepts the usual JMH command line options, e.g. a benchmark name
+ * pattern or -f 1 -wi 3 -i 5 for a quick run.
+ */
+public final class BenchmarkMain {
+
+	private BenchmarkMain() {
+	}
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+
+		new Runner(options).run();
+
+	}
+
+}
@@ -0,0 +1,120 @@
+package org.fhcrc.www.core.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.fhcrc.www.core.Constants;
+import org.fhcrc.www.core.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Runs Utils.cleanLink over the kind of links a navigation or footer
+ * renders: mostly internal pages, some external sites with and without a
+ * scheme, and a few mailto: and tel: links. The previous implementation is
+ * kept here as a baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CleanLinkBenchmark {
+
+	private static final String[] LINKS = {
+			"/content/fredhutch/en/research",
+			"/content/fredhutch/en/research/divisions/clinical-research-division",
+			"/content/fredhutch/en/news/center-news",
+			"/content/fredhutch/en/about/contact-us",
+			"/content/fredhutch/en/events",
+			"/content/fredhutch/en/education-training/undergraduate-students",
+			"https://www.seattlecca.org",
+			"https://www.facebook.com/HutchinsonCenter",
+			"http://www.scharp.org",
+			"www.fredhutch.org/giving",
+			"mailto:hutchnews@fredhutch.org",
+			"tel:+1-206-667-5000",
+			"/content/fredhutch/en/careers",
+			"twitter.com/fredhutch",
+			"/content/fredhutch/en/treatment",
+			"/content/fredhutch/en/privacy-policy"
+	};
+
+	private int next;
+	private StringBuilder out;
+
+	@Setup
+	public void setup() {
+
+		out = new StringBuilder(256);
+
+	}
+
+	private String nextLink() {
+
+		String link = LINKS[next];
+		next = (next + 1) & (LINKS.length - 1);
+		return link;
+
+	}
+
+	@Benchmark
+	public String legacyCleanLink() {
+
+		return legacyCleanLink(nextLink());
+
+	}
+
+	@Benchmark
+	public String cleanLink() {
+
+		return Utils.cleanLink(nextLink());
+
+	}
+
+	@Benchmark
+	public int cleanLinkIntoBuilder() {
+
+		out.setLength(0);
+		return Utils.cleanLink(nextLink(), out).length();
+
+	}
+
+	/**
+	 * The implementation of Utils.cleanLink before it was made allocation
+	 * free, without the debug logging.
+	 */
+	private static String legacyCleanLink(String path) {
+
+		String[] allowedPrefixes = {"http://", "https://", "mailto:", "tel:"};
+		StringBuffer sb = new StringBuffer();
+
+		for (String prefix : allowedPrefixes) {
+
+			if (path.startsWith(prefix)) {
+
+				return path;
+
+			}
+
+		}
+
+		if (path.startsWith(Constants.INTERNAL_LINK_PREFIX)) {
+
+			sb.append(path);
+			sb.append(".html");
+
+		} else {
+
+			sb.append(Constants.SECURE_URL_PREFIX);
+			sb.append(path);
+
+		}
+
+		return sb.toString();
+
+	}
+
+}
@@ -0,0 +1,74 @@
+package org.fhcrc.www.core.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.fhcrc.www.core.Constants;
+import org.fhcrc.www.core.DescriptionNormalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cleans up a long, pasted description with markup and entities into the
+ * Open Graph and Twitter versions, using DescriptionNormalizer against the
+ * chained replaceAll calls components used before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DescriptionBenchmark {
+
+	private static final String DESCRIPTION = "<p>Fred Hutch researchers report that 40% of patients treated with "
+			+ "engineered T&nbsp;cells remained in remission two years later &mdash; a result that &ldquo;changes what "
+			+ "we thought was possible,&rdquo; said the study&rsquo;s lead author.</p>\n\n<p>The phase 1 trial enrolled "
+			+ "patients with <strong>advanced non-Hodgkin lymphoma</strong> whose disease had returned after standard "
+			+ "chemotherapy &amp; stem cell transplantation. Researchers will next test whether the approach works "
+			+ "earlier in treatment, and in combination with other immunotherapies, in a larger trial opening this fall.</p>";
+
+	@Benchmark
+	public int legacyDescriptions() {
+
+		String text = DESCRIPTION.replaceAll("<[^>]*>", " ")
+				.replaceAll("&nbsp;", " ")
+				.replaceAll("&amp;", "&")
+				.replaceAll("&mdash;", "\u2014")
+				.replaceAll("&ldquo;", "\u201C")
+				.replaceAll("&rdquo;", "\u201D")
+				.replaceAll("&rsquo;", "\u2019")
+				.replaceAll("\\s+", " ")
+				.trim();
+
+		String og = legacyTruncate(text, Constants.OG_DESCRIPTION_MAX_LENGTH);
+		String twitter = legacyTruncate(text, Constants.TWITTER_DESCRIPTION_MAX_LENGTH);
+
+		return og.length() + twitter.length();
+
+	}
+
+	@Benchmark
+	public int descriptions() {
+
+		DescriptionNormalizer.Descriptions descriptions = DescriptionNormalizer.normalize(DESCRIPTION,
+				Constants.OG_DESCRIPTION_MAX_LENGTH, Constants.TWITTER_DESCRIPTION_MAX_LENGTH);
+
+		return descriptions.getOpenGraph().length() + descriptions.getTwitter().length();
+
+	}
+
+	private static String legacyTruncate(String text, int limit) {
+
+		if (text.length() <= limit) {
+
+			return text;
+
+		}
+
+		String cut = text.substring(0, limit - 1);
+		return cut.replaceAll("\\s+\\S*$", "") + "\u2026";
+
+	}
+
+}
@@ -0,0 +1,523 @@
+package org.fhcrc.www.core.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.fhcrc.www.core.Constants;
+
+import com.day.cq.dam.api.Asset;
+import com.day.cq.dam.api.DamConstants;
+import com.day.cq.dam.api.Rendition;
+import com.day.cq.wcm.api.Page;
+
+/**
+ * In-memory stand-ins for the AEM and Sling objects the metadata helper and
+ * Utils work with, plus fixtures for a website, news article and profile
+ * page. The stand-ins are dynamic proxies that only answer the methods the
+ * code under test calls and throw for anything else, so a benchmark fails
+ * loudly if the code starts depending on something new. Proxy dispatch adds
+ * a few nanoseconds per call, which is the same for every implementation
+ * being compared.
+ */
+public final class Fixtures {
+
+	public static final String SITE_ROOT = "/content/fredhutch/en";
+	public static final String MAPPED_SITE_ROOT = "/en";
+
+	private Fixtures() {
+	}
+
+	/**
+	 * A generic page with a title and description.
+	 */
+	public static Page websitePage() {
+
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("jcr:title", "Clinical Research Division");
+		properties.put("jcr:description", "The Clinical Research Division develops and evaluates new treatments for cancer and blood disorders.");
+
+		return page(SITE_ROOT + "/research/divisions/clinical-research-division", properties, null);
+
+	}
+
+	/**
+	 * A news article with a publication date, author and social media image.
+	 */
+	public static Page articlePage() {
+
+		Calendar publicationDate = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+		publicationDate.setTimeInMillis(1537979400000L);
+
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("jcr:title", "Immunotherapy trial results");
+		properties.put("pageTitle", "Immunotherapy trial shows durable responses in lymphoma patients");
+		properties.put("jcr:description", "Researchers report results from a phase 1 trial of CAR T-cell therapy for non-Hodgkin lymphoma.");
+		properties.put(Constants.PN_ARTICLE_PUBLICATION_DATE, publicationDate);
+		properties.put(Constants.PN_ARTICLE_SOCIAL_MEDIA_IMAGE, "/content/dam/www/news/2018/09/car-t-cells-social.jpg");
+		properties.put(Constants.PN_ARTICLE_IMAGE, "/content/dam/www/news/2018/09/car-t-cells.jpg");
+		properties.put(Constants.PN_ARTICLE_AUTHOR_FIRST_NAME, "Sabrina");
+		properties.put(Constants.PN_ARTICLE_AUTHOR_LAST_NAME, "Richards");
+
+		return page(SITE_ROOT + "/news/center-news/2018/09/immunotherapy-trial-results", properties, null);
+
+	}
+
+	/**
+	 * A faculty profile with a photo, phone numbers and an appointments multifield.
+	 */
+	public static Page profilePage() {
+
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("jcr:title", "Jane Doe, MD, PhD");
+		properties.put("navTitle", "Jane Doe");
+		properties.put("jcr:description", "Dr. Jane Doe studies how the immune system can be trained to recognize leukemia.");
+		properties.put(Constants.PN_PROFILE_FIRST_NAME, "Jane");
+		properties.put(Constants.PN_PROFILE_LAST_NAME, "Doe");
+		properties.put(Constants.PN_PROFILE_DEGREES, "MD, PhD");
+		properties.put(Constants.PN_PROFILE_PHOTO, "/content/dam/www/profiles/jane-doe.jpg");
+		properties.put(Constants.PN_PROFILE_PHONE, "(206) 667-4675");
+		properties.put(Constants.PN_PROFILE_FAX, "206.667.1234");
+		properties.put(Constants.PN_PROFILE_EMAIL, "jdoe@fredhutch.org");
+
+		List<Map<String, Object>> appointments = new ArrayList<Map<String, Object>>();
+
+		for (int i = 0; i < 12; i++) {
+
+			Map<String, Object> appointment = new LinkedHashMap<String, Object>();
+			appointment.put(Constants.PN_PROFILE_APPOINTMENT_TITLE, "Member, Division " + i);
+			appointment.put(Constants.PN_PROFILE_APPOINTMENT_ORG, "Fred Hutchinson Cancer Research Center");
+			appointment.put("startYear", Integer.toString(2000 + i));
+			appointments.add(appointment);
+
+		}
+
+		return page(SITE_ROOT + "/research/faculty/jane-doe", properties, appointments);
+
+	}
+
+	/**
+	 * A resource resolver whose mapping shortens /content/fredhutch/en to
+	 * /en, as the site's /etc/map rules do. Every path under /content/dam
+	 * resolves to a 2400x1600 JPEG asset with the standard renditions.
+	 */
+	public static ResourceResolver resourceResolver() {
+
+		return stub(ResourceResolver.class, new Answers() {
+
+			@Override
+			public Object answer(String method, Object[] args) {
+
+				if (method.equals("map")) {
+
+					return map((String) args[args.length - 1]);
+
+				}
+
+				if (method.equals("getResource") && args.length == 1 && ((String) args[0]).startsWith(DamConstants.MOUNTPOINT_ASSETS + "/")) {
+
+					return assetResource((String) args[0]);
+
+				}
+
+				return UNSUPPORTED;
+
+			}
+
+		});
+
+	}
+
+	/**
+	 * A GET request for an .html page on www.fredhutch.org.
+	 */
+	public static SlingHttpServletRequest request(final ResourceResolver resourceResolver) {
+
+		final RequestPathInfo pathInfo = stub(RequestPathInfo.class, new Answers() {
+
+			@Override
+			public Object answer(String method, Object[] args) {
+
+				return method.equals("getExtension") ? "html" : UNSUPPORTED;
+
+			}
+
+		});
+
+		return stub(SlingHttpServletRequest.class, new Answers() {
+
+			@Override
+			public Object answer(String method, Object[] args) {
+
+				if (method.equals("getRequestPathInfo")) {
+
+					return pathInfo;
+
+				} else if (method.equals("getServerName")) {
+
+					return Constants.WWW_DOMAIN;
+
+				} else if (method.equals("getResourceResolver")) {
+
+					return resourceResolver;
+
+				}
+
+				return UNSUPPORTED;
+
+			}
+
+		});
+
+	}
+
+	private static String map(String path) {
+
+		return path.startsWith(SITE_ROOT) ? MAPPED_SITE_ROOT + path.substring(SITE_ROOT.length()) : path;
+
+	}
+
+	private static Page page(final String path, Map<String, Object> properties, List<Map<String, Object>> appointments) {
+
+		final ValueMap valueMap = new ValueMapDecorator(properties);
+		final Calendar lastModified = Calendar.getInstance();
+		lastModified.setTimeInMillis(1538006400000L);
+
+		final Resource content = resource(path + "/jcr:content", properties, appointments);
+
+		return stub(Page.class, new Answers() {
+
+			@Override
+			public Object answer(String method, Object[] args) {
+
+				switch (method) {
+					case "getPath":
+						return path;
+					case "getName":
+						return path.substring(path.lastIndexOf('/') + 1);
+					case "getProperties":
+						return args == null ? valueMap : UNSUPPORTED;
+					case "getContentResource":
+						return args == null ? content : UNSUPPORTED;
+					case "getTitle":
+						return valueMap.get("jcr:title", String.class);
+					case "getPageTitle":
+						return valueMap.get("pageTitle", String.class);
+					case "getNavigationTitle":
+						return valueMap.get("navTitle", String.class);
+					case "getDescription":
+						return valueMap.get("jcr:description", String.class);
+					case "getLastModified":
+						return lastModified;
+					default:
+						return UNSUPPORTED;
+				}
+
+			}
+
+		});
+
+	}
+
+	/**
+	 * A resource with an optional ./appointments multifield child, readable
+	 * both through the Sling Resource API and as a JCR Node.
+	 */
+	private static Resource resource(final String path, Map<String, Object> properties, List<Map<String, Object>> multiField) {
+
+		final ValueMap valueMap = new ValueMapDecorator(properties);
+		final Resource multiFieldResource;
+
+		if (multiField == null) {
+
+			multiFieldResource = null;
+
+		} else {
+
+			final List<Resource> children = new ArrayList<Resource>();
+
+			for (int i = 0; i < multiField.size(); i++) {
+
+				children.add(resource(path + "/appointments/item" + i, multiField.get(i), null));
+
+			}
+
+			multiFieldResource = stub(Resource.class, new Answers() {
+
+				@Override
+				public Object answer(String method, Object[] args) {
+
+					switch (method) {
+						case "getPath":
+							return path + "/appointments";
+						case "listChildren":
+							return children.iterator();
+						case "adaptTo":
+							return args[0] == Node.class ? node(path + "/appointments", children) : null;
+						default:
+							return UNSUPPORTED;
+					}
+
+				}
+
+			});
+
+		}
+
+		return stub(Resource.class, new Answers() {
+
+			@Override
+			public Object answer(String method, Object[] args) {
+
+				switch (method) {
+					case "getPath":
+						return path;
+					case "getValueMap":
+						return valueMap;
+					case "getChild":
+						return Constants.PN_PROFILE_APPOINTMENTS.equals(args[0]) || "appointments".equals(args[0]) ? multiFieldResource : null;
+					case "listChildren":
+						return new ArrayList<Resource>().iterator();
+					default:
+						return UNSUPPORTED;
+				}
+
+			}
+
+		});
+
+	}
+
+	private static Resource assetResource(final String path) {
+
+		final List<Rendition> renditions = new ArrayList<Rendition>();
+		renditions.add(rendition(path, DamConstants.ORIGINAL_FILE, "image/jpeg"));
+		renditions.add(rendition(path, "cq5dam.thumbnail.48.48.png", "image/png"));
+		renditions.add(rendition(path, "cq5dam.thumbnail.140.100.png", "image/png"));
+		renditions.add(rendition(path, "cq5dam.thumbnail.319.319.png", "image/png"));
+		renditions.add(rendition(path, "cq5dam.web.1280.1280.jpeg", "image/jpeg"));
+
+		final Map<String, String> metadata = new HashMap<String, String>();
+		metadata.put(DamConstants.TIFF_IMAGEWIDTH, "2400");
+		metadata.put(DamConstants.TIFF_IMAGELENGTH, "1600");
+
+		final Asset asset = stub(Asset.class, new Answers() {
+
+			@Override
+			public Object answer(String method, Object[] args) {
+
+				switch (method) {
+					case "getPath":
+						return path;
+					case "getMimeType":
+						return "image/jpeg";
+					case "getMetadataValue":
+						return metadata.get(args[0]);
+					case "getRenditions":
+						return renditions;
+					default:
+						return UNSUPPORTED;
+				}
+
+			}
+
+		});
+
+		return stub(Resource.class, new Answers() {
+
+			@Override
+			public Object answer(String method, Object[] args) {
+
+				if (method.equals("adaptTo")) {
+
+					return args[0] == Asset.class ? asset : null;
+
+				}
+
+				return method.equals("getPath") ? path : UNSUPPORTED;
+
+			}
+
+		});
+
+	}
+
+	private static Rendition rendition(final String assetPath, final String name, final String mimeType) {
+
+		return stub(Rendition.class, new Answers() {
+
+			@Override
+			public Object answer(String method, Object[] args) {
+
+				switch (method) {
+					case "getName":
+						return name;
+					case "getMimeType":
+						return mimeType;
+					case "getPath":
+						return assetPath + "/jcr:content/renditions/" + name;
+					default:
+						return UNSUPPORTED;
+				}
+
+			}
+
+		});
+
+	}
+
+	private static Node node(final String path, final List<Resource> children) {
+
+		return stub(Node.class, new Answers() {
+
+			@Override
+			public Object answer(String method, Object[] args) {
+
+				switch (method) {
+					case "getPath":
+						return path;
+					case "getNodes":
+						return nodeIterator(children.iterator());
+					default:
+						return UNSUPPORTED;
+				}
+
+			}
+
+		});
+
+	}
+
+	private static NodeIterator nodeIterator(final Iterator<Resource> children) {
+
+		return stub(NodeIterator.class, new Answers() {
+
+			@Override
+			public Object answer(String method, Object[] args) {
+
+				switch (method) {
+					case "hasNext":
+						return children.hasNext();
+					case "next":
+					case "nextNode":
+						return childNode(children.next());
+					default:
+						return UNSUPPORTED;
+				}
+
+			}
+
+		});
+
+	}
+
+	private static Node childNode(final Resource resource) {
+
+		final ValueMap valueMap = resource.getValueMap();
+
+		return stub(Node.class, new Answers() {
+
+			@Override
+			public Object answer(String method, Object[] args) {
+
+				switch (method) {
+					case "getPath":
+						return resource.getPath();
+					case "hasProperty":
+						return valueMap.containsKey(args[0]);
+					case "getProperty":
+						return property(valueMap.get((String) args[0], String.class));
+					default:
+						return UNSUPPORTED;
+				}
+
+			}
+
+		});
+
+	}
+
+	private static Property property(final String value) {
+
+		return stub(Property.class, new Answers() {
+
+			@Override
+			public Object answer(String method, Object[] args) {
+
+				return method.equals("getString") ? value : UNSUPPORTED;
+
+			}
+
+		});
+
+	}
+
+	/**
+	 * Answers calls to a stand-in by method name. Returning UNSUPPORTED
+	 * fails the call.
+	 */
+	private abstract static class Answers {
+
+		static final Object UNSUPPORTED = new Object();
+
+		abstract Object answer(String method, Object[] args);
+
+	}
+
+	private static <T> T stub(final Class<T> type, final Answers answers) {
+
+		InvocationHandler handler = new InvocationHandler() {
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+
+				if (method.getDeclaringClass() == Object.class) {
+
+					switch (method.getName()) {
+						case "equals":
+							return proxy == args[0];
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						default:
+							return type.getSimpleName() + " stand-in";
+					}
+
+				}
+
+				Object result = answers.answer(method.getName(), args);
+
+				if (result == Answers.UNSUPPORTED) {
+
+					throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName());
+
+				}
+
+				return result;
+
+			}
+
+		};
+
+		return type.cast(Proxy.newProxyInstance(Fixtures.class.getClassLoader(), new Class<?>[] {type}, handler));
+
+	}
+
+}
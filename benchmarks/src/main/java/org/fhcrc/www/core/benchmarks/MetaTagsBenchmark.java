@@ -0,0 +1,112 @@
+package org.fhcrc.www.core.benchmarks;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.fhcrc.www.core.Utils;
+import org.fhcrc.www.core.services.SocialMetadataEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares writing the meta tags the way facebook_ogTags.html used to
+ * (data-sly-repeat over the key set, a second map lookup per key and
+ * attribute escaping for every tag) with the pre-rendered meta tag block.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetaTagsBenchmark {
+
+	private Map<String, String> metadata;
+	private SocialMetadataEntry cachedEntry;
+	private StringBuilder out;
+
+	@Setup
+	public void setup() {
+
+		Map<String, String> map = new LinkedHashMap<String, String>();
+		map.put("og:url", "https://www.fredhutch.org/en/news/center-news/2018/09/immunotherapy-trial-results.html");
+		map.put("og:title", "Immunotherapy trial shows \"durable\" responses in lymphoma patients");
+		map.put("og:description", "Researchers at Fred Hutch & partners report results from a phase 1 trial of CAR T-cell therapy.");
+		map.put("og:site_name", "Fred Hutch");
+		map.put("og:type", "article");
+		map.put("fb:app_id", "258306851682396");
+		map.put("twitter:title", "Immunotherapy trial shows \"durable\" responses in lymphoma patients");
+		map.put("twitter:site", "@fredhutch");
+		map.put("twitter:description", "Researchers at Fred Hutch & partners report results from a phase 1 trial of CAR T-cell therapy.");
+		map.put("og:image", "https://www.fredhutch.org/content/dam/www/news/2018/09/car-t-cells.jpg");
+		map.put("article:publisher", "https://www.facebook.com/HutchinsonCenter");
+		map.put("article:published_time", "2018-09-26T09:30-0700");
+		map.put("twitter:card", "summary_large_image");
+		map.put("twitter:image", "https://www.fredhutch.org/content/dam/www/news/2018/09/car-t-cells.jpg");
+
+		metadata = Collections.unmodifiableMap(map);
+		cachedEntry = new SocialMetadataEntry(metadata);
+		cachedEntry.getMetaTags();
+		out = new StringBuilder(4096);
+
+	}
+
+	/**
+	 * What HTL does for data-sly-repeat over metadata.keySet with an
+	 * escaped content attribute per tag.
+	 */
+	@Benchmark
+	public int dataSlyRepeat() {
+
+		out.setLength(0);
+
+		for (String key : metadata.keySet()) {
+
+			out.append("<meta property=\"");
+			Utils.escapeHtmlAttribute(key, out);
+			String value = metadata.get(key);
+
+			if (value != null && !value.isEmpty()) {
+
+				out.append("\" content=\"");
+				Utils.escapeHtmlAttribute(value, out);
+
+			}
+
+			out.append("\"/>\n");
+
+		}
+
+		return out.length();
+
+	}
+
+	/**
+	 * Rendering the block for an entry that has just been computed.
+	 */
+	@Benchmark
+	public int renderMetaTags() {
+
+		out.setLength(0);
+		out.append(new SocialMetadataEntry(metadata).getMetaTags());
+		return out.length();
+
+	}
+
+	/**
+	 * Writing the block from a cached entry, the common case on publish.
+	 */
+	@Benchmark
+	public int cachedMetaTags() {
+
+		out.setLength(0);
+		out.append(cachedEntry.getMetaTags());
+		return out.length();
+
+	}
+
+}
@@ -0,0 +1,72 @@
+package org.fhcrc.www.core.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.fhcrc.www.core.components.impl.SocialMediaHelperImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.day.cq.wcm.api.Page;
+
+/**
+ * Measures a full, uncached run of the metadata providers for each kind of
+ * page, as happens on the first request for a page version.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MetadataBenchmark {
+
+	@Param({"website", "article", "profile"})
+	private String pageType;
+
+	private Page page;
+	private ResourceResolver resourceResolver;
+	private SlingHttpServletRequest request;
+
+	@Setup
+	public void setup() {
+
+		if (pageType.equals("article")) {
+
+			page = Fixtures.articlePage();
+
+		} else if (pageType.equals("profile")) {
+
+			page = Fixtures.profilePage();
+
+		} else {
+
+			page = Fixtures.websitePage();
+
+		}
+
+		resourceResolver = Fixtures.resourceResolver();
+		request = Fixtures.request(resourceResolver);
+
+	}
+
+	@Benchmark
+	public Map<String, String> getMetadata() {
+
+		return new SocialMediaHelperImpl(page, resourceResolver, request).getMetadata();
+
+	}
+
+	@Benchmark
+	public String getMetaTags() {
+
+		return new SocialMediaHelperImpl(page, resourceResolver, request).getMetaTags();
+
+	}
+
+}
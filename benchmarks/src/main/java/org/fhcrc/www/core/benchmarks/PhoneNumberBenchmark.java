@@ -0,0 +1,135 @@
+package org.fhcrc.www.core.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.fhcrc.www.core.Constants;
+import org.fhcrc.www.core.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Formats a directory column of phone numbers for display and as tel:
+ * links, comparing the regex based implementation with the single scan
+ * and batch APIs. The previous implementation is kept here as a baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PhoneNumberBenchmark {
+
+	private static final String[] NUMBERS = {
+			"206.667.5000", "(206) 667-4675", "206-667-1234", "1-206-667-7700",
+			"2066672222", "206.667.4101", "+1 (206) 667-6312", "206 667 5555"
+	};
+
+	private String[] column;
+	private String[] display;
+	private String[] links;
+
+	@Setup
+	public void setup() {
+
+		// One listing page of staff directory entries
+		column = new String[100];
+
+		for (int i = 0; i < column.length; i++) {
+
+			column[i] = NUMBERS[i % NUMBERS.length];
+
+		}
+
+		display = new String[column.length];
+		links = new String[column.length];
+
+	}
+
+	@Benchmark
+	public String[] legacyFormatting() {
+
+		for (int i = 0; i < column.length; i++) {
+
+			display[i] = legacyFormatPhoneNumber(column[i]);
+			links[i] = legacyFormatPhoneLink(column[i]);
+
+		}
+
+		return links;
+
+	}
+
+	@Benchmark
+	public String[] singleNumberFormatting() {
+
+		for (int i = 0; i < column.length; i++) {
+
+			display[i] = Utils.formatPhoneNumber(column[i]);
+			links[i] = Utils.formatPhoneLink(column[i]);
+
+		}
+
+		return links;
+
+	}
+
+	@Benchmark
+	public String[] batchFormatting() {
+
+		Utils.formatPhoneNumbers(column, display, links);
+		return links;
+
+	}
+
+	private static String legacyFormatPhoneNumber(String phoneNumber) {
+
+		String digits = phoneNumber.replaceAll("[^\\d]", "");
+		StringBuffer sb = new StringBuffer();
+
+		if (digits.length() == 10) {
+
+			sb.append(digits.substring(0, 3)).append(".").append(digits.substring(3, 6)).append(".").append(digits.substring(6));
+
+		} else if (digits.length() == 11) {
+
+			sb.append(digits.substring(0, 1)).append(".").append(digits.substring(1, 4)).append(".")
+					.append(digits.substring(4, 7)).append(".").append(digits.substring(7));
+
+		} else {
+
+			return phoneNumber;
+
+		}
+
+		return sb.toString();
+
+	}
+
+	private static String legacyFormatPhoneLink(String phoneNumber) {
+
+		String digits = phoneNumber.replaceAll("[^\\d]", "");
+		StringBuffer sb = new StringBuffer();
+
+		if (digits.length() > 10) {
+
+			digits = digits.substring(digits.length() - 10);
+
+		}
+
+		if (digits.length() != 10) {
+
+			return "";
+
+		}
+
+		sb.append(Constants.TELEPHONE_URL_PREFIX).append("+1").append("-").append(digits.substring(0, 3)).append("-")
+				.append(digits.substring(3, 6)).append("-").append(digits.substring(6));
+
+		return sb.toString();
+
+	}
+
+}
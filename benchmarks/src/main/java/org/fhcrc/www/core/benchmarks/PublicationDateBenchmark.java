@@ -0,0 +1,68 @@
+package org.fhcrc.www.core.benchmarks;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.fhcrc.www.core.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares creating a SimpleDateFormat per call, as the news metadata
+ * provider used to, with Utils.formatPublicationDate. The dates are a
+ * listing page's worth of articles, several of which share a minute.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PublicationDateBenchmark {
+
+	private static final int DATE_COUNT = 64;
+
+	private Date[] dates;
+	private int next;
+
+	@Setup
+	public void setup() {
+
+		dates = new Date[DATE_COUNT];
+		long start = 1537979400000L; // 2018-09-26T09:30-0700
+
+		for (int i = 0; i < DATE_COUNT; i++) {
+
+			// Four articles per publishing minute, spread over a few weeks
+			dates[i] = new Date(start + (i / 4) * 86400000L + (i % 4) * 1000L);
+
+		}
+
+	}
+
+	private Date nextDate() {
+
+		Date date = dates[next];
+		next = (next + 1) & (DATE_COUNT - 1);
+		return date;
+
+	}
+
+	@Benchmark
+	public String simpleDateFormat() {
+
+		return new SimpleDateFormat("yyyy-MM-dd'T'HH:mmZ").format(nextDate());
+
+	}
+
+	@Benchmark
+	public String formatPublicationDate() {
+
+		return Utils.formatPublicationDate(nextDate());
+
+	}
+
+}
@@ -0,0 +1,62 @@
+package org.fhcrc.www.core.benchmarks;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.concurrent.TimeUnit;
+
+import org.fhcrc.www.core.Constants;
+import org.fhcrc.www.core.ShareLink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Builds the Twitter, LinkedIn and email share links for an article with
+ * the compiled ShareLink templates, against assembling them with
+ * URLEncoder the way components did before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ShareLinkBenchmark {
+
+	private static final String URL = "https://www.fredhutch.org/en/news/center-news/2018/09/immunotherapy-trial-results.html";
+	private static final String TITLE = "Immunotherapy trial shows durable responses in patients with advanced lymphoma";
+	private static final String DESCRIPTION = "Fred Hutch researchers report that 40% of patients treated with engineered T cells "
+			+ "remained in remission two years later \u2014 a result that \"changes what we thought was possible.\"";
+
+	@Benchmark
+	public int legacyShareLinks() throws UnsupportedEncodingException {
+
+		String twitter = "https://" + Constants.TWITTER_BASE + "?text=" + URLEncoder.encode(TITLE, "UTF-8")
+				+ "&url=" + URLEncoder.encode(URL, "UTF-8") + "&via=" + Constants.TWITTER_USER_NAME;
+		String linkedin = "https://" + Constants.LINKEDIN_BASE + "?" + Constants.PN_LINKEDIN_MINI
+				+ "&url=" + URLEncoder.encode(URL, "UTF-8") + "&title=" + URLEncoder.encode(TITLE, "UTF-8")
+				+ "&summary=" + URLEncoder.encode(DESCRIPTION, "UTF-8")
+				+ "&source=" + URLEncoder.encode(Constants.ORGANIZATION_NAME, "UTF-8");
+		String email = Constants.MAILTO_URL_PREFIX + "?subject=" + URLEncoder.encode(TITLE, "UTF-8").replace("+", "%20")
+				+ "&body=" + URLEncoder.encode(DESCRIPTION + "\n\n" + URL, "UTF-8").replace("+", "%20");
+
+		return twitter.length() + linkedin.length() + email.length();
+
+	}
+
+	@Benchmark
+	public int shareLinks() {
+
+		int length = 0;
+
+		for (ShareLink shareLink : ShareLink.values()) {
+
+			length += shareLink.build(URL, TITLE, DESCRIPTION, Constants.ORGANIZATION_NAME, Constants.TWITTER_USER_NAME).length();
+
+		}
+
+		return length;
+
+	}
+
+}
@@ -0,0 +1,111 @@
+package org.fhcrc.www.core.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.fhcrc.www.core.Constants;
+import org.fhcrc.www.core.MultiFieldValue;
+import org.fhcrc.www.core.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.day.cq.wcm.api.Page;
+
+/**
+ * Covers the Utils methods used on every page render that do not have a
+ * benchmark of their own: title resolution, canonical URLs and multifield
+ * reading. cleanLink, the phone formatters and date formatting are in
+ * CleanLinkBenchmark, PhoneNumberBenchmark and PublicationDateBenchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UtilsBenchmark {
+
+	private static final String[] APPOINTMENT_PROPERTIES = {
+			Constants.PN_PROFILE_APPOINTMENT_TITLE, Constants.PN_PROFILE_APPOINTMENT_ORG
+	};
+
+	/* How many appointments a profile teaser shows */
+	private static final int TEASER_LIMIT = 3;
+
+	private Page articlePage;
+	private Page profilePage;
+	private Resource profileContent;
+	private ResourceResolver resourceResolver;
+	private SlingHttpServletRequest request;
+
+	@Setup
+	public void setup() {
+
+		articlePage = Fixtures.articlePage();
+		profilePage = Fixtures.profilePage();
+		profileContent = profilePage.getContentResource();
+		resourceResolver = Fixtures.resourceResolver();
+		request = Fixtures.request(resourceResolver);
+
+	}
+
+	@Benchmark
+	public String getPageTitle() {
+
+		return Utils.getTitle(articlePage, Utils.PAGE_TITLE_LEVEL);
+
+	}
+
+	@Benchmark
+	public String getNavigationTitle() {
+
+		return Utils.getTitle(profilePage, Utils.NAV_TITLE_LEVEL);
+
+	}
+
+	@Benchmark
+	public String getCanonicalURL() {
+
+		return Utils.getCanonicalURL(resourceResolver, request, articlePage);
+
+	}
+
+	@Benchmark
+	public List<Map<String, String>> getMultiFieldValues() throws RepositoryException {
+
+		return Utils.getMultiFieldValues(profileContent, Constants.PN_PROFILE_APPOINTMENTS, APPOINTMENT_PROPERTIES);
+
+	}
+
+	@Benchmark
+	public void streamMultiFieldValues(Blackhole blackhole) {
+
+		for (MultiFieldValue value : Utils.streamMultiFieldValues(profileContent, Constants.PN_PROFILE_APPOINTMENTS, APPOINTMENT_PROPERTIES)) {
+
+			blackhole.consume(value.get(0));
+
+		}
+
+	}
+
+	@Benchmark
+	public void streamMultiFieldValuesWithLimit(Blackhole blackhole) {
+
+		for (MultiFieldValue value : Utils.streamMultiFieldValues(profileContent, Constants.PN_PROFILE_APPOINTMENTS, APPOINTMENT_PROPERTIES, TEASER_LIMIT)) {
+
+			blackhole.consume(value.get(0));
+
+		}
+
+	}
+
+}
@@ -0,0 +1,242 @@
+package org.fhcrc.www.core.filters;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.models.factory.ModelFactory;
+import org.apache.sling.settings.SlingSettingsService;
+import org.fhcrc.www.core.Constants;
+import org.fhcrc.www.core.MetadataProperty;
+import org.fhcrc.www.core.Utils;
+import org.fhcrc.www.core.components.SocialMediaHelper;
+import org.fhcrc.www.core.metrics.SocialMetrics;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+
+/**
+ * Answers page requests from social media crawlers with a document that has
+ * only a title and the social media meta tags, instead of rendering the
+ * whole component tree. Crawlers are recognized by a user agent pattern
+ * compiled from the configuration. The response is kept out of the
+ * dispatcher cache so browsers never receive it.
+ *
+ * The filter only runs on instances with one of the configured run modes,
+ * publish by default, so authors previewing a page always see it rendered.
+ * Pages that redirect (a redirect target or a vanity path) are passed on
+ * to the page component, so crawlers follow the redirect as before.
+ */
+@Component(
+		service = Filter.class,
+		property = {
+				"sling.filter.scope=REQUEST",
+				"sling.filter.extensions=html",
+				"sling.filter.methods=GET",
+				"service.ranking:Integer=5000"
+		}
+)
+@Designate(ocd = SocialCrawlerFilter.Config.class)
+public class SocialCrawlerFilter implements Filter {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(SocialCrawlerFilter.class);
+
+	@ObjectClassDefinition(
+			name = "Fred Hutch Social Crawler Fast Path",
+			description = "Serves social media crawlers a head-only document with the page's meta tags"
+	)
+	public @interface Config {
+
+		@AttributeDefinition(name = "Enabled", description = "Turns the crawler fast path on or off")
+		boolean enabled() default true;
+
+		@AttributeDefinition(name = "Run modes", description = "The fast path is only used on instances with one of these run modes")
+		String[] runModes() default {"publish"};
+
+		@AttributeDefinition(name = "User agents", description = "Case-insensitive user agent fragments that identify social media crawlers")
+		String[] userAgents() default {
+				"facebookexternalhit",
+				"Facebot",
+				"Twitterbot",
+				"LinkedInBot",
+				"Slackbot-LinkExpanding",
+				"Pinterestbot",
+				"WhatsApp"
+		};
+
+	}
+
+	private static final String DOCUMENT_START = "<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\"/>\n<title>";
+	private static final String TITLE_END = "</title>\n";
+	private static final String DOCUMENT_END = "</head>\n<body></body>\n</html>\n";
+
+	@Reference
+	private ModelFactory modelFactory;
+
+	@Reference
+	private SlingSettingsService slingSettings;
+
+	private volatile boolean enabled;
+	private volatile Pattern crawlers;
+
+	@Activate
+	@Modified
+	protected void activate(Config config) {
+
+		enabled = config.enabled() && hasRunMode(slingSettings.getRunModes(), config.runModes());
+		crawlers = compile(config.userAgents());
+
+		LOGGER.info("Social crawler fast path enabled: {}, user agents: {}", enabled, crawlers);
+
+	}
+
+	private static boolean hasRunMode(Set<String> runModes, String[] required) {
+
+		for (String runMode : required == null ? new String[0] : required) {
+
+			if (runModes.contains(runMode)) {
+
+				return true;
+
+			}
+
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * @return a pattern matching any of the fragments, or null if there are none
+	 */
+	static Pattern compile(String[] userAgents) {
+
+		StringBuilder regex = new StringBuilder();
+
+		for (String userAgent : userAgents == null ? new String[0] : userAgents) {
+
+			if (userAgent == null || userAgent.trim().isEmpty()) {
+
+				continue;
+
+			}
+
+			if (regex.length() > 0) {
+
+				regex.append('|');
+
+			}
+
+			regex.append(Pattern.quote(userAgent.trim()));
+
+		}
+
+		return regex.length() == 0 ? null : Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+
+	}
+
+	@Override
+	public void init(FilterConfig filterConfig) {
+	}
+
+	@Override
+	public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain) throws IOException, ServletException {
+
+		SlingHttpServletRequest request = (SlingHttpServletRequest) servletRequest;
+		Page page = enabled ? getCrawledPage(request) : null;
+
+		if (page == null) {
+
+			chain.doFilter(servletRequest, servletResponse);
+			return;
+
+		}
+
+		SocialMediaHelper helper = modelFactory.createModel(request, SocialMediaHelper.class);
+		String title = helper.getMetadata().get(MetadataProperty.OG_TITLE.getName());
+		String metaTags = helper.getMetaTags();
+
+		StringBuilder document = new StringBuilder(DOCUMENT_START.length() + metaTags.length() + 128);
+		document.append(DOCUMENT_START);
+		Utils.escapeHtmlAttribute(title == null ? "" : title, document);
+		document.append(TITLE_END);
+		document.append(metaTags);
+		document.append(DOCUMENT_END);
+
+		SlingHttpServletResponse response = (SlingHttpServletResponse) servletResponse;
+		response.setContentType("text/html");
+		response.setCharacterEncoding("UTF-8");
+		// The same URL serves the full page to everyone else
+		response.setHeader("Dispatcher", "no-cache");
+		response.setHeader("Cache-Control", "private, no-store");
+		response.setHeader("Vary", "User-Agent");
+
+		PrintWriter writer = response.getWriter();
+		writer.write(document.toString());
+		writer.flush();
+
+		SocialMetrics.CRAWLER_REQUESTS.increment();
+		LOGGER.debug("Served head-only document for {} to a social crawler", page.getPath());
+
+	}
+
+	/**
+	 * @return the page being requested if it is a plain page request from a
+	 * social crawler, otherwise null
+	 */
+	private Page getCrawledPage(SlingHttpServletRequest request) {
+
+		Pattern pattern = crawlers;
+		String userAgent = request.getHeader("User-Agent");
+
+		if (pattern == null || userAgent == null || request.getRequestPathInfo().getSelectorString() != null
+				|| !pattern.matcher(userAgent).find()) {
+
+			return null;
+
+		}
+
+		Resource resource = request.getResource();
+		PageManager pageManager = request.getResourceResolver().adaptTo(PageManager.class);
+		Page page = pageManager == null ? null : pageManager.getPage(resource.getPath());
+
+		return page == null || isRedirect(page) ? null : page;
+
+	}
+
+	/**
+	 * @return true if the page component answers the page with a redirect,
+	 * which the head-only document would hide from the crawler
+	 */
+	private static boolean isRedirect(Page page) {
+
+		return page.getVanityUrl() != null
+				|| !page.getProperties().get(Constants.PN_REDIRECT_TARGET, "").isEmpty();
+
+	}
+
+	@Override
+	public void destroy() {
+	}
+
+}
@@ -0,0 +1,190 @@
+package org.fhcrc.www.core.components.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.fhcrc.www.core.MetadataProperty;
+
+/**
+ * The order of the meta tags of one kind of page, and where each tag's
+ * value is kept in a {@link MetadataMap}'s value array. Known properties
+ * are found through a table indexed by their ordinal; tags a registered
+ * provider adds that are not {@link MetadataProperty} constants are found
+ * by name. Layouts are shared by every page with the same tags, so a page's
+ * metadata costs only its array of values.
+ */
+final class MetadataLayout {
+
+    /* Layouts built from snapshots and registered providers; there are only a few kinds of page */
+    private static final int MAX_LAYOUTS = 256;
+    private static final ConcurrentMap<List<String>, MetadataLayout> LAYOUTS =
+            new ConcurrentHashMap<List<String>, MetadataLayout>();
+
+    static final MetadataLayout WEBSITE = of(
+            MetadataProperty.OG_URL, MetadataProperty.OG_TITLE, MetadataProperty.OG_DESCRIPTION,
+            MetadataProperty.OG_SITE_NAME, MetadataProperty.OG_LOCALE, MetadataProperty.OG_TYPE,
+            MetadataProperty.FB_APP_ID, MetadataProperty.TWITTER_TITLE, MetadataProperty.TWITTER_SITE,
+            MetadataProperty.TWITTER_DESCRIPTION, MetadataProperty.TWITTER_CARD);
+
+    static final MetadataLayout ARTICLE = of(
+            MetadataProperty.OG_URL, MetadataProperty.OG_TITLE, MetadataProperty.OG_DESCRIPTION,
+            MetadataProperty.OG_SITE_NAME, MetadataProperty.OG_LOCALE, MetadataProperty.OG_TYPE,
+            MetadataProperty.FB_APP_ID, MetadataProperty.TWITTER_TITLE, MetadataProperty.TWITTER_SITE,
+            MetadataProperty.TWITTER_DESCRIPTION, MetadataProperty.OG_IMAGE, MetadataProperty.OG_IMAGE_WIDTH,
+            MetadataProperty.OG_IMAGE_HEIGHT, MetadataProperty.OG_IMAGE_TYPE, MetadataProperty.ARTICLE_PUBLISHER,
+            MetadataProperty.ARTICLE_PUBLISHED_TIME, MetadataProperty.TWITTER_CARD, MetadataProperty.TWITTER_IMAGE);
+
+    static final MetadataLayout PROFILE = of(
+            MetadataProperty.OG_URL, MetadataProperty.OG_TITLE, MetadataProperty.OG_DESCRIPTION,
+            MetadataProperty.OG_SITE_NAME, MetadataProperty.OG_LOCALE, MetadataProperty.OG_TYPE,
+            MetadataProperty.FB_APP_ID, MetadataProperty.TWITTER_TITLE, MetadataProperty.TWITTER_SITE,
+            MetadataProperty.TWITTER_DESCRIPTION, MetadataProperty.PROFILE_FIRST_NAME,
+            MetadataProperty.PROFILE_LAST_NAME, MetadataProperty.TWITTER_CARD, MetadataProperty.OG_IMAGE,
+            MetadataProperty.OG_IMAGE_WIDTH, MetadataProperty.OG_IMAGE_HEIGHT, MetadataProperty.OG_IMAGE_TYPE,
+            MetadataProperty.TWITTER_IMAGE);
+
+    private final String[] names;
+    /* null where the tag is not a known property */
+    private final MetadataProperty[] properties;
+    /* the position of each known property, by ordinal, or -1 */
+    private final int[] positions;
+    private final boolean hasUnknownNames;
+
+    private MetadataLayout(List<String> nameList) {
+
+        int size = nameList.size();
+        boolean unknown = false;
+
+        names = new String[size];
+        properties = new MetadataProperty[size];
+        positions = new int[MetadataProperty.values().length];
+        Arrays.fill(positions, -1);
+
+        for (int i = 0; i < size; i++) {
+
+            MetadataProperty property = MetadataProperty.forName(nameList.get(i));
+
+            if (property == null) {
+                names[i] = nameList.get(i);
+                unknown = true;
+            } else {
+                names[i] = property.getName();
+                properties[i] = property;
+                positions[property.ordinal()] = i;
+            }
+
+        }
+
+        hasUnknownNames = unknown;
+
+    }
+
+    /**
+     * @return the layout for these tags, in this order
+     */
+    static MetadataLayout of(MetadataProperty... properties) {
+
+        List<String> nameList = new ArrayList<String>(properties.length);
+
+        for (MetadataProperty property : properties) {
+            nameList.add(property.getName());
+        }
+
+        return of(nameList);
+
+    }
+
+    /**
+     * @return the layout for these tag names, in this order, shared with
+     * any other page that has the same tags
+     * @throws IllegalArgumentException if a name appears twice
+     */
+    static MetadataLayout of(List<String> nameList) {
+
+        MetadataLayout layout = LAYOUTS.get(nameList);
+
+        if (layout != null) {
+            return layout;
+        }
+
+        if (nameList.size() != new HashSet<String>(nameList).size()) {
+            throw new IllegalArgumentException("Duplicate meta tag names in " + nameList);
+        }
+
+        List<String> key = Collections.unmodifiableList(new ArrayList<String>(nameList));
+        layout = new MetadataLayout(key);
+
+        if (LAYOUTS.size() >= MAX_LAYOUTS) {
+            return layout;
+        }
+
+        MetadataLayout existing = LAYOUTS.putIfAbsent(key, layout);
+        return existing == null ? layout : existing;
+
+    }
+
+    int size() {
+
+        return names.length;
+
+    }
+
+    String getName(int position) {
+
+        return names[position];
+
+    }
+
+    /**
+     * @return the known property at this position, or null
+     */
+    MetadataProperty getProperty(int position) {
+
+        return properties[position];
+
+    }
+
+    /**
+     * @return the position of the property, or -1 if this layout does not have it
+     */
+    int indexOf(MetadataProperty property) {
+
+        return positions[property.ordinal()];
+
+    }
+
+    /**
+     * @return the position of the tag name, or -1 if this layout does not have it
+     */
+    int indexOf(Object name) {
+
+        if (!(name instanceof String)) {
+            return -1;
+        }
+
+        MetadataProperty property = MetadataProperty.forName((String) name);
+
+        if (property != null) {
+            return positions[property.ordinal()];
+        }
+
+        if (hasUnknownNames) {
+
+            for (int i = 0; i < names.length; i++) {
+                if (properties[i] == null && names[i].equals(name)) {
+                    return i;
+                }
+            }
+
+        }
+
+        return -1;
+
+    }
+
+}
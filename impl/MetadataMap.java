@@ -0,0 +1,325 @@
+package org.fhcrc.www.core.components.impl;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.fhcrc.www.core.MetadataProperty;
+
+/**
+ * A read-only map of meta tag property names to content values, kept as a
+ * flat array of values in the order of a shared {@link MetadataLayout}.
+ * Values can be read by {@link MetadataProperty} without hashing the tag
+ * name, and the Map view lets HTL iterate the tags with data-sly-list in
+ * layout order. A tag whose value is {@link #ABSENT} is left out of the
+ * map, the way an optional tag was never put.
+ *
+ * A map built from a {@link Source} computes each value the first time it
+ * is read and then keeps it. Until every value has been computed it reads
+ * the page through its source and belongs to the request that created it.
+ * Once the last value is in, the source is told and released, and the map
+ * can be shared between threads like any other finished metadata map.
+ */
+final class MetadataMap extends AbstractMap<String, String> {
+
+    /**
+     * Returned by a source for a tag that this page does not have.
+     */
+    static final Object ABSENT = new Object();
+
+    private static final Object PENDING = new Object();
+
+    /**
+     * Computes the values of a MetadataMap.
+     */
+    interface Source {
+
+        /**
+         * @param property the tag to compute, or null for a tag that is not
+         * a known property
+         * @param name the tag's property name
+         * @return the content value for the tag, which may be null, or
+         * {@link MetadataMap#ABSENT} to leave it out. The source may read
+         * other tags of the map, but not the one it is computing.
+         */
+        Object compute(MetadataProperty property, String name, MetadataMap metadata);
+
+        /**
+         * Called once, after the last value of the map has been computed.
+         */
+        void materialized(MetadataMap metadata);
+
+    }
+
+    private final MetadataLayout layout;
+    private final Object[] values;
+
+    private Source source;
+    private int pending;
+    private int size = -1;
+
+    /**
+     * Creates a map whose values are computed by the source as they are read.
+     */
+    MetadataMap(MetadataLayout layout, Source source) {
+
+        this.layout = layout;
+        this.values = new Object[layout.size()];
+        this.source = source;
+        this.pending = values.length;
+
+        Arrays.fill(values, PENDING);
+
+        if (pending == 0) {
+            finish();
+        }
+
+    }
+
+    private MetadataMap(MetadataLayout layout, Object[] values) {
+
+        this.layout = layout;
+        this.values = values;
+
+    }
+
+    /**
+     * @return a compact copy of an ordered metadata map, e.g. one read from
+     * an activation snapshot
+     */
+    static MetadataMap copyOf(Map<String, String> metadata) {
+
+        List<String> names = new ArrayList<String>(metadata.keySet());
+        MetadataLayout layout = MetadataLayout.of(names);
+        Object[] values = new Object[names.size()];
+        int i = 0;
+
+        for (String value : metadata.values()) {
+
+            values[i] = share(layout.getProperty(i), value, values, i);
+            i++;
+
+        }
+
+        return new MetadataMap(layout, values);
+
+    }
+
+    /**
+     * Shares values that repeat across pages, and values that repeat within
+     * the page, such as twitter:title and og:title.
+     */
+    private static String share(MetadataProperty property, String value, Object[] values, int count) {
+
+        if (value == null) {
+            return null;
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (value.equals(values[i])) {
+                return (String) values[i];
+            }
+        }
+
+        return property == null ? value : property.share(value);
+
+    }
+
+    /**
+     * Computes every value that has not been read yet.
+     * @return this map
+     */
+    MetadataMap materialize() {
+
+        for (int i = 0; i < values.length && pending > 0; i++) {
+            valueAt(i);
+        }
+
+        return this;
+
+    }
+
+    /**
+     * @return true once every value has been computed
+     */
+    boolean isMaterialized() {
+
+        return pending == 0;
+
+    }
+
+    /**
+     * @return the value of the tag, or null if the page does not have it
+     */
+    String get(MetadataProperty property) {
+
+        return valueOf(layout.indexOf(property));
+
+    }
+
+    @Override
+    public String get(Object key) {
+
+        return valueOf(layout.indexOf(key));
+
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+
+        int index = layout.indexOf(key);
+        return index >= 0 && valueAt(index) != ABSENT;
+
+    }
+
+    @Override
+    public int size() {
+
+        if (size < 0) {
+
+            materialize();
+
+            int count = 0;
+
+            for (Object value : values) {
+                if (value != ABSENT) {
+                    count++;
+                }
+            }
+
+            size = count;
+
+        }
+
+        return size;
+
+    }
+
+    @Override
+    public boolean isEmpty() {
+
+        return size() == 0;
+
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+
+        return new AbstractSet<Map.Entry<String, String>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+
+                return new EntryIterator();
+
+            }
+
+            @Override
+            public int size() {
+
+                return MetadataMap.this.size();
+
+            }
+
+        };
+
+    }
+
+    private String valueOf(int index) {
+
+        if (index < 0) {
+            return null;
+        }
+
+        Object value = valueAt(index);
+        return value == ABSENT ? null : (String) value;
+
+    }
+
+    private Object valueAt(int index) {
+
+        Object value = values[index];
+
+        if (value == PENDING) {
+
+            MetadataProperty property = layout.getProperty(index);
+            value = source.compute(property, layout.getName(index), this);
+
+            if (value instanceof String && property != null) {
+                value = property.share((String) value);
+            }
+
+            values[index] = value;
+
+            if (--pending == 0) {
+                finish();
+            }
+
+        }
+
+        return value;
+
+    }
+
+    private void finish() {
+
+        Source finished = source;
+        source = null;
+
+        if (finished != null) {
+            finished.materialized(this);
+        }
+
+    }
+
+    /**
+     * Computes values in layout order as it goes, looking one tag ahead to
+     * skip the absent ones.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<String, String>> {
+
+        private int next = advance(0);
+
+        private int advance(int from) {
+
+            int index = from;
+
+            while (index < values.length && valueAt(index) == ABSENT) {
+                index++;
+            }
+
+            return index;
+
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            return next < values.length;
+
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+
+            if (next >= values.length) {
+                throw new NoSuchElementException();
+            }
+
+            Map.Entry<String, String> entry =
+                    new AbstractMap.SimpleImmutableEntry<String, String>(layout.getName(next), (String) values[next]);
+            next = advance(next + 1);
+
+            return entry;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,191 @@
+package org.fhcrc.www.core.components.impl;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import org.apache.sling.api.resource.ValueMap;
+import org.fhcrc.www.core.Constants;
+
+import com.day.cq.wcm.api.Page;
+
+/**
+ * Typed access to the properties of a page that the metadata providers
+ * use, along with the template and resource type used to pick its
+ * provider. Each property is read and converted the first time it is
+ * asked for and then kept, so the providers can look at the same value as
+ * often as they like without going back to the ValueMap, and a page never
+ * reads a property its provider does not need. String values are never
+ * null; missing properties are empty strings.
+ */
+final class PageProperties {
+
+    private static final String PN_TEMPLATE = "cq:template";
+    private static final String PN_RESOURCE_TYPE = "sling:resourceType";
+
+    private final ValueMap properties;
+
+    private boolean publicationDateRead;
+    private boolean hasPublicationDate;
+    private Date publicationDate;
+
+    private String articleImage;
+    private String socialMediaImage;
+    private String firstName;
+    private String lastName;
+    private String photo;
+
+    private PageProperties(ValueMap properties) {
+
+        this.properties = properties;
+
+    }
+
+    /**
+     * @return the page's properties, read as they are needed
+     */
+    static PageProperties of(Page page) {
+
+        return new PageProperties(page.getProperties());
+
+    }
+
+    /**
+     * @return the underlying ValueMap, for properties that are not read here
+     */
+    ValueMap getValueMap() {
+
+        return properties;
+
+    }
+
+    /**
+     * @return the page's cq:template, or null
+     */
+    String getTemplate() {
+
+        return properties.get(PN_TEMPLATE, String.class);
+
+    }
+
+    /**
+     * @return the sling:resourceType of the page's content, or null
+     */
+    String getResourceType() {
+
+        return properties.get(PN_RESOURCE_TYPE, String.class);
+
+    }
+
+    /**
+     * @return true if the page has a non-empty publicationDate, i.e. it is a news article
+     */
+    boolean hasPublicationDate() {
+
+        readPublicationDate();
+        return hasPublicationDate;
+
+    }
+
+    /**
+     * @return the publication date, or null if it is missing or cannot be read as a date
+     */
+    Date getPublicationDate() {
+
+        readPublicationDate();
+        return publicationDate;
+
+    }
+
+    private void readPublicationDate() {
+
+        if (publicationDateRead) {
+
+            return;
+
+        }
+
+        Object pubDate = properties.get(Constants.PN_ARTICLE_PUBLICATION_DATE);
+
+        if (pubDate instanceof Calendar) {
+
+            hasPublicationDate = true;
+            publicationDate = ((Calendar) pubDate).getTime();
+
+        } else if (pubDate instanceof Date) {
+
+            hasPublicationDate = true;
+            publicationDate = (Date) pubDate;
+
+        } else {
+
+            // Fall back to the ValueMap's own conversion for dates stored as strings
+            hasPublicationDate = pubDate != null && !pubDate.toString().isEmpty();
+            publicationDate = hasPublicationDate ? properties.get(Constants.PN_ARTICLE_PUBLICATION_DATE, Date.class) : null;
+
+        }
+
+        publicationDateRead = true;
+
+    }
+
+    String getArticleImage() {
+
+        if (articleImage == null) {
+
+            articleImage = properties.get(Constants.PN_ARTICLE_IMAGE, "");
+
+        }
+
+        return articleImage;
+
+    }
+
+    String getSocialMediaImage() {
+
+        if (socialMediaImage == null) {
+
+            socialMediaImage = properties.get(Constants.PN_ARTICLE_SOCIAL_MEDIA_IMAGE, "");
+
+        }
+
+        return socialMediaImage;
+
+    }
+
+    String getFirstName() {
+
+        if (firstName == null) {
+
+            firstName = properties.get(Constants.PN_PROFILE_FIRST_NAME, "");
+
+        }
+
+        return firstName;
+
+    }
+
+    String getLastName() {
+
+        if (lastName == null) {
+
+            lastName = properties.get(Constants.PN_PROFILE_LAST_NAME, "");
+
+        }
+
+        return lastName;
+
+    }
+
+    String getPhoto() {
+
+        if (photo == null) {
+
+            photo = properties.get(Constants.PN_PROFILE_PHOTO, "");
+
+        }
+
+        return photo;
+
+    }
+
+}
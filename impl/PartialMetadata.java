@@ -0,0 +1,135 @@
+package org.fhcrc.www.core.components.impl;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The values of a page's metadata that have been computed so far, shared
+ * through the metadata cache while no request has read all of them yet.
+ * Each request that reads the page's tags takes the values already here
+ * and adds the ones it computes with its own resource resolver, so a page
+ * whose readers only ever ask for a few tags is still computed once. The
+ * values are plain strings, so the map holds on to no request.
+ *
+ * The Map view holds the computed tags that the page has, in no
+ * particular order; {@link #lookup} also tells a tag the page does not
+ * have from one that has not been computed yet.
+ */
+final class PartialMetadata extends AbstractMap<String, String> {
+
+    /**
+     * Returned by {@link #lookup} for a tag that has not been computed yet.
+     */
+    static final Object PENDING = new Object();
+
+    /* Stands in for a null value, which a ConcurrentMap cannot hold */
+    private static final Object NULL = new Object();
+
+    private final ConcurrentMap<String, Object> values = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * @return the computed value of the tag, which may be null or
+     * {@link MetadataMap#ABSENT}, or {@link #PENDING}
+     */
+    Object lookup(String name) {
+
+        Object value = values.get(name);
+
+        if (value == null) {
+            return PENDING;
+        }
+
+        return value == NULL ? null : value;
+
+    }
+
+    /**
+     * Records a computed value, as returned by a {@link MetadataMap.Source}.
+     */
+    void record(String name, Object value) {
+
+        values.put(name, value == null ? NULL : value);
+
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+
+        return new AbstractSet<Map.Entry<String, String>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+
+                final Iterator<Map.Entry<String, Object>> computed = values.entrySet().iterator();
+
+                return new Iterator<Map.Entry<String, String>>() {
+
+                    private Map.Entry<String, String> next = advance();
+
+                    private Map.Entry<String, String> advance() {
+
+                        while (computed.hasNext()) {
+
+                            Map.Entry<String, Object> entry = computed.next();
+
+                            if (entry.getValue() instanceof String) {
+                                return new AbstractMap.SimpleImmutableEntry<String, String>(entry.getKey(), (String) entry.getValue());
+                            }
+
+                        }
+
+                        return null;
+
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+
+                        return next != null;
+
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+
+                        if (next == null) {
+                            throw new NoSuchElementException();
+                        }
+
+                        Map.Entry<String, String> entry = next;
+                        next = advance();
+
+                        return entry;
+
+                    }
+
+                };
+
+            }
+
+            @Override
+            public int size() {
+
+                int size = 0;
+
+                for (Object value : values.values()) {
+                    if (value instanceof String) {
+                        size++;
+                    }
+                }
+
+                return size;
+
+            }
+
+        };
+
+    }
+
+}
@@ -10,128 +10,1050 @@ package org.fhcrc.www.core.components.impl;
 import org.fhcrc.www.core.components.SocialMediaHelper;
 import org.fhcrc.www.core.Utils;
 import org.fhcrc.www.core.Constants;
+import org.fhcrc.www.core.DescriptionNormalizer;
+import org.fhcrc.www.core.MetadataProperty;
+import org.fhcrc.www.core.SiteProfile;
+import org.fhcrc.www.core.metrics.SocialMetrics;
+import org.fhcrc.www.core.services.CanonicalURLService;
+import org.fhcrc.www.core.services.ImageInfo;
+import org.fhcrc.www.core.services.ImageMetadataService;
+import org.fhcrc.www.core.services.SiteProfileService;
+import org.fhcrc.www.core.services.SocialMetadataCache;
+import org.fhcrc.www.core.services.SocialMetadataEntry;
+import org.fhcrc.www.core.services.SocialMetadataExecutor;
+import org.fhcrc.www.core.services.SocialMetadataProvider;
+import org.fhcrc.www.core.services.SocialMetadataProviderRegistry;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
 import org.apache.sling.api.SlingHttpServletRequest;
+import java.util.ArrayList;
 import java.util.Map;
-import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+import javax.annotation.PostConstruct;
+
+import com.day.cq.dam.api.DamConstants;
 import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+
+import org.apache.sling.models.annotations.DefaultInjectionStrategy;
+import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.annotations.injectorspecific.OSGiService;
+import org.apache.sling.models.annotations.injectorspecific.ScriptVariable;
+import org.apache.sling.models.annotations.injectorspecific.Self;
+import org.apache.sling.models.annotations.injectorspecific.SlingObject;
+
+@Model(
+		adaptables = {SlingHttpServletRequest.class},
+		adapters = {SocialMediaHelper.class},
+		defaultInjectionStrategy = DefaultInjectionStrategy.OPTIONAL
+)
+public class SocialMediaHelperImpl implements SocialMediaHelper {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(SocialMediaHelperImpl.class);
+
+    static final String DEFAULT_EXTENSION = "html";
+
+    /*
+     * Cache key extension of the entries built by the warm-up. Their og:url
+     * was mapped without a request, so they are never served as they are;
+     * requests take every other value from them.
+     */
+    private static final String WARMED_EXTENSION = "warm-up";
+
+    /* Cache key host of entries built without a request */
+    private static final String NO_HOST = "";
+
+    /* Batches with fewer pages to build than this are never split across threads */
+    private static final int MIN_PARALLEL_PAGES = 8;
+    private static final int MIN_PAGES_PER_THREAD = 4;
+
+    @ScriptVariable
+    private Page currentPage = null;
+
+    @Self
+    private SlingHttpServletRequest request = null;
+
+    @SlingObject
+    private ResourceResolver resourceResolver;
+
+    @OSGiService
+    private SocialMetadataCache metadataCache;
+
+    @OSGiService
+    private CanonicalURLService canonicalURLService;
+
+    @OSGiService
+    private SocialMetadataProviderRegistry providerRegistry;
+
+    @OSGiService
+    private ImageMetadataService imageMetadataService;
+
+    @OSGiService
+    private SiteProfileService siteProfileService;
+
+    @OSGiService
+    private SocialMetadataExecutor executor;
+
+    private SocialMetadataEntry entry;
+
+    private PageProperties pageProperties;
+
+    private SiteProfile siteProfile;
+
+    /* Set for helpers that build one page of a batch */
+    private String extension;
+    private String host;
+    private String canonicalURL;
+    private String title;
+
+    /* Set for helpers that warm the cache */
+    private boolean warming;
+
+    public SocialMediaHelperImpl() {
+    }
+
+    /**
+     * Creates a helper outside of a Sling Model adaptation, e.g. for
+     * replication or background jobs. The request may be null, in which
+     * case the canonical URL is mapped without it and uses the default
+     * extension. Helpers created this way do not use the metadata cache,
+     * and treat every page as part of www.fredhutch.org.
+     */
+    public SocialMediaHelperImpl(Page currentPage, ResourceResolver resourceResolver, SlingHttpServletRequest request) {
+
+        this(currentPage, resourceResolver, request, null, null);
+
+    }
+
+    /**
+     * Creates a helper outside of a Sling Model adaptation that chooses the
+     * page's provider through the SocialMetadataProviderRegistry and finds
+     * its site through the SiteProfileService, as requests do. It does not
+     * use the metadata cache.
+     */
+    public SocialMediaHelperImpl(Page currentPage, ResourceResolver resourceResolver, SlingHttpServletRequest request,
+            SocialMetadataProviderRegistry providerRegistry, SiteProfileService siteProfileService) {
+
+        this.currentPage = currentPage;
+        this.resourceResolver = resourceResolver;
+        this.request = request;
+        this.providerRegistry = providerRegistry;
+        this.siteProfileService = siteProfileService;
+
+    }
+
+    /**
+     * Creates a helper outside of a request that builds metadata through the
+     * shared services for warming the cache before requests arrive. The
+     * metadata is cached apart from that of requests, since its canonical URL
+     * is mapped without a request; requests for the page reuse all of its
+     * other values.
+     */
+    public SocialMediaHelperImpl(Page currentPage, ResourceResolver resourceResolver, SocialMetadataCache metadataCache,
+            CanonicalURLService canonicalURLService, SocialMetadataProviderRegistry providerRegistry,
+            ImageMetadataService imageMetadataService, SiteProfileService siteProfileService) {
+
+        this(currentPage, resourceResolver, null, providerRegistry, siteProfileService);
+        this.metadataCache = metadataCache;
+        this.canonicalURLService = canonicalURLService;
+        this.imageMetadataService = imageMetadataService;
+        this.warming = true;
+
+    }
+
+    /**
+     * Creates the helper for one page of a batch, sharing the services and
+     * request of the helper running the batch. The site, canonical URL and
+     * title have already been resolved with the rest of the batch.
+     */
+    private SocialMediaHelperImpl(SocialMediaHelperImpl batch, Page page, ResourceResolver resourceResolver,
+            SiteProfile siteProfile, String canonicalURL, String title) {
+
+        this(page, resourceResolver, batch.request, batch.providerRegistry, batch.siteProfileService);
+        this.metadataCache = batch.metadataCache;
+        this.canonicalURLService = batch.canonicalURLService;
+        this.imageMetadataService = batch.imageMetadataService;
+        this.extension = batch.getExtension();
+        this.host = batch.getCacheHost();
+        this.siteProfile = siteProfile;
+        this.canonicalURL = canonicalURL;
+        this.title = title;
+
+    }
+
+    /**
+     * Outside of HTL there is no currentPage script variable, e.g. when a
+     * servlet or filter adapts the request, so the page is taken from the
+     * request's resource instead.
+     */
+    @PostConstruct
+    protected void init() {
+
+        if (currentPage == null && request != null && resourceResolver != null) {
+
+            PageManager pageManager = resourceResolver.adaptTo(PageManager.class);
+
+            if (pageManager != null) {
+                currentPage = pageManager.getContainingPage(request.getResource());
+            }
+
+        }
+
+    }
+
+    @Override
+    public Map<String,String> getMetadata() {
+
+        return getEntry().getMetadata();
+
+    }
+
+    @Override
+    public String getMetaTags() {
+
+        return getEntry().getMetaTags();
+
+    }
+
+    @Override
+    public Map<String, String> getShareLinks() {
+
+        return getEntry().getShareLinks();
+
+    }
+
+    @Override
+    public String getJsonLd() {
+
+        return getEntry().getJsonLd();
+
+    }
+
+    @Override
+    public List<Map<String, String>> getMetadata(Collection<Page> pages) {
+
+        return getMetadata(pages, false);
+
+    }
+
+    /**
+     * Each page's site is looked up once and cached pages are answered
+     * first. The canonical URLs and titles of the remaining pages are then
+     * resolved in one pass each, and their metadata is built either on this
+     * thread or, when parallel is set and the batch is large enough, split
+     * across the bundle's SocialMetadataExecutor. Each worker reads its
+     * pages through its own clone of the resource resolver, since a
+     * resolver must not be shared between threads.
+     */
+    @Override
+    public List<Map<String, String>> getMetadata(Collection<Page> pages, boolean parallel) {
+
+        List<Page> pageList = new ArrayList<Page>(pages);
+        SocialMetadataEntry[] entries = new SocialMetadataEntry[pageList.size()];
+        SiteProfile[] sites = new SiteProfile[entries.length];
+        List<Integer> missing = new ArrayList<Integer>();
+        List<Page> missingPages = new ArrayList<Page>();
+        String batchExtension = getExtension();
+        String batchHost = getCacheHost();
+
+        for (int i = 0; i < entries.length; i++) {
+
+            Page page = pageList.get(i);
+
+            if (page == null) {
+                continue;
+            }
+
+            sites[i] = getSiteProfile(page);
+
+            if (metadataCache != null) {
+                entries[i] = metadataCache.get(page.getPath(), getLastModified(page), batchExtension, batchHost, sites[i]);
+            }
+
+            // A listing reads every tag, so an incomplete entry is built in full like a missing one
+            if (entries[i] == null || !entries[i].isComplete()) {
+                entries[i] = null;
+                missing.add(i);
+                missingPages.add(page);
+            }
+
+        }
+
+        List<String> urls = getCanonicalURLs(missingPages);
+        List<String> titles = getTitles(missingPages);
+
+        if (parallel && missing.size() >= MIN_PARALLEL_PAGES) {
+            buildInParallel(pageList, missing, sites, urls, titles, entries);
+        }
+
+        // Everything when building on this thread, and whatever the workers could not build
+        for (int i = 0; i < missing.size(); i++) {
+
+            int index = missing.get(i);
+
+            if (entries[index] == null) {
+                entries[index] = buildBatchEntry(pageList.get(index), resourceResolver, sites[index], urls.get(i), titles.get(i));
+            }
+
+        }
+
+        List<Map<String, String>> result = new ArrayList<Map<String, String>>(entries.length);
+
+        for (SocialMetadataEntry batchEntry : entries) {
+            result.add(batchEntry == null ? Collections.<String, String>emptyMap() : batchEntry.getMetadata());
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Builds the metadata of one page of a batch.
+     * @return the page's metadata, or null if it could not be built, so one
+     * broken page leaves its own slot of the listing empty instead of
+     * failing the whole listing
+     */
+    private SocialMetadataEntry buildBatchEntry(Page page, ResourceResolver resolver, SiteProfile site, String url, String pageTitle) {
+
+        try {
+
+            return new SocialMediaHelperImpl(this, page, resolver, site, url, pageTitle).buildEntry();
+
+        } catch (RuntimeException e) {
+
+            LOGGER.warn("Could not build the social media metadata of {}", page.getPath(), e);
+            return null;
+
+        }
+
+    }
+
+    /**
+     * Builds the missing pages on the executor's threads. Pages a worker
+     * could not read or build are left null for the caller to build.
+     */
+    private void buildInParallel(final List<Page> pageList, final List<Integer> missing, final SiteProfile[] sites,
+            final List<String> urls, final List<String> titles, final SocialMetadataEntry[] entries) {
+
+        if (executor == null) {
+            return;
+        }
+
+        int threads = Math.min(executor.getThreads(), missing.size() / MIN_PAGES_PER_THREAD);
+        List<ResourceResolver> resolvers = new ArrayList<ResourceResolver>(threads);
+
+        try {
+
+            for (int i = 0; i < threads; i++) {
+                resolvers.add(resourceResolver.clone(null));
+            }
+
+        } catch (LoginException e) {
+
+            LOGGER.warn("Could not clone the resource resolver, building metadata on one thread", e);
+
+            for (ResourceResolver resolver : resolvers) {
+                resolver.close();
+            }
+
+            return;
+
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>(threads);
+
+        for (int t = 0; t < threads; t++) {
+
+            final ResourceResolver resolver = resolvers.get(t);
+            final int first = t * missing.size() / threads;
+            final int last = (t + 1) * missing.size() / threads;
+
+            futures.add(CompletableFuture.runAsync(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    try {
+
+                        PageManager pageManager = resolver.adaptTo(PageManager.class);
+
+                        if (pageManager == null) {
+                            LOGGER.warn("A cloned resource resolver has no PageManager, building its pages on the calling thread");
+                            return;
+                        }
+
+                        for (int i = first; i < last; i++) {
+                            int index = missing.get(i);
+                            Page page = pageManager.getPage(pageList.get(index).getPath());
+
+                            if (page != null) {
+                                entries[index] = buildBatchEntry(page, resolver, sites[index], urls.get(i), titles.get(i));
+                            }
+                        }
+
+                    } finally {
+
+                        resolver.close();
+
+                    }
+
+                }
+
+            }, executor));
+
+        }
+
+        try {
+
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+
+        } catch (CompletionException e) {
+
+            // The worker's remaining pages are still null, so the caller builds them
+            LOGGER.warn("A metadata worker stopped early, building its remaining pages on the calling thread", e.getCause());
+
+        }
+
+    }
+
+    /**
+     * Resolves the titles of a batch of pages in one pass. A page whose
+     * title cannot be read gets null, and resolves it again when its own
+     * metadata is built.
+     */
+    private static List<String> getTitles(List<Page> pages) {
+
+        List<String> titles = new ArrayList<String>(pages.size());
+
+        for (Page page : pages) {
+
+            try {
+                titles.add(Utils.getTitle(page, Utils.PAGE_TITLE_LEVEL));
+            } catch (RuntimeException e) {
+                LOGGER.warn("Could not read the title of {}", page.getPath(), e);
+                titles.add(null);
+            }
+
+        }
+
+        return titles;
+
+    }
+
+    /**
+     * Maps the canonical URLs of a batch of pages in one pass. A page whose
+     * URL cannot be mapped gets null, and maps it again when its own
+     * metadata is built.
+     */
+    private List<String> getCanonicalURLs(List<Page> pages) {
+
+        if (canonicalURLService != null && request != null) {
+
+            try {
+                return canonicalURLService.getCanonicalURLs(request, pages);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Could not map the canonical URLs of a batch, mapping them page by page", e);
+                return Collections.nCopies(pages.size(), null);
+            }
+
+        }
+
+        List<String> urls = new ArrayList<String>(pages.size());
+
+        for (Page page : pages) {
+
+            try {
+                urls.add(request == null
+                        ? Utils.getCanonicalURL(resourceResolver, page, DEFAULT_EXTENSION, getSiteProfile(page))
+                        : Utils.getCanonicalURL(resourceResolver, request, page, getSiteProfile(page)));
+            } catch (IllegalArgumentException e) {
+                LOGGER.error("Could not create canonical URL for {}", page.getPath());
+                urls.add("");
+            } catch (RuntimeException e) {
+                LOGGER.warn("Could not map the canonical URL of {}", page.getPath(), e);
+                urls.add(null);
+            }
+
+        }
+
+        return urls;
+
+    }
+
+    /**
+     * Makes sure the warm-up metadata of the current page is cached,
+     * building it if it is not.
+     * @return true if the metadata had to be built, false if it was already cached
+     */
+    public boolean warmUp() {
+
+        if (metadataCache != null && metadataCache.get(currentPage.getPath(), getLastModified(), getCacheExtension(), getCacheHost(), getSiteProfile()) != null) {
+
+            return false;
+
+        }
+
+        entry = buildEntry();
+
+        return true;
+
+    }
+
+    /**
+     * Each value is only computed when it is read. With a metadata cache,
+     * a page that is not cached in full shares the values it computes
+     * through the cache, so they are computed once however few of the
+     * page's tags each caller reads.
+     */
+    private SocialMetadataEntry getEntry() {
+
+        if (entry == null) {
+
+            if (metadataCache != null) {
+
+                entry = metadataCache.get(currentPage.getPath(), getLastModified(), getCacheExtension(), getCacheHost(), getSiteProfile());
+
+                if (entry == null || !entry.isComplete()) {
+
+                    entry = createEntry(getSharedValues(entry));
+
+                }
+
+            } else {
+
+                entry = createEntry(null);
+
+            }
+
+        }
+
+        return entry;
+
+    }
+
+    /**
+     * @param incomplete the page's incomplete cache entry, or null
+     * @return the values computed so far by other requests for this version
+     * of the page, or new, empty shared values that are cached for them.
+     * The values need no resource resolver, so requests that read only a
+     * few tags leave the rest for the next request to compute with its own;
+     * the first to read every tag caches the complete entry.
+     */
+    private PartialMetadata getSharedValues(SocialMetadataEntry incomplete) {
+
+        if (incomplete != null && incomplete.getMetadata() instanceof PartialMetadata) {
+
+            SocialMetrics.METADATA_CACHE_PARTIAL_HITS.increment();
+            return (PartialMetadata) incomplete.getMetadata();
+
+        }
+
+        PartialMetadata shared = new PartialMetadata();
+        metadataCache.put(currentPage.getPath(), getLastModified(), getCacheExtension(), getCacheHost(), getSiteProfile(),
+                new SocialMetadataEntry(shared, false));
+
+        return shared;
+
+    }
+
+    /**
+     * Builds the whole of the metadata for a page while its resource
+     * resolver is still open, which also caches it.
+     */
+    private SocialMetadataEntry buildEntry() {
+
+        SocialMetadataEntry built = createEntry(null);
+
+        if (built.getMetadata() instanceof MetadataMap) {
+
+            ((MetadataMap) built.getMetadata()).materialize();
+
+        }
+
+        return built;
+
+    }
+
+    /**
+     * Computes the metadata as it is read. Every value but og:url is taken
+     * from the warm-up's entry for this version of the page when there is
+     * one, and the values that depend only on the page from the snapshot
+     * stored on it at activation time when the snapshot matches the current
+     * version of the page. The entry is cached once every value has been
+     * computed.
+     * @param shared values computed by other requests, which are used
+     * before anything else and receive the values computed here; or null
+     */
+    private SocialMetadataEntry createEntry(PartialMetadata shared) {
+
+        SocialMetadataEntry warmed = metadataCache == null || warming ? null
+                : metadataCache.get(currentPage.getPath(), getLastModified(), WARMED_EXTENSION, NO_HOST, getSiteProfile());
+        MetadataSource source = new MetadataSource(SocialMetadataSnapshot.readPageContent(currentPage, getLastModified()),
+                warmed == null ? null : warmed.getMetadata(), shared);
+        source.built = new SocialMetadataEntry(new MetadataMap(source.getLayout(), source));
+
+        return source.built;
+
+    }
+
+    private void cacheEntry(SocialMetadataEntry built) {
+
+        if (metadataCache != null) {
+
+            metadataCache.put(currentPage.getPath(), getLastModified(), getCacheExtension(), getCacheHost(), getSiteProfile(), built);
+
+        }
+
+    }
+
+    /**
+     * @return the last modified time of the current page, or 0 if it has
+     * never been modified
+     */
+    public long getLastModified() {
+
+        return getLastModified(currentPage);
+
+    }
+
+    private static long getLastModified(Page page) {
+
+        Calendar lastModified = page.getLastModified();
+        return lastModified == null ? 0L : lastModified.getTimeInMillis();
+
+    }
+
+    /**
+     * @return the extension the current page's metadata is cached under
+     */
+    private String getCacheExtension() {
+
+        return warming ? WARMED_EXTENSION : getExtension();
+
+    }
 
-import org.apache.sling.api.resource.ResourceResolver;
+    /**
+     * @return the host the current page's metadata is cached under, since
+     * its og:url and share links are mapped for the request's server name
+     */
+    private String getCacheHost() {
 
-import org.apache.sling.models.annotations.DefaultInjectionStrategy;
-import org.apache.sling.models.annotations.Model;
-import org.apache.sling.models.annotations.injectorspecific.ScriptVariable;
-import org.apache.sling.models.annotations.injectorspecific.Self;
-import org.apache.sling.models.annotations.injectorspecific.SlingObject;
+        if (host != null) {
 
-@Model(
-		adaptables = {SlingHttpServletRequest.class},
-		adapters = {SocialMediaHelper.class},
-		defaultInjectionStrategy = DefaultInjectionStrategy.OPTIONAL
-)
-public class SocialMediaHelperImpl implements SocialMediaHelper {
+            return host;
 
-    private final static Logger LOGGER = LoggerFactory.getLogger(SocialMediaHelperImpl.class);
+        }
 
-    //Open Graph metadata property names
-    static final String OG_TITLE = "og:title";
-    static final String OG_URL = "og:url";
-    static final String OG_TYPE = "og:type";
-    static final String OG_SITE_NAME = "og:site_name";
-    static final String OG_IMAGE = "og:image";
-    static final String OG_DESCRIPTION = "og:description";
-    static final String FB_APP_ID = "fb:app_id";
-    static final String OG_PUBLISHER = "article:publisher";
-    static final String OG_PUBLICATION_DATE = "article:published_time";
-    static final String OG_PROFILE_FIRST_NAME = "profile:first_name";
-    static final String OG_PROFILE_LAST_NAME = "profile:last_name";
-
-    //Twitter metadata property names
-    static final String TWITTER_CARD = "twitter:card";
-    static final String TWITTER_SITE = "twitter:site";
-    static final String TWITTER_TITLE = "twitter:title";
-    static final String TWITTER_DESCRIPTION = "twitter:description";
-    static final String TWITTER_IMAGE = "twitter:image";
+        return warming || request == null ? NO_HOST : request.getServerName();
 
-    @ScriptVariable
-    private Page currentPage = null;
+    }
 
-    @Self
-    private SlingHttpServletRequest request = null;
+    /**
+     * @return the extension of the current request, or the default extension
+     * if there is no request
+     */
+    public String getExtension() {
 
-    @SlingObject
-    private ResourceResolver resourceResolver;
+        if (extension != null) {
 
-    private Map<String, String> metadata;
+            return extension;
 
-    @Override
-    public Map<String,String> getMetadata() {
+        }
+
+        return request == null ? DEFAULT_EXTENSION : request.getRequestPathInfo().getExtension();
+
+    }
+
+    /**
+     * Computes the metadata of the current page one tag at a time, for a
+     * MetadataMap suitable for iteration using data-sly-list. The key
+     * names are property attributes for meta tags while the values are the
+     * corresponding content attributes, in the same order the tags have
+     * always been written in. Each field records its own timer, and the
+     * time spent on all of them is recorded once the map is complete. Values
+     * that depend only on the page come from its activation snapshot when
+     * there is one for the same kind of page.
+     */
+    private class MetadataSource implements MetadataMap.Source {
+
+        private final WebsiteMetadata websiteMetadata;
+        private final MetadataLayout layout;
+        private final Map<String, String> additional;
+        private final Map<String, String> stored;
+        private final Map<String, String> warmed;
+        private final PartialMetadata shared;
+
+        private SocialMetadataEntry built;
+        private long buildNanos;
+        private int depth;
+
+        MetadataSource(Map<String, String> snapshot, Map<String, String> warmUp, PartialMetadata shared) {
+
+            long start = SocialMetrics.start();
+            this.shared = shared;
+
+            websiteMetadata = createMetadataProvider();
+            long time = SocialMetrics.PROVIDER_CREATION.record(start);
+            SocialMetrics.providerSelected(websiteMetadata.getTypeName());
+
+            if (websiteMetadata instanceof NewsMetadata) {
+
+                layout = MetadataLayout.ARTICLE;
+                additional = null;
+
+            } else if (websiteMetadata instanceof ProfileMetadata) {
+
+                layout = MetadataLayout.PROFILE;
+                additional = null;
+
+            } else if (websiteMetadata instanceof RegisteredMetadataProvider) {
+
+                // The provider's tags decide the key order, so they are read up front
+                additional = ((RegisteredMetadataProvider) websiteMetadata).getAdditionalMetadata();
+                SocialMetrics.FIELD_PROVIDER_METADATA.record(time);
+                layout = getRegisteredLayout(additional);
+
+            } else {
+
+                layout = MetadataLayout.WEBSITE;
+                additional = null;
+
+            }
+
+            if (snapshot != null && websiteMetadata.getTypeName().equals(snapshot.get(MetadataProperty.OG_TYPE.getName()))) {
+
+                stored = snapshot;
+                SocialMetrics.SNAPSHOT_HITS.increment();
+
+            } else {
+
+                LOGGER.debug("No current metadata snapshot for {}", currentPage.getPath());
+                stored = null;
+                SocialMetrics.SNAPSHOT_MISSES.increment();
+
+            }
+
+            if (warmUp != null && websiteMetadata.getTypeName().equals(warmUp.get(MetadataProperty.OG_TYPE.getName()))) {
+
+                warmed = warmUp;
+                SocialMetrics.WARMUP_ENTRIES_REUSED.increment();
+
+            } else {
+
+                warmed = null;
+
+            }
+
+            if (start != 0L) {
+                buildNanos = System.nanoTime() - start;
+            }
+
+        }
+
+        MetadataLayout getLayout() {
+
+            return layout;
+
+        }
+
+        @Override
+        public Object compute(MetadataProperty property, String name, MetadataMap metadata) {
+
+            if (shared == null) {
+                return computeUnshared(property, name, metadata);
+            }
+
+            Object value = shared.lookup(name);
+
+            if (value == PartialMetadata.PENDING) {
+                value = computeUnshared(property, name, metadata);
+                shared.record(name, value);
+            }
+
+            return value;
+
+        }
+
+        private Object computeUnshared(MetadataProperty property, String name, MetadataMap metadata) {
+
+            if (additional != null && additional.containsKey(name)) {
+                return additional.get(name);
+            }
+
+            // Built for the same version of the page and site, so only the request's URL differs
+            if (warmed != null && property != null && property != MetadataProperty.OG_URL) {
+                return warmed.containsKey(name) ? warmed.get(name) : MetadataMap.ABSENT;
+            }
+
+            if (stored != null && property != null && property.isPageContent() && stored.containsKey(name)) {
+                return stored.get(name);
+            }
+
+            // Values read by other values are already counted by the outer one
+            long start = SocialMetrics.start();
+            boolean outer = depth++ == 0;
+
+            try {
+
+                return computeValue(property, metadata, start);
+
+            } finally {
+
+                depth--;
 
-        if (metadata == null) {
+                if (outer && start != 0L) {
+                    buildNanos += System.nanoTime() - start;
+                }
 
-            initMetadata();
+            }
+
+        }
+
+        private Object computeValue(MetadataProperty property, MetadataMap metadata, long time) {
+
+            if (property == null) {
+                return MetadataMap.ABSENT;
+            }
+
+            Object value;
+
+            switch (property) {
+
+                case OG_URL:
+                    value = websiteMetadata.getURL();
+                    SocialMetrics.FIELD_URL.record(time);
+                    break;
+
+                case OG_TITLE:
+                    value = websiteMetadata.getTitle();
+                    SocialMetrics.FIELD_TITLE.record(time);
+                    break;
+
+                case OG_DESCRIPTION:
+                    value = websiteMetadata.getDescription();
+                    SocialMetrics.FIELD_DESCRIPTION.record(time);
+                    break;
+
+                case TWITTER_DESCRIPTION:
+                    value = websiteMetadata.getTwitterDescription();
+                    SocialMetrics.FIELD_DESCRIPTION.record(time);
+                    break;
+
+                case OG_SITE_NAME:
+                    value = websiteMetadata.getSiteName();
+                    SocialMetrics.FIELD_SITE.record(time);
+                    break;
+
+                case OG_LOCALE:
+                    value = websiteMetadata.getLocale();
+                    break;
+
+                case OG_TYPE:
+                    value = websiteMetadata.getTypeName();
+                    break;
+
+                case FB_APP_ID:
+                    value = websiteMetadata.getAppId();
+                    break;
+
+                case TWITTER_SITE:
+                    value = websiteMetadata.getTwitterSite();
+                    break;
+
+                case TWITTER_TITLE:
+                    value = metadata.get(MetadataProperty.OG_TITLE);
+                    break;
+
+                case TWITTER_CARD:
+                    value = websiteMetadata.getTwitterCard();
+                    SocialMetrics.FIELD_TWITTER_CARD.record(time);
+                    break;
+
+                case OG_IMAGE:
+                    value = websiteMetadata instanceof NewsMetadata
+                            ? ((NewsMetadata) websiteMetadata).getImage()
+                            : ((ProfileMetadata) websiteMetadata).getImage();
+                    SocialMetrics.FIELD_IMAGE.record(time);
+                    break;
+
+                case TWITTER_IMAGE:
+                    value = metadata.get(MetadataProperty.OG_IMAGE);
+                    break;
+
+                case OG_IMAGE_WIDTH:
+                case OG_IMAGE_HEIGHT:
+                case OG_IMAGE_TYPE:
+                    value = getImageInfoValue(property, metadata);
+                    break;
+
+                case ARTICLE_PUBLISHER:
+                    value = ((NewsMetadata) websiteMetadata).getArticlePublisher();
+                    break;
+
+                case ARTICLE_PUBLISHED_TIME:
+                    value = ((NewsMetadata) websiteMetadata).getArticlePublishDate();
+                    SocialMetrics.FIELD_PUBLICATION_DATE.record(time);
+                    break;
+
+                case PROFILE_FIRST_NAME:
+                    value = ((ProfileMetadata) websiteMetadata).getFirstName();
+                    SocialMetrics.FIELD_PROFILE_NAME.record(time);
+                    break;
+
+                case PROFILE_LAST_NAME:
+                    value = ((ProfileMetadata) websiteMetadata).getLastName();
+                    SocialMetrics.FIELD_PROFILE_NAME.record(time);
+                    break;
+
+                default:
+                    value = MetadataMap.ABSENT;
+
+            }
+
+            return value;
+
+        }
+
+        /**
+         * The size and type of the og:image are only known once the image
+         * itself has been looked up, and are left out when they are unknown.
+         */
+        private Object getImageInfoValue(MetadataProperty property, MetadataMap metadata) {
+
+            metadata.get(MetadataProperty.OG_IMAGE);
+
+            ImageInfo imageInfo = ((WebsiteMetadataProvider) websiteMetadata).getImageInfo();
+
+            if (imageInfo == null) {
+                return MetadataMap.ABSENT;
+            }
+
+            if (property == MetadataProperty.OG_IMAGE_TYPE) {
+                return imageInfo.getMimeType() == null ? MetadataMap.ABSENT : imageInfo.getMimeType();
+            }
+
+            if (!imageInfo.hasSize()) {
+                return MetadataMap.ABSENT;
+            }
+
+            return Integer.toString(property == MetadataProperty.OG_IMAGE_WIDTH ? imageInfo.getWidth() : imageInfo.getHeight());
 
         }
 
-        return metadata;
+        @Override
+        public void materialized(MetadataMap metadata) {
+
+            SocialMetrics.metadataBuilt(currentPage.getPath(), buildNanos);
+
+            if (built != null) {
+                cacheEntry(built);
+            }
+
+        }
 
     }
 
     /**
-     * Creates a LinkedHashMap suitable for interation using data-sly-list.
-     * The key names are property attributes for meta tags while the values
-     * are the corresponding content attributes.
+     * Tags from a registered provider replace the default tags in place and
+     * follow them otherwise, with twitter:card last unless the provider set it.
      */
-    private void initMetadata() {
-
-        metadata = new LinkedHashMap<String, String>();
-        WebsiteMetadata websiteMetadata = createMetadataProvider();
-        metadata.put(OG_URL, websiteMetadata.getURL());
-        metadata.put(OG_TITLE, websiteMetadata.getTitle());
-        metadata.put(OG_DESCRIPTION, websiteMetadata.getDescription());
-        metadata.put(OG_SITE_NAME, websiteMetadata.getSiteName());     
-        metadata.put(OG_TYPE, websiteMetadata.getTypeName());
-        metadata.put(FB_APP_ID, websiteMetadata.getAppId());
-        metadata.put(TWITTER_TITLE, websiteMetadata.getTitle());
-        metadata.put(TWITTER_SITE, websiteMetadata.getTwitterSite());
-        metadata.put(TWITTER_DESCRIPTION, websiteMetadata.getDescription());
-        
-        if (websiteMetadata instanceof NewsMetadata) {
-            NewsMetadata newsMetadata = (NewsMetadata) websiteMetadata;
-            metadata.put(OG_IMAGE, newsMetadata.getImage());
-            metadata.put(OG_PUBLISHER, newsMetadata.getArticlePublisher());
-            metadata.put(OG_PUBLICATION_DATE, newsMetadata.getArticlePublishDate());
-            metadata.put(TWITTER_CARD, newsMetadata.getTwitterCard());
-            metadata.put(TWITTER_IMAGE, newsMetadata.getImage());
-        } else if(websiteMetadata instanceof ProfileMetadata) {
-            ProfileMetadata profileMetadata = (ProfileMetadata) websiteMetadata;
-            metadata.put(OG_PROFILE_FIRST_NAME, profileMetadata.getFirstName());
-            metadata.put(OG_PROFILE_LAST_NAME, profileMetadata.getLastName());
-            metadata.put(TWITTER_CARD, profileMetadata.getTwitterCard());
-            metadata.put(OG_IMAGE, profileMetadata.getImage());
-            metadata.put(TWITTER_IMAGE, profileMetadata.getImage());
-        } 
-
-        if (!metadata.containsKey(TWITTER_CARD)) {
-            metadata.put(TWITTER_CARD, websiteMetadata.getTwitterCard());
+    private static MetadataLayout getRegisteredLayout(Map<String, String> additional) {
+
+        List<String> names = new ArrayList<String>(MetadataLayout.WEBSITE.size() + additional.size());
+
+        for (int i = 0; i < MetadataLayout.WEBSITE.size(); i++) {
+            if (MetadataLayout.WEBSITE.getProperty(i) != MetadataProperty.TWITTER_CARD) {
+                names.add(MetadataLayout.WEBSITE.getName(i));
+            }
         }
-        
+
+        for (String name : additional.keySet()) {
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
+
+        if (!names.contains(MetadataProperty.TWITTER_CARD.getName())) {
+            names.add(MetadataProperty.TWITTER_CARD.getName());
+        }
+
+        return MetadataLayout.of(names);
+
+    }
+
+    /**
+     * @return the settings of the site the current page belongs to
+     */
+    private SiteProfile getSiteProfile() {
+
+        if (siteProfile == null) {
+
+            siteProfile = getSiteProfile(currentPage);
+
+        }
+
+        return siteProfile;
+
+    }
+
+    /**
+     * @return the settings of the site a page belongs to, or those of
+     * www.fredhutch.org if there is no SiteProfileService
+     */
+    private SiteProfile getSiteProfile(Page page) {
+
+        return siteProfileService == null ? SiteProfile.DEFAULT : siteProfileService.getSiteProfile(page.getPath());
+
+    }
+
+    /**
+     * @return the typed snapshot of the current page's properties, read on first use
+     */
+    private PageProperties getPageProperties() {
+
+        if (pageProperties == null) {
+
+            pageProperties = PageProperties.of(currentPage);
+
+        }
+
+        return pageProperties;
+
     }
 
     /**
      * Instantiates the suitable metadata provider based on the contents of the current page.
+     * When the provider registry is available it picks the page type from its
+     * compiled template and resource type tables; otherwise the page's
+     * properties are checked directly.
      */
     private WebsiteMetadata createMetadataProvider() {
 
+        if (providerRegistry != null) {
+
+            PageProperties properties = getPageProperties();
+            SocialMetadataProvider provider = providerRegistry.getProvider(
+                    properties.getTemplate(), properties.getResourceType(), properties.getValueMap());
+
+            return createMetadataProvider(provider);
+
+        }
+
         // If there is a publication date, then it is a news article
-        if (!currentPage.getProperties().get(Constants.PN_ARTICLE_PUBLICATION_DATE, "").isEmpty()) {
+        if (getPageProperties().hasPublicationDate()) {
             LOGGER.debug("Creating NewsMetadata");
             return new NewsMetadataProvider();
-        } else if (!currentPage.getProperties().get(Constants.PN_PROFILE_LAST_NAME, "").isEmpty()) {
+        } else if (!getPageProperties().getLastName().isEmpty()) {
             //If there is a last name, then it is a profile
             LOGGER.debug("Creating ProfileMetadata");
             return new ProfileMetaDataProvider();
@@ -142,6 +1064,24 @@ public class SocialMediaHelperImpl implements SocialMediaHelper {
 
     }
 
+    private WebsiteMetadata createMetadataProvider(SocialMetadataProvider provider) {
+
+        if (provider == null) {
+            LOGGER.debug("Creating default WebsiteMetadata");
+            return new WebsiteMetadataProvider();
+        } else if (SocialMetadataProvider.ARTICLE.equals(provider.getType())) {
+            LOGGER.debug("Creating NewsMetadata");
+            return new NewsMetadataProvider();
+        } else if (SocialMetadataProvider.PROFILE.equals(provider.getType())) {
+            LOGGER.debug("Creating ProfileMetadata");
+            return new ProfileMetaDataProvider();
+        } else {
+            LOGGER.debug("Creating {} metadata from a registered provider", provider.getType());
+            return new RegisteredMetadataProvider(provider);
+        }
+
+    }
+
     /**
      * Provides metadata based on the content of a generic webpage.
      */
@@ -162,8 +1102,12 @@ public class SocialMediaHelperImpl implements SocialMediaHelper {
 
         String getDescription();
 
+        String getTwitterDescription();
+
         String getSiteName();
 
+        String getLocale();
+
         String getAppId();
         
         String getTwitterSite();
@@ -180,6 +1124,8 @@ public class SocialMediaHelperImpl implements SocialMediaHelper {
 
         String getArticlePublishDate();
 
+        ImageInfo getImageInfo();
+
     }
 
     private interface ProfileMetadata extends WebsiteMetadata {
@@ -190,18 +1136,29 @@ public class SocialMediaHelperImpl implements SocialMediaHelper {
 
         String getImage();
 
+        ImageInfo getImageInfo();
+
     }
 
     private class WebsiteMetadataProvider implements WebsiteMetadata {
 
+        private ImageInfo imageInfo;
+
+        private DescriptionNormalizer.Descriptions descriptions;
+
         @Override
         public String getTitle() {
 
-            try {
+            if (title != null) {
 
-                String title = Utils.getTitle(currentPage, Utils.PAGE_TITLE_LEVEL);
                 return title;
 
+            }
+
+            try {
+
+                return Utils.getTitle(currentPage, Utils.PAGE_TITLE_LEVEL);
+
             } catch (IllegalArgumentException e) {
 
                 LOGGER.error("Current Page is null");
@@ -214,9 +1171,32 @@ public class SocialMediaHelperImpl implements SocialMediaHelper {
         @Override
         public String getURL() {
 
+            if (canonicalURL != null) {
+
+                return canonicalURL;
+
+            }
+
             try {
 
-                String url = Utils.getCanonicalURL(resourceResolver, request, currentPage);
+                String url;
+
+                if (canonicalURLService != null) {
+
+                    url = request == null
+                            ? canonicalURLService.getCanonicalURL(resourceResolver, currentPage, DEFAULT_EXTENSION)
+                            : canonicalURLService.getCanonicalURL(request, currentPage);
+
+                } else if (request == null) {
+
+                    url = Utils.getCanonicalURL(resourceResolver, currentPage, DEFAULT_EXTENSION, getSiteProfile());
+
+                } else {
+
+                    url = Utils.getCanonicalURL(resourceResolver, request, currentPage, getSiteProfile());
+
+                }
+
                 return url;
 
             } catch (IllegalArgumentException e) {
@@ -245,28 +1225,58 @@ public class SocialMediaHelperImpl implements SocialMediaHelper {
         @Override
         public String getDescription() {
 
-            return currentPage.getDescription();
+            return getDescriptions().getOpenGraph();
+
+        }
+
+        @Override
+        public String getTwitterDescription() {
+
+            return getDescriptions().getTwitter();
+
+        }
+
+        /**
+         * The page description cleaned and shortened for each platform in one pass.
+         */
+        private DescriptionNormalizer.Descriptions getDescriptions() {
+
+            if (descriptions == null) {
+
+                descriptions = DescriptionNormalizer.normalize(currentPage.getDescription(),
+                        Constants.OG_DESCRIPTION_MAX_LENGTH, Constants.TWITTER_DESCRIPTION_MAX_LENGTH);
+
+            }
+
+            return descriptions;
 
         }
 
         @Override
         public String getSiteName() {
 
-            return Constants.ORGANIZATION_NAME;
+            return getSiteProfile().getOrganizationName();
+
+        }
+
+        @Override
+        public String getLocale() {
+
+            return getSiteProfile().getLocale();
 
         }
 
         @Override
         public String getAppId() {
 
-            return Constants.FACEBOOK_APP_ID;
+            return getSiteProfile().getFacebookAppId();
 
         }
 
         @Override
         public String getTwitterSite() {
 
-            return "@" + Constants.TWITTER_USER_NAME;
+            return getSiteProfile().getTwitterSite();
 
         }
 
@@ -276,6 +1286,36 @@ public class SocialMediaHelperImpl implements SocialMediaHelper {
             return Constants.TWITTER_CARD_TYPE;
 
         }
+
+        public ImageInfo getImageInfo() {
+
+            return imageInfo;
+
+        }
+
+        /**
+         * Returns the absolute URL of an image, using its social media
+         * rendition when the image is a DAM asset. The rendition's size and
+         * type are then available from getImageInfo().
+         */
+        String getImageURL(String imageSrc) {
+
+            if (!imageSrc.startsWith(DamConstants.MOUNTPOINT_ASSETS + "/")) {
+                imageInfo = null;
+            } else if (imageMetadataService != null) {
+                imageInfo = imageMetadataService.getImageInfo(resourceResolver, imageSrc);
+            } else if (resourceResolver != null) {
+                // Helpers created outside of a request have no services
+                imageInfo = ImageInfo.read(resourceResolver, imageSrc, ImageInfo.DEFAULT_PREFERRED_WIDTH);
+            }
+
+            StringBuilder sb = new StringBuilder();
+            sb.append(getSiteProfile().getUrlPrefix());
+            sb.append(imageInfo == null ? imageSrc : imageInfo.getPath());
+
+            return sb.toString();
+
+        }
         
     }
 
@@ -344,8 +1384,8 @@ public class SocialMediaHelperImpl implements SocialMediaHelper {
         @Override
         public String getTwitterCard() {
 
-            if (currentPage.getProperties().get(Constants.PN_ARTICLE_SOCIAL_MEDIA_IMAGE,"").isEmpty() &&
-                currentPage.getProperties().get(Constants.PN_ARTICLE_IMAGE,"").isEmpty()) {
+            if (getPageProperties().getSocialMediaImage().isEmpty() &&
+                getPageProperties().getArticleImage().isEmpty()) {
 
                 return Constants.TWITTER_CARD_TYPE;
 
@@ -360,24 +1400,19 @@ public class SocialMediaHelperImpl implements SocialMediaHelper {
         @Override
         public String getImage() {
 
-            StringBuffer sb = new StringBuffer();
-            String imageSrc = currentPage.getProperties().get(Constants.PN_ARTICLE_SOCIAL_MEDIA_IMAGE, "");
+            String imageSrc = getPageProperties().getSocialMediaImage();
 
             //If there is no social media image, check for an article image
             if (imageSrc.isEmpty()) {
 
-                imageSrc = currentPage.getProperties().get(Constants.PN_ARTICLE_IMAGE, "");
+                imageSrc = getPageProperties().getArticleImage();
 
             }
 
             //If there is an image, construct an absolute URL for it
             if (!imageSrc.isEmpty()) {
 
-                sb.append(Constants.SECURE_URL_PREFIX);
-                sb.append(Constants.WWW_DOMAIN);
-                sb.append(imageSrc);
-
-                imageSrc = sb.toString();
+                imageSrc = getImageURL(imageSrc);
 
             } 
 
@@ -388,22 +1423,15 @@ public class SocialMediaHelperImpl implements SocialMediaHelper {
         @Override
         public String getArticlePublisher() {
 
-            return Constants.FACEBOOK_URL;
+            return getSiteProfile().getFacebookUrl();
 
         }
 
         @Override
         public String getArticlePublishDate() {
 
-            Date pubDate = currentPage.getProperties().get(Constants.PN_ARTICLE_PUBLICATION_DATE, Date.class);
-            SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mmZ");
-            String dateString = "";
-
-            if (pubDate != null) {
-                dateString = df.format(pubDate);
-            }
-
-            return dateString;
+            Date pubDate = getPageProperties().getPublicationDate();
+            return Utils.formatPublicationDate(pubDate);
 
         }
 
@@ -474,7 +1502,7 @@ public class SocialMediaHelperImpl implements SocialMediaHelper {
         @Override
         public String getTwitterCard() {
 
-            if (currentPage.getProperties().get(Constants.PN_PROFILE_PHOTO,"").isEmpty()) {
+            if (getPageProperties().getPhoto().isEmpty()) {
 
                 return Constants.TWITTER_CARD_TYPE;
 
@@ -489,30 +1517,25 @@ public class SocialMediaHelperImpl implements SocialMediaHelper {
         @Override
         public String getFirstName() {
 
-            return currentPage.getProperties().get(Constants.PN_PROFILE_FIRST_NAME, "");
+            return getPageProperties().getFirstName();
 
         }
 
         @Override
         public String getLastName() {
 
-            return currentPage.getProperties().get(Constants.PN_PROFILE_LAST_NAME, "");
+            return getPageProperties().getLastName();
             
         }
 
         @Override
         public String getImage() {
 
-            StringBuffer sb = new StringBuffer();
-            String imageSrc = currentPage.getProperties().get(Constants.PN_PROFILE_PHOTO, "");
+            String imageSrc = getPageProperties().getPhoto();
 
             if (!imageSrc.isEmpty()) {
 
-                sb.append(Constants.SECURE_URL_PREFIX);
-                sb.append(Constants.WWW_DOMAIN);
-                sb.append(imageSrc);
-
-                imageSrc = sb.toString();
+                imageSrc = getImageURL(imageSrc);
 
             }
             
@@ -522,4 +1545,34 @@ public class SocialMediaHelperImpl implements SocialMediaHelper {
 
     }
 
+    /**
+     * Website metadata for a page type contributed by a registered
+     * SocialMetadataProvider, which sets og:type and may add or replace tags.
+     */
+    private class RegisteredMetadataProvider extends WebsiteMetadataProvider {
+
+        private final SocialMetadataProvider provider;
+
+        RegisteredMetadataProvider(SocialMetadataProvider provider) {
+
+            this.provider = provider;
+
+        }
+
+        @Override
+        public String getTypeName() {
+
+            return provider.getType();
+
+        }
+
+        Map<String, String> getAdditionalMetadata() {
+
+            Map<String, String> additional = provider.getMetadata(currentPage);
+            return additional == null ? Collections.<String, String>emptyMap() : additional;
+
+        }
+
+    }
+
 }
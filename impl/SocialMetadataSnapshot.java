@@ -0,0 +1,186 @@
+package org.fhcrc.www.core.components.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.fhcrc.www.core.Constants;
+import org.fhcrc.www.core.MetadataProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.wcm.api.Page;
+
+/**
+ * Reads and writes social media metadata snapshots. A snapshot is a single
+ * multi-value String property laid out as
+ * [lastModified, extension, key1, value1, key2, value2, ...]
+ * so that a whole metadata map can be restored with one property read.
+ *
+ * The snapshot stored on a page's jcr:content when it is activated holds
+ * only the values computed from the page's own properties, plus og:type to
+ * check that the same provider still applies. Values that depend on the
+ * request, URL mapping, site settings or DAM assets are never taken from
+ * it, since the author instance that wrote it sees none of those the way
+ * publish does.
+ */
+public final class SocialMetadataSnapshot {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(SocialMetadataSnapshot.class);
+
+    private static final int LAST_MODIFIED_INDEX = 0;
+    private static final int EXTENSION_INDEX = 1;
+    private static final int HEADER_LENGTH = 2;
+
+    private SocialMetadataSnapshot() {
+    }
+
+    /**
+     * @return the page content values and og:type stored on the page, or
+     * null if there is no snapshot, it was taken from a different version
+     * of the page or it cannot be read. Snapshots do not depend on the
+     * extension, so any extension's snapshot is used.
+     */
+    public static Map<String, String> readPageContent(Page page, long lastModified) {
+
+        try {
+
+            String[] snapshot = page.getProperties().get(Constants.PN_SOCIAL_METADATA_SNAPSHOT, String[].class);
+
+            if (!isCurrent(snapshot, lastModified)) {
+
+                return null;
+
+            }
+
+            Map<String, String> metadata = new LinkedHashMap<String, String>();
+
+            for (int i = HEADER_LENGTH; i + 1 < snapshot.length; i += 2) {
+
+                MetadataProperty property = MetadataProperty.forName(snapshot[i]);
+
+                if (property != null && snapshot[i + 1] != null
+                        && (property.isPageContent() || property == MetadataProperty.OG_TYPE)) {
+
+                    metadata.put(property.getName(), snapshot[i + 1]);
+
+                }
+
+            }
+
+            return metadata;
+
+        } catch (RuntimeException e) {
+
+            LOGGER.warn("Ignoring unreadable social media metadata snapshot on {}", page.getPath(), e);
+            return null;
+
+        }
+
+    }
+
+    /**
+     * @return the metadata in a snapshot, e.g. one kept outside the
+     * repository, or null if the snapshot is null, cannot be read or was
+     * taken from a different version of the page or for a different
+     * extension
+     */
+    public static Map<String, String> read(String[] snapshot, long lastModified, String extension) {
+
+        if (!isCurrent(snapshot, lastModified) || !isSameExtension(snapshot[EXTENSION_INDEX], extension)) {
+
+            return null;
+
+        }
+
+        Map<String, String> metadata = new LinkedHashMap<String, String>();
+
+        for (int i = HEADER_LENGTH; i + 1 < snapshot.length; i += 2) {
+
+            metadata.put(snapshot[i], snapshot[i + 1]);
+
+        }
+
+        try {
+
+            return MetadataMap.copyOf(metadata);
+
+        } catch (IllegalArgumentException e) {
+
+            LOGGER.warn("Ignoring unreadable social media metadata snapshot: {}", e.getMessage());
+            return null;
+
+        }
+
+    }
+
+    /**
+     * @return true if the page already has a snapshot for this version
+     */
+    public static boolean isCurrent(Page page, long lastModified) {
+
+        return isCurrent(page.getProperties().get(Constants.PN_SOCIAL_METADATA_SNAPSHOT, String[].class), lastModified);
+
+    }
+
+    /**
+     * Serializes a metadata map into the snapshot property format. Null
+     * values are stored as empty strings since JCR does not allow null
+     * entries in multi-value properties.
+     */
+    public static String[] write(Map<String, String> metadata, long lastModified, String extension) {
+
+        String[] snapshot = new String[HEADER_LENGTH + metadata.size() * 2];
+        int i = HEADER_LENGTH;
+
+        snapshot[LAST_MODIFIED_INDEX] = Long.toString(lastModified);
+        snapshot[EXTENSION_INDEX] = extension;
+
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+
+            snapshot[i++] = entry.getKey();
+            snapshot[i++] = entry.getValue() == null ? "" : entry.getValue();
+
+        }
+
+        return snapshot;
+
+    }
+
+    /**
+     * Serializes the page content values and og:type of a metadata map for
+     * the snapshot stored on the page. Only those tags are read, so a lazily
+     * computed map never computes the others.
+     */
+    public static String[] writePageContent(Map<String, String> metadata, long lastModified, String extension) {
+
+        Map<String, String> pageContent = new LinkedHashMap<String, String>();
+
+        for (MetadataProperty property : MetadataProperty.values()) {
+
+            if ((property.isPageContent() || property == MetadataProperty.OG_TYPE) && metadata.containsKey(property.getName())) {
+
+                pageContent.put(property.getName(), metadata.get(property.getName()));
+
+            }
+
+        }
+
+        return write(pageContent, lastModified, extension);
+
+    }
+
+    private static boolean isCurrent(String[] snapshot, long lastModified) {
+
+        return snapshot != null
+                && snapshot.length >= HEADER_LENGTH
+                && Long.toString(lastModified).equals(snapshot[LAST_MODIFIED_INDEX]);
+
+    }
+
+    private static boolean isSameExtension(String stored, String extension) {
+
+        return stored == null ? extension == null : stored.equals(extension);
+
+    }
+
+}
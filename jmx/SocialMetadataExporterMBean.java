@@ -0,0 +1,14 @@
+package org.fhcrc.www.core.jmx;
+
+import com.adobe.granite.jmx.annotation.Description;
+import com.adobe.granite.jmx.annotation.Name;
+
+@Description("Exports social media metadata for a content tree")
+public interface SocialMetadataExporterMBean {
+
+	@Description("Writes the metadata of every page under rootPath to outputFile as NDJSON and returns a summary")
+	String export(
+			@Name("rootPath") @Description("The page to start from, e.g. /content/fredhutch") String rootPath,
+			@Name("outputFile") @Description("Absolute path of the file to write on the server") String outputFile);
+
+}
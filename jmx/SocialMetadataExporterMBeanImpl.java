@@ -0,0 +1,47 @@
+package org.fhcrc.www.core.jmx;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.fhcrc.www.core.services.SocialMetadataExporter;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
+
+/**
+ * Lets operators run a bulk metadata export from the JMX console.
+ */
+@Component(
+		service = SocialMetadataExporterMBean.class,
+		property = "jmx.objectname=org.fhcrc.www:type=SocialMetadataExporter"
+)
+public class SocialMetadataExporterMBeanImpl extends AnnotatedStandardMBean implements SocialMetadataExporterMBean {
+
+	@Reference
+	private SocialMetadataExporter exporter;
+
+	public SocialMetadataExporterMBeanImpl() throws NotCompliantMBeanException {
+
+		super(SocialMetadataExporterMBean.class);
+
+	}
+
+	@Override
+	public String export(String rootPath, String outputFile) {
+
+		try {
+
+			return exporter.export(rootPath, Paths.get(outputFile)).toString();
+
+		} catch (IOException | IllegalArgumentException e) {
+
+			return "Export failed: " + e.getMessage();
+
+		}
+
+	}
+
+}
@@ -0,0 +1,17 @@
+package org.fhcrc.www.core.jmx;
+
+import com.adobe.granite.jmx.annotation.Description;
+
+@Description("Warms the social media metadata cache with the most requested pages")
+public interface SocialMetadataWarmerMBean {
+
+	@Description("Progress of the running warm-up, or the result of the last one")
+	String getStatus();
+
+	@Description("True while a warm-up is running")
+	boolean isRunning();
+
+	@Description("Ranks pages from the configured access logs or path list, warms as many as the budget allows and returns a summary")
+	String warmUp();
+
+}
@@ -0,0 +1,62 @@
+package org.fhcrc.www.core.jmx;
+
+import java.io.IOException;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.fhcrc.www.core.services.SocialMetadataWarmer;
+import org.fhcrc.www.core.services.WarmUpResult;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
+
+/**
+ * Lets operators watch the cache warm-up and run it again from the JMX console.
+ */
+@Component(
+		service = SocialMetadataWarmerMBean.class,
+		property = "jmx.objectname=org.fhcrc.www:type=SocialMetadataWarmer"
+)
+public class SocialMetadataWarmerMBeanImpl extends AnnotatedStandardMBean implements SocialMetadataWarmerMBean {
+
+	@Reference
+	private SocialMetadataWarmer warmer;
+
+	public SocialMetadataWarmerMBeanImpl() throws NotCompliantMBeanException {
+
+		super(SocialMetadataWarmerMBean.class);
+
+	}
+
+	@Override
+	public String getStatus() {
+
+		WarmUpResult status = warmer.getStatus();
+		return status == null ? "No warm-up has run" : status.toString();
+
+	}
+
+	@Override
+	public boolean isRunning() {
+
+		return warmer.isRunning();
+
+	}
+
+	@Override
+	public String warmUp() {
+
+		try {
+
+			return warmer.warmUp().toString();
+
+		} catch (IOException | IllegalStateException e) {
+
+			return "Warm-up failed: " + e.getMessage();
+
+		}
+
+	}
+
+}
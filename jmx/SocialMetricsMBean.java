@@ -0,0 +1,25 @@
+package org.fhcrc.www.core.jmx;
+
+import javax.management.openmbean.TabularData;
+
+import com.adobe.granite.jmx.annotation.Description;
+
+@Description("Counters and latencies for social media metadata generation")
+public interface SocialMetricsMBean {
+
+	@Description("Whether metrics are being recorded")
+	boolean isEnabled();
+
+	@Description("Cache hits and misses, provider choices and title fallbacks")
+	TabularData getCounters();
+
+	@Description("Latency of each metadata generation step in microseconds")
+	TabularData getTimers();
+
+	@Description("The most recent pages whose metadata was slower than the configured threshold, newest first")
+	String[] getSlowPages();
+
+	@Description("Resets every counter and timer to zero")
+	void reset();
+
+}
@@ -0,0 +1,162 @@
+package org.fhcrc.www.core.jmx;
+
+import java.util.Map;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.fhcrc.www.core.metrics.LatencyTimer;
+import org.fhcrc.www.core.metrics.SocialMetrics;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
+
+/**
+ * Exposes {@link SocialMetrics} in the JMX console and holds its configuration.
+ */
+@Component(
+		service = SocialMetricsMBean.class,
+		property = "jmx.objectname=org.fhcrc.www:type=SocialMetrics"
+)
+@Designate(ocd = SocialMetricsMBeanImpl.Config.class)
+public class SocialMetricsMBeanImpl extends AnnotatedStandardMBean implements SocialMetricsMBean {
+
+	@ObjectClassDefinition(name = "Fred Hutch Social Media Metadata Metrics")
+	public @interface Config {
+
+		@AttributeDefinition(name = "Enabled", description = "Record counters and latencies for metadata generation")
+		boolean enabled() default true;
+
+		@AttributeDefinition(name = "Slow page threshold", description = "Pages whose metadata takes at least this many milliseconds are listed as slow")
+		long slowPageThresholdMillis() default 50;
+
+	}
+
+	private static final String[] COUNTER_ITEMS = {"name", "value"};
+	private static final String[] TIMER_ITEMS = {"name", "count", "meanMicros", "p50Micros", "p99Micros", "maxMicros"};
+
+	private static final CompositeType COUNTER_TYPE;
+	private static final TabularType COUNTERS_TYPE;
+	private static final CompositeType TIMER_TYPE;
+	private static final TabularType TIMERS_TYPE;
+
+	static {
+
+		try {
+
+			COUNTER_TYPE = new CompositeType("counter", "A metadata counter", COUNTER_ITEMS, COUNTER_ITEMS,
+					new OpenType<?>[] {SimpleType.STRING, SimpleType.LONG});
+			COUNTERS_TYPE = new TabularType("counters", "Metadata counters", COUNTER_TYPE, new String[] {"name"});
+			TIMER_TYPE = new CompositeType("timer", "A metadata latency timer", TIMER_ITEMS, TIMER_ITEMS,
+					new OpenType<?>[] {SimpleType.STRING, SimpleType.LONG, SimpleType.DOUBLE, SimpleType.LONG, SimpleType.LONG, SimpleType.DOUBLE});
+			TIMERS_TYPE = new TabularType("timers", "Metadata latency timers", TIMER_TYPE, new String[] {"name"});
+
+		} catch (OpenDataException e) {
+
+			throw new ExceptionInInitializerError(e);
+
+		}
+
+	}
+
+	public SocialMetricsMBeanImpl() throws NotCompliantMBeanException {
+
+		super(SocialMetricsMBean.class);
+
+	}
+
+	@Activate
+	@Modified
+	protected void activate(Config config) {
+
+		SocialMetrics.configure(config.enabled(), config.slowPageThresholdMillis());
+
+	}
+
+	@Override
+	public boolean isEnabled() {
+
+		return SocialMetrics.isEnabled();
+
+	}
+
+	@Override
+	public TabularData getCounters() {
+
+		TabularDataSupport counters = new TabularDataSupport(COUNTERS_TYPE);
+
+		try {
+
+			for (Map.Entry<String, Long> counter : SocialMetrics.getCounters().entrySet()) {
+
+				counters.put(new CompositeDataSupport(COUNTER_TYPE, COUNTER_ITEMS,
+						new Object[] {counter.getKey(), counter.getValue()}));
+
+			}
+
+		} catch (OpenDataException e) {
+
+			throw new IllegalStateException(e);
+
+		}
+
+		return counters;
+
+	}
+
+	@Override
+	public TabularData getTimers() {
+
+		TabularDataSupport timers = new TabularDataSupport(TIMERS_TYPE);
+
+		try {
+
+			for (LatencyTimer timer : SocialMetrics.getTimers().values()) {
+
+				timers.put(new CompositeDataSupport(TIMER_TYPE, TIMER_ITEMS, new Object[] {
+						timer.getName(),
+						timer.getCount(),
+						timer.getMeanMicros(),
+						timer.getPercentileMicros(50),
+						timer.getPercentileMicros(99),
+						timer.getMaxMicros()}));
+
+			}
+
+		} catch (OpenDataException e) {
+
+			throw new IllegalStateException(e);
+
+		}
+
+		return timers;
+
+	}
+
+	@Override
+	public String[] getSlowPages() {
+
+		return SocialMetrics.getSlowPages();
+
+	}
+
+	@Override
+	public void reset() {
+
+		SocialMetrics.reset();
+
+	}
+
+}
@@ -0,0 +1,51 @@
+package org.fhcrc.www.core.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free event counter backed by a striped LongAdder. Like the
+ * timers, it records nothing while metrics are switched off.
+ */
+public final class Counter {
+
+	private final String name;
+	private final LongAdder count = new LongAdder();
+
+	Counter(String name) {
+
+		this.name = name;
+
+	}
+
+	public String getName() {
+
+		return name;
+
+	}
+
+	/**
+	 * Counts one event, if metrics are on.
+	 */
+	public void increment() {
+
+		if (SocialMetrics.isEnabled()) {
+
+			count.increment();
+
+		}
+
+	}
+
+	public long getCount() {
+
+		return count.sum();
+
+	}
+
+	void reset() {
+
+		count.reset();
+
+	}
+
+}
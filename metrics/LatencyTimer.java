@@ -0,0 +1,146 @@
+package org.fhcrc.www.core.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram. Durations are counted in power-of-two
+ * microsecond buckets (under 1us, 1us, 2-3us, 4-7us, ...) using striped
+ * LongAdders, so recording from many request threads does not contend.
+ * Percentiles are reported as the upper bound of their bucket.
+ */
+public final class LatencyTimer {
+
+	private static final int BUCKETS = 32;
+
+	private final String name;
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+	LatencyTimer(String name) {
+
+		this.name = name;
+
+		for (int i = 0; i < BUCKETS; i++) {
+
+			buckets[i] = new LongAdder();
+
+		}
+
+	}
+
+	public String getName() {
+
+		return name;
+
+	}
+
+	/**
+	 * Records the time since start, a value from {@link SocialMetrics#start()}
+	 * or a previous call to record.
+	 * @return the current time, so consecutive steps can be timed with one clock read each
+	 */
+	public long record(long start) {
+
+		if (!SocialMetrics.isEnabled()) {
+
+			return 0L;
+
+		}
+
+		long now = System.nanoTime();
+
+		// Metrics were switched on part way through the timed work
+		if (start != 0L) {
+
+			recordNanos(now - start);
+
+		}
+
+		return now;
+
+	}
+
+	public void recordNanos(long nanos) {
+
+		long micros = nanos / 1000L;
+		int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+
+		buckets[bucket].increment();
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+
+	}
+
+	public long getCount() {
+
+		return count.sum();
+
+	}
+
+	public double getMeanMicros() {
+
+		long n = count.sum();
+		return n == 0 ? 0.0 : totalNanos.sum() / 1000.0 / n;
+
+	}
+
+	public double getMaxMicros() {
+
+		return maxNanos.get() / 1000.0;
+
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the upper bound in microseconds of the bucket holding that percentile
+	 */
+	public long getPercentileMicros(double percentile) {
+
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+
+		for (int i = 0; i < BUCKETS; i++) {
+
+			counts[i] = buckets[i].sum();
+			total += counts[i];
+
+		}
+
+		long target = (long) Math.ceil(total * percentile / 100.0);
+		long seen = 0;
+
+		for (int i = 0; i < BUCKETS; i++) {
+
+			seen += counts[i];
+
+			if (seen >= target && counts[i] > 0) {
+
+				return 1L << i;
+
+			}
+
+		}
+
+		return 0L;
+
+	}
+
+	void reset() {
+
+		for (LongAdder bucket : buckets) {
+
+			bucket.reset();
+
+		}
+
+		count.reset();
+		totalNanos.reset();
+		maxNanos.reset();
+
+	}
+
+}
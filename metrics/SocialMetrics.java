@@ -0,0 +1,303 @@
+package org.fhcrc.www.core.metrics;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Low-overhead counters and latency timers for social media metadata
+ * generation, shared by the whole bundle. Everything is recorded with
+ * LongAdders and never takes a lock, so it is safe to leave on in
+ * production. When metrics are switched off, counters and timers alike
+ * record nothing. Read the values through the SocialMetrics MBean or the
+ * JSON status servlet.
+ */
+public final class SocialMetrics {
+
+	private static final ConcurrentMap<String, LatencyTimer> TIMERS = new ConcurrentHashMap<String, LatencyTimer>();
+	private static final ConcurrentMap<String, Counter> COUNTERS = new ConcurrentHashMap<String, Counter>();
+
+	/* Metadata generation */
+	public static final LatencyTimer INIT_METADATA = timer("metadata.total");
+	public static final LatencyTimer PROVIDER_CREATION = timer("metadata.providerCreation");
+	public static final LatencyTimer FIELD_URL = timer("metadata.field.url");
+	public static final LatencyTimer FIELD_TITLE = timer("metadata.field.title");
+	public static final LatencyTimer FIELD_DESCRIPTION = timer("metadata.field.description");
+	public static final LatencyTimer FIELD_SITE = timer("metadata.field.site");
+	public static final LatencyTimer FIELD_IMAGE = timer("metadata.field.image");
+	public static final LatencyTimer FIELD_PUBLICATION_DATE = timer("metadata.field.publicationDate");
+	public static final LatencyTimer FIELD_PROFILE_NAME = timer("metadata.field.profileName");
+	public static final LatencyTimer FIELD_TWITTER_CARD = timer("metadata.field.twitterCard");
+	public static final LatencyTimer FIELD_PROVIDER_METADATA = timer("metadata.field.providerMetadata");
+
+	/* Canonical URLs */
+	public static final LatencyTimer URL_MAPPING = timer("canonicalUrl.mapping");
+
+	/* Title resolution */
+	public static final Counter TITLE_REQUESTED = counter("title.requested");
+	public static final Counter TITLE_FALLBACK_TO_PAGE_TITLE = counter("title.fallback.pageTitle");
+	public static final Counter TITLE_FALLBACK_TO_TITLE = counter("title.fallback.title");
+	public static final Counter TITLE_MISSING = counter("title.missing");
+
+	/* Caches */
+	public static final Counter METADATA_CACHE_HITS = counter("cache.metadata.hits");
+	public static final Counter METADATA_CACHE_MISSES = counter("cache.metadata.misses");
+	public static final Counter METADATA_CACHE_PARTIAL_HITS = counter("cache.metadata.partialHits");
+	public static final Counter PERSISTENT_CACHE_HITS = counter("cache.persistent.hits");
+	public static final Counter PERSISTENT_CACHE_MISSES = counter("cache.persistent.misses");
+	public static final Counter SNAPSHOT_HITS = counter("cache.snapshot.hits");
+	public static final Counter SNAPSHOT_MISSES = counter("cache.snapshot.misses");
+	public static final Counter URL_CACHE_HITS = counter("cache.canonicalUrl.hits");
+	public static final Counter URL_CACHE_MISSES = counter("cache.canonicalUrl.misses");
+	public static final Counter DATE_CACHE_HITS = counter("cache.publicationDate.hits");
+	public static final Counter DATE_CACHE_MISSES = counter("cache.publicationDate.misses");
+	public static final Counter IMAGE_CACHE_HITS = counter("cache.image.hits");
+	public static final Counter IMAGE_CACHE_MISSES = counter("cache.image.misses");
+
+	/* Requests */
+	public static final Counter CRAWLER_REQUESTS = counter("requests.crawlerFastPath");
+
+	/* Cache warm-up */
+	public static final Counter WARMUP_PAGES_BUILT = counter("warmup.pagesBuilt");
+	public static final Counter WARMUP_ENTRIES_REUSED = counter("warmup.entriesReused");
+
+	private static final String PROVIDER_COUNTER_PREFIX = "provider.";
+	private static final int SLOW_PAGE_SLOTS = 32;
+
+	private static final AtomicReferenceArray<String> SLOW_PAGES = new AtomicReferenceArray<String>(SLOW_PAGE_SLOTS);
+	private static final AtomicLong SLOW_PAGE_INDEX = new AtomicLong();
+
+	private static volatile boolean enabled = true;
+	private static volatile long slowPageThresholdNanos = 50_000_000L;
+
+	private SocialMetrics() {
+	}
+
+	/**
+	 * Registers a named timer, or returns the existing one with that name.
+	 */
+	public static LatencyTimer timer(String name) {
+
+		LatencyTimer timer = TIMERS.get(name);
+
+		if (timer == null) {
+
+			LatencyTimer created = new LatencyTimer(name);
+			timer = TIMERS.putIfAbsent(name, created);
+
+			if (timer == null) {
+
+				timer = created;
+
+			}
+
+		}
+
+		return timer;
+
+	}
+
+	/**
+	 * Registers a named counter, or returns the existing one with that name.
+	 */
+	public static Counter counter(String name) {
+
+		Counter counter = COUNTERS.get(name);
+
+		if (counter == null) {
+
+			Counter created = new Counter(name);
+			counter = COUNTERS.putIfAbsent(name, created);
+
+			if (counter == null) {
+
+				counter = created;
+
+			}
+
+		}
+
+		return counter;
+
+	}
+
+	/**
+	 * @return a start time for {@link LatencyTimer#record(long)}, or 0 if metrics are off
+	 */
+	public static long start() {
+
+		return enabled ? System.nanoTime() : 0L;
+
+	}
+
+	/**
+	 * Counts a page whose metadata was built by the given provider type.
+	 */
+	public static void providerSelected(String type) {
+
+		if (enabled) {
+
+			counter(PROVIDER_COUNTER_PREFIX + type).increment();
+
+		}
+
+	}
+
+	/**
+	 * Records the total time spent computing a page's metadata, remembering
+	 * the page if it was slower than the slow page threshold.
+	 */
+	public static void metadataBuilt(String path, long nanos) {
+
+		if (!enabled || nanos <= 0L) {
+
+			return;
+
+		}
+
+		INIT_METADATA.recordNanos(nanos);
+
+		if (nanos >= slowPageThresholdNanos) {
+
+			int slot = (int) (SLOW_PAGE_INDEX.getAndIncrement() % SLOW_PAGE_SLOTS);
+			SLOW_PAGES.set(slot, path + " " + (nanos / 1000L) + "us");
+
+		}
+
+	}
+
+	public static boolean isEnabled() {
+
+		return enabled;
+
+	}
+
+	public static void configure(boolean enabled, long slowPageThresholdMillis) {
+
+		SocialMetrics.enabled = enabled;
+		SocialMetrics.slowPageThresholdNanos = slowPageThresholdMillis * 1_000_000L;
+
+	}
+
+	/**
+	 * @return the current value of every counter, sorted by name
+	 */
+	public static Map<String, Long> getCounters() {
+
+		Map<String, Long> values = new TreeMap<String, Long>();
+
+		for (Counter counter : COUNTERS.values()) {
+
+			values.put(counter.getName(), counter.getCount());
+
+		}
+
+		return values;
+
+	}
+
+	/**
+	 * @return every timer, sorted by name
+	 */
+	public static Map<String, LatencyTimer> getTimers() {
+
+		return new TreeMap<String, LatencyTimer>(TIMERS);
+
+	}
+
+	/**
+	 * @return the most recent pages that were slower than the threshold, with their time
+	 */
+	public static String[] getSlowPages() {
+
+		long next = SLOW_PAGE_INDEX.get();
+		int size = (int) Math.min(next, SLOW_PAGE_SLOTS);
+		String[] pages = new String[size];
+
+		// Newest first
+		for (int i = 0; i < size; i++) {
+
+			pages[i] = SLOW_PAGES.get((int) ((next - 1 - i) % SLOW_PAGE_SLOTS));
+
+		}
+
+		return pages;
+
+	}
+
+	public static void reset() {
+
+		for (LatencyTimer timer : TIMERS.values()) {
+
+			timer.reset();
+
+		}
+
+		for (Counter counter : COUNTERS.values()) {
+
+			counter.reset();
+
+		}
+
+		for (int i = 0; i < SLOW_PAGE_SLOTS; i++) {
+
+			SLOW_PAGES.set(i, null);
+
+		}
+
+		SLOW_PAGE_INDEX.set(0);
+
+	}
+
+	/**
+	 * Writes every counter, timer and slow page as a JSON object.
+	 */
+	public static void writeJson(JsonWriter json) throws IOException {
+
+		json.beginObject();
+		json.name("enabled").value(enabled);
+
+		json.name("counters").beginObject();
+
+		for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+
+			json.name(counter.getKey()).value(counter.getValue());
+
+		}
+
+		json.endObject();
+		json.name("timers").beginObject();
+
+		for (LatencyTimer timer : getTimers().values()) {
+
+			json.name(timer.getName()).beginObject();
+			json.name("count").value(timer.getCount());
+			json.name("meanMicros").value(timer.getMeanMicros());
+			json.name("p50Micros").value(timer.getPercentileMicros(50));
+			json.name("p99Micros").value(timer.getPercentileMicros(99));
+			json.name("maxMicros").value(timer.getMaxMicros());
+			json.endObject();
+
+		}
+
+		json.endObject();
+		json.name("slowPages").beginArray();
+
+		for (String page : getSlowPages()) {
+
+			json.value(page);
+
+		}
+
+		json.endArray();
+		json.endObject();
+
+	}
+
+}
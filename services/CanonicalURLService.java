@@ -0,0 +1,50 @@
+package org.fhcrc.www.core.services;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.ResourceResolver;
+
+import com.day.cq.wcm.api.Page;
+
+/**
+ * Builds fully-qualified canonical URLs for pages, remembering the result
+ * of resource resolver mapping so that /etc/map rules are only evaluated
+ * once per page, extension and host.
+ */
+public interface CanonicalURLService {
+
+	/**
+	 * @return the page's canonical URL for the host and extension of the request
+	 * @throws IllegalArgumentException if request or page is null
+	 */
+	String getCanonicalURL(SlingHttpServletRequest request, Page page) throws IllegalArgumentException;
+
+	/**
+	 * @return the page's canonical URL when there is no request, mapped with
+	 * the resource resolver's own mapping configuration
+	 * @throws IllegalArgumentException if resourceResolver or page is null
+	 */
+	String getCanonicalURL(ResourceResolver resourceResolver, Page page, String extension) throws IllegalArgumentException;
+
+	/**
+	 * Builds the canonical URLs for many pages at once, e.g. for a listing
+	 * component. Null pages, and pages whose URL cannot be created, get an
+	 * empty string.
+	 * @return the canonical URLs in the same order as pages
+	 * @throws IllegalArgumentException if request is null
+	 */
+	List<String> getCanonicalURLs(SlingHttpServletRequest request, Collection<Page> pages) throws IllegalArgumentException;
+
+	/**
+	 * Forgets the mapped URLs of every page at, above or below the given path.
+	 */
+	void invalidate(String path);
+
+	/**
+	 * Forgets every mapped URL.
+	 */
+	void clear();
+
+}
@@ -0,0 +1,57 @@
+package org.fhcrc.www.core.services;
+
+/**
+ * Summary of a bulk social media metadata export.
+ */
+public final class ExportResult {
+
+	private final long pages;
+	private final long errors;
+	private final long durationMillis;
+
+	public ExportResult(long pages, long errors, long durationMillis) {
+
+		this.pages = pages;
+		this.errors = errors;
+		this.durationMillis = durationMillis;
+
+	}
+
+	/**
+	 * @return the number of pages written to the export
+	 */
+	public long getPages() {
+
+		return pages;
+
+	}
+
+	/**
+	 * @return the number of pages that could not be exported
+	 */
+	public long getErrors() {
+
+		return errors;
+
+	}
+
+	public long getDurationMillis() {
+
+		return durationMillis;
+
+	}
+
+	public double getPagesPerSecond() {
+
+		return durationMillis == 0 ? pages : pages * 1000.0 / durationMillis;
+
+	}
+
+	@Override
+	public String toString() {
+
+		return String.format("%d pages, %d errors in %d ms (%.1f pages/s)", pages, errors, durationMillis, getPagesPerSecond());
+
+	}
+
+}
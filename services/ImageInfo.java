@@ -0,0 +1,227 @@
+package org.fhcrc.www.core.services;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+
+import com.day.cq.dam.api.Asset;
+import com.day.cq.dam.api.DamConstants;
+import com.day.cq.dam.api.Rendition;
+
+/**
+ * The rendition of a DAM image to use for social media, with its size and
+ * type. Everything is read from the asset's metadata and rendition names,
+ * never from a binary.
+ */
+public final class ImageInfo {
+
+	/* Facebook's recommended width for link share images */
+	public static final int DEFAULT_PREFERRED_WIDTH = 1200;
+
+	private static final String WEB_RENDITION_PREFIX = DamConstants.PREFIX_ASSET_WEB + ".";
+	private static final String THUMBNAIL_RENDITION_PREFIX = "cq5dam.thumbnail.";
+	private static final String IMAGE_MIME_PREFIX = "image/";
+
+	private final String path;
+	private final int width;
+	private final int height;
+	private final String mimeType;
+
+	public ImageInfo(String path, int width, int height, String mimeType) {
+
+		this.path = path;
+		this.width = width;
+		this.height = height;
+		this.mimeType = mimeType;
+
+	}
+
+	/**
+	 * @return the path of the chosen rendition, or of the asset itself when
+	 * the original is used
+	 */
+	public String getPath() {
+
+		return path;
+
+	}
+
+	/**
+	 * @return the width in pixels, or 0 if the asset has no size metadata
+	 */
+	public int getWidth() {
+
+		return width;
+
+	}
+
+	/**
+	 * @return the height in pixels, or 0 if the asset has no size metadata
+	 */
+	public int getHeight() {
+
+		return height;
+
+	}
+
+	public String getMimeType() {
+
+		return mimeType;
+
+	}
+
+	public boolean hasSize() {
+
+		return width > 0 && height > 0;
+
+	}
+
+	/**
+	 * Reads the image at a DAM path and picks the smallest image rendition
+	 * that is at least preferredWidth wide, or the largest one if none is.
+	 * Rendition sizes come from the original's size and the bounding box in
+	 * the rendition name (e.g. cq5dam.web.1280.1280.jpeg).
+	 * @return the image, or null if the path is not a DAM asset
+	 */
+	public static ImageInfo read(ResourceResolver resourceResolver, String assetPath, int preferredWidth) {
+
+		Resource resource = resourceResolver.getResource(assetPath);
+		Asset asset = resource == null ? null : resource.adaptTo(Asset.class);
+
+		if (asset == null) {
+
+			return null;
+
+		}
+
+		int width = parseDimension(asset, DamConstants.TIFF_IMAGEWIDTH, DamConstants.EXIF_PIXELXDIMENSION);
+		int height = parseDimension(asset, DamConstants.TIFF_IMAGELENGTH, DamConstants.EXIF_PIXELYDIMENSION);
+		ImageInfo best = new ImageInfo(asset.getPath(), width, height, asset.getMimeType());
+
+		if (width <= 0 || height <= 0) {
+
+			return best;
+
+		}
+
+		for (Rendition rendition : asset.getRenditions()) {
+
+			String name = rendition.getName();
+			String mimeType = rendition.getMimeType();
+
+			if (mimeType == null || !mimeType.startsWith(IMAGE_MIME_PREFIX)) {
+
+				continue;
+
+			}
+
+			ImageInfo candidate = scaledRendition(rendition.getPath(), name, mimeType, width, height);
+
+			if (candidate != null && isBetter(candidate, best, preferredWidth)) {
+
+				best = candidate;
+
+			}
+
+		}
+
+		return best;
+
+	}
+
+	private static boolean isBetter(ImageInfo candidate, ImageInfo best, int preferredWidth) {
+
+		boolean candidateFits = candidate.width >= preferredWidth;
+		boolean bestFits = best.width >= preferredWidth;
+
+		if (candidateFits != bestFits) {
+
+			return candidateFits;
+
+		}
+
+		// Among big enough images the smallest wins, otherwise the largest; ties keep the earlier one
+		return candidateFits ? candidate.width < best.width : candidate.width > best.width;
+
+	}
+
+	/**
+	 * @return the size of a generated rendition, fitted into the bounding box
+	 * in its name without upscaling, or null if the name has no box
+	 */
+	private static ImageInfo scaledRendition(String path, String name, String mimeType, int width, int height) {
+
+		int start;
+
+		if (name.startsWith(WEB_RENDITION_PREFIX)) {
+
+			start = WEB_RENDITION_PREFIX.length();
+
+		} else if (name.startsWith(THUMBNAIL_RENDITION_PREFIX)) {
+
+			start = THUMBNAIL_RENDITION_PREFIX.length();
+
+		} else {
+
+			return null;
+
+		}
+
+		int separator = name.indexOf('.', start);
+
+		if (separator < 0) {
+
+			return null;
+
+		}
+
+		int end = name.indexOf('.', separator + 1);
+
+		if (end < 0) {
+
+			end = name.length();
+
+		}
+
+		int boxWidth = parseInt(name.substring(start, separator));
+		int boxHeight = parseInt(name.substring(separator + 1, end));
+
+		if (boxWidth <= 0 || boxHeight <= 0) {
+
+			return null;
+
+		}
+
+		double scale = Math.min(1.0, Math.min((double) boxWidth / width, (double) boxHeight / height));
+
+		return new ImageInfo(path, (int) Math.round(width * scale), (int) Math.round(height * scale), mimeType);
+
+	}
+
+	private static int parseDimension(Asset asset, String name, String fallbackName) {
+
+		int value = parseInt(asset.getMetadataValue(name));
+		return value > 0 ? value : parseInt(asset.getMetadataValue(fallbackName));
+
+	}
+
+	private static int parseInt(String value) {
+
+		if (value == null || value.isEmpty()) {
+
+			return 0;
+
+		}
+
+		try {
+
+			return Integer.parseInt(value.trim());
+
+		} catch (NumberFormatException e) {
+
+			return 0;
+
+		}
+
+	}
+
+}
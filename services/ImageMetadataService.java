@@ -0,0 +1,28 @@
+package org.fhcrc.www.core.services;
+
+import org.apache.sling.api.resource.ResourceResolver;
+
+/**
+ * Looks up the social media rendition, size and type of DAM images. Results
+ * are cached per asset and dropped when the asset changes, so repeated
+ * lookups do not read the repository.
+ */
+public interface ImageMetadataService {
+
+	/**
+	 * @return the rendition to use for the image at assetPath, or null if the
+	 * path is not a DAM asset
+	 */
+	ImageInfo getImageInfo(ResourceResolver resourceResolver, String assetPath);
+
+	/**
+	 * Removes the entries for assets at, above or below the given path.
+	 */
+	void invalidate(String path);
+
+	/**
+	 * Removes every entry from the cache.
+	 */
+	void clear();
+
+}
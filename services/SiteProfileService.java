@@ -0,0 +1,18 @@
+package org.fhcrc.www.core.services;
+
+import org.fhcrc.www.core.SiteProfile;
+
+/**
+ * Tells which site a page belongs to, from the "Fred Hutch Social Media
+ * Site" configurations. The configured sites are compiled into a lookup
+ * table whenever one comes, goes or changes.
+ */
+public interface SiteProfileService {
+
+	/**
+	 * @return the profile of the site with the longest content root at or
+	 * above path, or {@link SiteProfile#DEFAULT} if no site covers it
+	 */
+	SiteProfile getSiteProfile(String path);
+
+}
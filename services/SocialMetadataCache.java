@@ -0,0 +1,40 @@
+package org.fhcrc.www.core.services;
+
+import org.fhcrc.www.core.SiteProfile;
+
+/**
+ * A bounded cache of social media metadata shared across requests. Entries
+ * are keyed by page path, the page's last modified time, the request
+ * extension, the host the request was made to and the site profile, so a
+ * cached value is only ever reused for the same version of a page and of
+ * its site's configuration, and never carries one host's og:url or share
+ * links to another.
+ */
+public interface SocialMetadataCache {
+
+	/**
+	 * @param host the server name of the request, or "" outside of a request
+	 * @return the cached metadata for this version of the page, or null if
+	 * there is no live entry
+	 */
+	SocialMetadataEntry get(String pagePath, long lastModified, String extension, String host, SiteProfile site);
+
+	/**
+	 * Stores the metadata for this version of the page. The entry's map
+	 * should not be modified after it has been cached, unless the entry is
+	 * not {@link SocialMetadataEntry#isComplete() complete}; such entries
+	 * are only kept in memory.
+	 */
+	void put(String pagePath, long lastModified, String extension, String host, SiteProfile site, SocialMetadataEntry entry);
+
+	/**
+	 * Removes every entry for pages at, above or below the given path.
+	 */
+	void invalidate(String path);
+
+	/**
+	 * Removes every entry from the cache.
+	 */
+	void clear();
+
+}
@@ -0,0 +1,331 @@
+package org.fhcrc.www.core.services;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.fhcrc.www.core.Constants;
+import org.fhcrc.www.core.MetadataProperty;
+import org.fhcrc.www.core.ShareLink;
+import org.fhcrc.www.core.Utils;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * The computed social media metadata for one version of a page, along with
+ * the representations derived from it. Derived values are built the first
+ * time they are requested and then kept with the entry, so a cached entry
+ * only pays for rendering once.
+ */
+public final class SocialMetadataEntry {
+
+	private static final String META_TAG_START = "<meta property=\"";
+	private static final String META_TAG_CONTENT = "\" content=\"";
+	private static final String META_TAG_END = "\"/>";
+
+	private static final String SCHEMA_CONTEXT = "https://schema.org";
+	private static final String ARTICLE_TYPE = "article";
+	private static final String PROFILE_TYPE = "profile";
+
+	private final Map<String, String> metadata;
+
+	private final boolean complete;
+
+	private volatile String metaTags;
+
+	private volatile Map<String, String> shareLinks;
+
+	private volatile String jsonLd;
+
+	/**
+	 * @param metadata a read-only map of meta tag property names to content values
+	 */
+	public SocialMetadataEntry(Map<String, String> metadata) {
+
+		this(metadata, true);
+
+	}
+
+	/**
+	 * @param complete false for an entry that only holds the values computed
+	 * so far, which requests for the page complete as they read its tags
+	 */
+	public SocialMetadataEntry(Map<String, String> metadata, boolean complete) {
+
+		this.metadata = metadata;
+		this.complete = complete;
+
+	}
+
+	/**
+	 * @return false if the entry holds only some of the page's metadata, in
+	 * which case it is not to be served as it is, nor persisted
+	 */
+	public boolean isComplete() {
+
+		return complete;
+
+	}
+
+	/**
+	 * @return a read-only map of meta tag property names to content values
+	 */
+	public Map<String, String> getMetadata() {
+
+		return metadata;
+
+	}
+
+	/**
+	 * @return every meta tag as already-escaped HTML, one tag per line
+	 */
+	public String getMetaTags() {
+
+		String tags = metaTags;
+
+		if (tags == null) {
+
+			tags = renderMetaTags(metadata);
+			metaTags = tags;
+
+		}
+
+		return tags;
+
+	}
+
+	/**
+	 * @return a read-only map of {@link ShareLink} keys to share URLs, built
+	 * from the page's canonical URL, title and description
+	 */
+	public Map<String, String> getShareLinks() {
+
+		Map<String, String> links = shareLinks;
+
+		if (links == null) {
+
+			links = buildShareLinks(metadata);
+			shareLinks = links;
+
+		}
+
+		return links;
+
+	}
+
+	static Map<String, String> buildShareLinks(Map<String, String> metadata) {
+
+		String url = metadata.get(MetadataProperty.OG_URL.getName());
+		String title = metadata.get(MetadataProperty.OG_TITLE.getName());
+		String description = metadata.get(MetadataProperty.OG_DESCRIPTION.getName());
+		String siteName = metadata.get(MetadataProperty.OG_SITE_NAME.getName());
+		String twitterSite = metadata.get(MetadataProperty.TWITTER_SITE.getName());
+		String twitterUserName = twitterSite != null && twitterSite.startsWith("@") ? twitterSite.substring(1) : twitterSite;
+		ShareLink[] shareLinks = ShareLink.values();
+		Map<String, String> links = new LinkedHashMap<String, String>(shareLinks.length * 2);
+
+		for (ShareLink shareLink : shareLinks) {
+
+			links.put(shareLink.getKey(), shareLink.build(url, title, description, siteName, twitterUserName));
+
+		}
+
+		return Collections.unmodifiableMap(links);
+
+	}
+
+	/**
+	 * @return schema.org structured data for the page as JSON-LD: a
+	 * NewsArticle for articles, a Person for profiles and a WebSite for
+	 * everything else. The JSON is HTML-safe, for use inside a
+	 * &lt;script type="application/ld+json"&gt; element.
+	 */
+	public String getJsonLd() {
+
+		String json = jsonLd;
+
+		if (json == null) {
+
+			json = renderJsonLd(metadata);
+			jsonLd = json;
+
+		}
+
+		return json;
+
+	}
+
+	/**
+	 * Streams the JSON-LD for a page from its Open Graph metadata, which
+	 * already holds every value the structured data needs, so no page
+	 * property is read and no URL is mapped a second time.
+	 */
+	static String renderJsonLd(Map<String, String> metadata) {
+
+		StringWriter out = new StringWriter(512);
+		JsonWriter json = new JsonWriter(out);
+		json.setHtmlSafe(true);
+
+		try {
+
+			String type = metadata.get(MetadataProperty.OG_TYPE.getName());
+			String url = metadata.get(MetadataProperty.OG_URL.getName());
+			String title = metadata.get(MetadataProperty.OG_TITLE.getName());
+			String siteName = metadata.get(MetadataProperty.OG_SITE_NAME.getName());
+
+			json.beginObject();
+			json.name("@context").value(SCHEMA_CONTEXT);
+
+			if (ARTICLE_TYPE.equals(type)) {
+
+				json.name("@type").value("NewsArticle");
+				writeValue(json, "headline", title);
+				writeValue(json, "description", metadata.get(MetadataProperty.OG_DESCRIPTION.getName()));
+				writeValue(json, "url", url);
+				writeValue(json, "mainEntityOfPage", url);
+				writeValue(json, "image", metadata.get(MetadataProperty.OG_IMAGE.getName()));
+				writeValue(json, "datePublished", toIsoOffset(metadata.get(MetadataProperty.ARTICLE_PUBLISHED_TIME.getName())));
+				json.name("publisher").beginObject();
+				json.name("@type").value("Organization");
+				writeValue(json, "name", siteName);
+				json.endObject();
+
+			} else if (PROFILE_TYPE.equals(type)) {
+
+				json.name("@type").value("Person");
+				writeValue(json, "name", title);
+				writeValue(json, "givenName", metadata.get(MetadataProperty.PROFILE_FIRST_NAME.getName()));
+				writeValue(json, "familyName", metadata.get(MetadataProperty.PROFILE_LAST_NAME.getName()));
+				writeValue(json, "description", metadata.get(MetadataProperty.OG_DESCRIPTION.getName()));
+				writeValue(json, "url", url);
+				writeValue(json, "image", metadata.get(MetadataProperty.OG_IMAGE.getName()));
+				json.name("worksFor").beginObject();
+				json.name("@type").value("Organization");
+				writeValue(json, "name", siteName);
+				json.endObject();
+
+			} else {
+
+				json.name("@type").value("WebSite");
+				writeValue(json, "name", siteName);
+				writeValue(json, "headline", title);
+				writeValue(json, "description", metadata.get(MetadataProperty.OG_DESCRIPTION.getName()));
+				writeValue(json, "url", url);
+
+			}
+
+			json.endObject();
+			json.flush();
+
+		} catch (IOException e) {
+
+			// A StringWriter does not throw
+			throw new IllegalStateException(e);
+
+		}
+
+		return out.toString();
+
+	}
+
+	/**
+	 * Leaves out empty values rather than writing empty strings.
+	 */
+	private static void writeValue(JsonWriter json, String name, String value) throws IOException {
+
+		if (value != null && !value.isEmpty()) {
+
+			json.name(name).value(value);
+
+		}
+
+	}
+
+	/**
+	 * Turns the article:published_time offset (+hhmm) into the +hh:mm form
+	 * that schema.org dates use.
+	 */
+	private static String toIsoOffset(String date) {
+
+		if (date == null || date.length() < 5) {
+
+			return date;
+
+		}
+
+		int offset = date.length() - 5;
+		char sign = date.charAt(offset);
+
+		if (sign != '+' && sign != '-') {
+
+			return date;
+
+		}
+
+		return new StringBuilder(date.length() + 1)
+				.append(date, 0, offset + 3)
+				.append(':')
+				.append(date, offset + 3, date.length())
+				.toString();
+
+	}
+
+	/**
+	 * Writes the same markup as iterating the map with data-sly-repeat: one
+	 * meta tag per entry, with the content attribute left off when the value
+	 * is empty.
+	 */
+	static String renderMetaTags(Map<String, String> metadata) {
+
+		StringBuilder sb = new StringBuilder(metadata.size() * 64);
+
+		for (Map.Entry<String, String> entry : metadata.entrySet()) {
+
+			sb.append(META_TAG_START);
+			Utils.escapeHtmlAttribute(entry.getKey(), sb);
+
+			String value = entry.getValue();
+
+			if (value != null && !value.isEmpty()) {
+
+				sb.append(META_TAG_CONTENT);
+				Utils.escapeHtmlAttribute(value, sb);
+
+			}
+
+			sb.append(META_TAG_END);
+			sb.append(Constants.NEWLINE);
+
+		}
+
+		return sb.toString();
+
+	}
+
+	/**
+	 * Writes a page's metadata as a {"path", "lastModified", "metadata"}
+	 * object, the shape of both the .social.json response and each line of
+	 * the bulk export.
+	 */
+	public static void writeJson(JsonWriter json, String path, long lastModified, Map<String, String> metadata)
+			throws IOException {
+
+		json.beginObject();
+		json.name("path").value(path);
+		json.name("lastModified").value(lastModified);
+		json.name("metadata").beginObject();
+
+		for (Map.Entry<String, String> entry : metadata.entrySet()) {
+
+			json.name(entry.getKey()).value(entry.getValue());
+
+		}
+
+		json.endObject();
+		json.endObject();
+
+	}
+
+}
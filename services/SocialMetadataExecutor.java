@@ -0,0 +1,19 @@
+package org.fhcrc.www.core.services;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A bounded pool of threads shared by everything that builds metadata for
+ * many pages at once, such as large listings and the cache warm-up, so
+ * together they never take more than a fixed number of threads away from
+ * requests. When every thread is busy and the queue is full, a task runs
+ * on the thread that submitted it.
+ */
+public interface SocialMetadataExecutor extends Executor {
+
+	/**
+	 * @return the number of threads in the pool
+	 */
+	int getThreads();
+
+}
@@ -0,0 +1,26 @@
+package org.fhcrc.www.core.services;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Exports the social media metadata of every page in a content tree without
+ * rendering the pages, e.g. for audits, crawler pre-warming or feeding a
+ * search index.
+ */
+public interface SocialMetadataExporter {
+
+	/**
+	 * Writes one JSON object per line (NDJSON) for every page at or below
+	 * rootPath, in the form
+	 * {"path":"...","lastModified":1538006400000,"metadata":{"og:url":"...",...}}.
+	 * Lines are written as pages finish, so their order is not the tree order.
+	 * @param rootPath the page to start from, e.g. /content/fredhutch
+	 * @param output the file to write; it is replaced if it exists
+	 * @return how many pages were exported and how fast
+	 * @throws IllegalArgumentException if there is no page at rootPath
+	 * @throws IOException if the output file cannot be written
+	 */
+	ExportResult export(String rootPath, Path output) throws IOException;
+
+}
@@ -0,0 +1,58 @@
+package org.fhcrc.www.core.services;
+
+import java.util.Map;
+import java.util.Set;
+
+import com.day.cq.wcm.api.Page;
+
+/**
+ * A page type the SocialMediaHelper knows how to describe. Providers are
+ * registered as OSGi services and ranked with service.ranking; the
+ * SocialMetadataProviderRegistry picks one per page from the first of these
+ * rules that matches, checked in this order:
+ * <ol>
+ * <li>the page's cq:template is one of {@link #getTemplates()}</li>
+ * <li>the page's sling:resourceType is one of {@link #getResourceTypes()}</li>
+ * <li>the page has a non-empty {@link #getRequiredProperty()}</li>
+ * </ol>
+ * Every page gets the basic website metadata first; a provider then adds to
+ * or replaces those values.
+ */
+public interface SocialMetadataProvider {
+
+	/** Type of the built-in news article provider */
+	String ARTICLE = "article";
+
+	/** Type of the built-in profile provider */
+	String PROFILE = "profile";
+
+	/**
+	 * @return the page type, used as the og:type value
+	 */
+	String getType();
+
+	/**
+	 * @return the cq:template paths this provider handles, possibly empty
+	 */
+	Set<String> getTemplates();
+
+	/**
+	 * @return the sling:resourceType values of page content this provider handles, possibly empty
+	 */
+	Set<String> getResourceTypes();
+
+	/**
+	 * @return the name of a page property whose presence marks the page as
+	 * this type, or null if the provider only matches on template or resource type
+	 */
+	String getRequiredProperty();
+
+	/**
+	 * Returns the meta tags this page type adds to or replaces in the basic
+	 * website metadata. The built-in article and profile providers return an
+	 * empty map; their metadata is built by the SocialMediaHelper itself.
+	 * @return meta tag property names mapped to content values
+	 */
+	Map<String, String> getMetadata(Page page);
+
+}
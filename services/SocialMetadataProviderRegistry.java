@@ -0,0 +1,21 @@
+package org.fhcrc.www.core.services;
+
+import org.apache.sling.api.resource.ValueMap;
+
+/**
+ * Chooses the SocialMetadataProvider for a page. Template and resource type
+ * rules are compiled into lookup tables whenever providers come and go, so
+ * for most pages choosing a provider is a single map lookup.
+ */
+public interface SocialMetadataProviderRegistry {
+
+	/**
+	 * @param template the page's cq:template, may be null
+	 * @param resourceType the sling:resourceType of the page's content, may be null
+	 * @param properties the page's properties, only read if no template or
+	 * resource type rule matches
+	 * @return the best-ranked matching provider, or null if the page is a plain website page
+	 */
+	SocialMetadataProvider getProvider(String template, String resourceType, ValueMap properties);
+
+}
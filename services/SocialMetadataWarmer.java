@@ -0,0 +1,34 @@
+package org.fhcrc.www.core.services;
+
+import java.io.IOException;
+
+/**
+ * Fills the social media metadata cache with the most requested pages, so
+ * the first requests after a restart or deployment do not pay for building
+ * their metadata.
+ */
+public interface SocialMetadataWarmer {
+
+	/**
+	 * Ranks pages by how often they were requested in the configured access
+	 * logs, or takes them from the configured path list, and builds the
+	 * metadata of as many as the time budget allows, most requested first.
+	 * Blocks until the warm-up is finished.
+	 * @return how many pages were warmed and how fast
+	 * @throws IOException if no access log or path list could be read
+	 * @throws IllegalStateException if a warm-up is already running
+	 */
+	WarmUpResult warmUp() throws IOException;
+
+	/**
+	 * @return true while a warm-up is running
+	 */
+	boolean isRunning();
+
+	/**
+	 * @return the progress of the running warm-up, or the result of the last
+	 * one, or null if none has run
+	 */
+	WarmUpResult getStatus();
+
+}
@@ -0,0 +1,102 @@
+package org.fhcrc.www.core.services;
+
+/**
+ * Progress or summary of a social media metadata cache warm-up.
+ */
+public final class WarmUpResult {
+
+	private final long candidates;
+	private final long built;
+	private final long alreadyCached;
+	private final long errors;
+	private final long durationMillis;
+	private final boolean complete;
+
+	public WarmUpResult(long candidates, long built, long alreadyCached, long errors, long durationMillis, boolean complete) {
+
+		this.candidates = candidates;
+		this.built = built;
+		this.alreadyCached = alreadyCached;
+		this.errors = errors;
+		this.durationMillis = durationMillis;
+		this.complete = complete;
+
+	}
+
+	/**
+	 * @return the number of pages picked for warming, most requested first
+	 */
+	public long getCandidates() {
+
+		return candidates;
+
+	}
+
+	/**
+	 * @return the number of pages whose metadata was built and cached
+	 */
+	public long getBuilt() {
+
+		return built;
+
+	}
+
+	/**
+	 * @return the number of pages that were already cached, e.g. by requests
+	 */
+	public long getAlreadyCached() {
+
+		return alreadyCached;
+
+	}
+
+	/**
+	 * @return the number of pages that could not be warmed
+	 */
+	public long getErrors() {
+
+		return errors;
+
+	}
+
+	public long getDurationMillis() {
+
+		return durationMillis;
+
+	}
+
+	/**
+	 * @return false if the warm-up is still running, or if it ran out of
+	 * time before reaching every candidate
+	 */
+	public boolean isComplete() {
+
+		return complete;
+
+	}
+
+	/**
+	 * @return the number of candidates that have been dealt with
+	 */
+	public long getProcessed() {
+
+		return built + alreadyCached + errors;
+
+	}
+
+	public double getPagesPerSecond() {
+
+		return durationMillis == 0 ? getProcessed() : getProcessed() * 1000.0 / durationMillis;
+
+	}
+
+	@Override
+	public String toString() {
+
+		return String.format("%d of %d pages (%d built, %d already cached, %d errors) in %d ms (%.1f pages/s)%s",
+				getProcessed(), candidates, built, alreadyCached, errors, durationMillis, getPagesPerSecond(),
+				complete ? "" : ", incomplete");
+
+	}
+
+}
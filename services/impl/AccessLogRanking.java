@@ -0,0 +1,199 @@
+package org.fhcrc.www.core.services.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts successful page requests in NCSA-style access logs, the format
+ * written by AEM's request log, the dispatcher's Apache and most CDNs:
+ * ... "GET /content/site/page.html?q=1 HTTP/1.1" 200 ...
+ * Each line is scanned once by hand rather than matched with a pattern.
+ * Selectors, extensions and query strings are stripped, so the counts are
+ * per page rather than per URL. Only the end of a large log is read, since
+ * recent traffic is the best guess at what will be requested next.
+ */
+final class AccessLogRanking {
+
+	private static final String HTML_EXTENSION = ".html";
+	private static final String GET = "\"GET ";
+
+	/* Once this many distinct pages are counted, only those pages are counted further */
+	private static final int MAX_DISTINCT_PATHS = 200000;
+
+	private final Map<String, int[]> counts = new HashMap<String, int[]>();
+	private long lines;
+
+	/**
+	 * Counts the page requests in the last maxBytes of the log.
+	 */
+	void read(Path log, long maxBytes) throws IOException {
+
+		try (SeekableByteChannel channel = Files.newByteChannel(log)) {
+
+			long start = Math.max(0L, channel.size() - maxBytes);
+			channel.position(start);
+
+			BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+
+			if (start > 0L) {
+
+				// The first line is probably cut off
+				reader.readLine();
+
+			}
+
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+
+				count(line);
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * Counts one log line if it is a successful GET of an .html page.
+	 */
+	void count(String line) {
+
+		lines++;
+
+		String path = getPagePath(line);
+
+		if (path == null) {
+
+			return;
+
+		}
+
+		int[] count = counts.get(path);
+
+		if (count != null) {
+
+			count[0]++;
+
+		} else if (counts.size() < MAX_DISTINCT_PATHS) {
+
+			counts.put(path, new int[] {1});
+
+		}
+
+	}
+
+	long getLines() {
+
+		return lines;
+
+	}
+
+	/**
+	 * @return the counted pages, most requested first
+	 */
+	List<String> getRankedPaths() {
+
+		List<Map.Entry<String, int[]>> entries = new ArrayList<Map.Entry<String, int[]>>(counts.entrySet());
+
+		Collections.sort(entries, new Comparator<Map.Entry<String, int[]>>() {
+
+			@Override
+			public int compare(Map.Entry<String, int[]> a, Map.Entry<String, int[]> b) {
+
+				return Integer.compare(b.getValue()[0], a.getValue()[0]);
+
+			}
+
+		});
+
+		List<String> paths = new ArrayList<String>(entries.size());
+
+		for (Map.Entry<String, int[]> entry : entries) {
+
+			paths.add(entry.getKey());
+
+		}
+
+		return paths;
+
+	}
+
+	/**
+	 * @return the requested path without selectors, extension or query
+	 * string, e.g. /content/site/page for /content/site/page.amp.html?x=1,
+	 * or null if the line is not a GET of an .html page answered with 200
+	 * or 304
+	 */
+	static String getPagePath(String line) {
+
+		int method = line.indexOf(GET);
+
+		if (method < 0) {
+
+			return null;
+
+		}
+
+		int start = method + GET.length();
+		int end = line.indexOf(' ', start);
+		int quote = line.indexOf('"', start);
+
+		if (end < 0 || quote < end || !isSuccess(line, quote + 1)) {
+
+			return null;
+
+		}
+
+		int query = line.indexOf('?', start);
+
+		if (query >= 0 && query < end) {
+
+			end = query;
+
+		}
+
+		if (end - start <= HTML_EXTENSION.length() || !line.startsWith(HTML_EXTENSION, end - HTML_EXTENSION.length())
+				|| line.charAt(start) != '/') {
+
+			return null;
+
+		}
+
+		int slash = line.lastIndexOf('/', end - 1);
+		int dot = line.indexOf('.', slash);
+
+		return dot == slash + 1 ? null : line.substring(start, dot);
+
+	}
+
+	/**
+	 * Reads the status code that follows the request.
+	 */
+	private static boolean isSuccess(String line, int from) {
+
+		int i = from;
+
+		while (i < line.length() && line.charAt(i) == ' ') {
+
+			i++;
+
+		}
+
+		return line.startsWith("200", i) || line.startsWith("304", i);
+
+	}
+
+}
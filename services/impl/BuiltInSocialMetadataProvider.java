@@ -0,0 +1,84 @@
+package org.fhcrc.www.core.services.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.fhcrc.www.core.services.SocialMetadataProvider;
+
+import com.day.cq.wcm.api.Page;
+
+/**
+ * Match rules for a page type whose metadata the SocialMediaHelper builds
+ * itself. Only the rules live here, so that templates and resource types
+ * can be configured and ranked alongside other providers. The article and
+ * profile rules are registered by {@link BuiltInSocialMetadataProviders}.
+ */
+final class BuiltInSocialMetadataProvider implements SocialMetadataProvider {
+
+	private final String type;
+	private final String requiredProperty;
+	private final Set<String> templates;
+	private final Set<String> resourceTypes;
+
+	BuiltInSocialMetadataProvider(String type, String requiredProperty, String[] templates, String[] resourceTypes) {
+
+		this.type = type;
+		this.requiredProperty = requiredProperty;
+		this.templates = toSet(templates);
+		this.resourceTypes = toSet(resourceTypes);
+
+	}
+
+	@Override
+	public String getType() {
+
+		return type;
+
+	}
+
+	@Override
+	public Set<String> getTemplates() {
+
+		return templates;
+
+	}
+
+	@Override
+	public Set<String> getResourceTypes() {
+
+		return resourceTypes;
+
+	}
+
+	@Override
+	public String getRequiredProperty() {
+
+		return requiredProperty;
+
+	}
+
+	@Override
+	public Map<String, String> getMetadata(Page page) {
+
+		return Collections.emptyMap();
+
+	}
+
+	private static Set<String> toSet(String[] values) {
+
+		if (values == null || values.length == 0) {
+
+			return Collections.emptySet();
+
+		}
+
+		Set<String> set = new LinkedHashSet<String>(Arrays.asList(values));
+		set.remove("");
+		return Collections.unmodifiableSet(set);
+
+	}
+
+}
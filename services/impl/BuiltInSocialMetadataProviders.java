@@ -0,0 +1,95 @@
+package org.fhcrc.www.core.services.impl;
+
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.fhcrc.www.core.Constants;
+import org.fhcrc.www.core.services.SocialMetadataProvider;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Registers the news article and profile providers from one configuration.
+ * Articles are pages with a publicationDate and profiles pages with a
+ * lastName, or any page using one of the configured templates or resource
+ * types. Articles are ranked above profiles, as they always were checked
+ * first. Configuration changes restart the component, which registers the
+ * providers again, so the registry recompiles its lookup table.
+ *
+ * No templates or resource types are configured by default, since they
+ * belong to the sites rather than to this bundle. Until they are, every
+ * page is matched by its properties rather than by a single table lookup.
+ */
+@Component(immediate = true)
+@Designate(ocd = BuiltInSocialMetadataProviders.Config.class)
+public class BuiltInSocialMetadataProviders {
+
+	private static final int ARTICLE_RANKING = 200;
+	private static final int PROFILE_RANKING = 100;
+
+	@ObjectClassDefinition(
+			name = "Fred Hutch Social Media Built-in Providers",
+			description = "Which pages get news article and profile social media metadata. Configure the sites' "
+					+ "templates here so choosing a provider is a single lookup; unconfigured pages are matched "
+					+ "by their publicationDate or lastName property"
+	)
+	public @interface Config {
+
+		@AttributeDefinition(name = "Article templates", description = "cq:template paths of news articles")
+		String[] articleTemplates() default {};
+
+		@AttributeDefinition(name = "Article resource types", description = "sling:resourceType values of news articles")
+		String[] articleResourceTypes() default {};
+
+		@AttributeDefinition(name = "Profile templates", description = "cq:template paths of profile pages")
+		String[] profileTemplates() default {};
+
+		@AttributeDefinition(name = "Profile resource types", description = "sling:resourceType values of profile pages")
+		String[] profileResourceTypes() default {};
+
+	}
+
+	private final List<ServiceRegistration<SocialMetadataProvider>> registrations =
+			new ArrayList<ServiceRegistration<SocialMetadataProvider>>(2);
+
+	@Activate
+	protected void activate(BundleContext bundleContext, Config config) {
+
+		register(bundleContext, new BuiltInSocialMetadataProvider(SocialMetadataProvider.ARTICLE,
+				Constants.PN_ARTICLE_PUBLICATION_DATE, config.articleTemplates(), config.articleResourceTypes()), ARTICLE_RANKING);
+		register(bundleContext, new BuiltInSocialMetadataProvider(SocialMetadataProvider.PROFILE,
+				Constants.PN_PROFILE_LAST_NAME, config.profileTemplates(), config.profileResourceTypes()), PROFILE_RANKING);
+
+	}
+
+	@Deactivate
+	protected void deactivate() {
+
+		for (ServiceRegistration<SocialMetadataProvider> registration : registrations) {
+
+			registration.unregister();
+
+		}
+
+		registrations.clear();
+
+	}
+
+	private void register(BundleContext bundleContext, SocialMetadataProvider provider, int ranking) {
+
+		Dictionary<String, Object> properties = new Hashtable<String, Object>();
+		properties.put(org.osgi.framework.Constants.SERVICE_RANKING, ranking);
+
+		registrations.add(bundleContext.registerService(SocialMetadataProvider.class, provider, properties));
+
+	}
+
+}
@@ -0,0 +1,320 @@
+package org.fhcrc.www.core.services.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.fhcrc.www.core.Constants;
+import org.fhcrc.www.core.SiteProfile;
+import org.fhcrc.www.core.Utils;
+import org.fhcrc.www.core.metrics.SocialMetrics;
+import org.fhcrc.www.core.services.CanonicalURLService;
+import org.fhcrc.www.core.services.SiteProfileService;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.wcm.api.Page;
+
+/**
+ * Remembers canonical URLs per page path, extension, host and site
+ * profile. Any change to the mapping configuration under /etc/map clears
+ * everything, and a change under /content (a move, delete, new vanity path
+ * or alias) drops the URLs of the pages involved. URLs built with a site
+ * configuration that has since changed are no longer found, since the
+ * profile's fingerprint is part of the key.
+ */
+@Component(
+		service = {CanonicalURLService.class, ResourceChangeListener.class},
+		property = {
+				ResourceChangeListener.PATHS + "=" + Constants.INTERNAL_LINK_PREFIX,
+				ResourceChangeListener.PATHS + "=" + CanonicalURLServiceImpl.MAPPING_ROOT,
+				ResourceChangeListener.CHANGES + "=ADDED",
+				ResourceChangeListener.CHANGES + "=CHANGED",
+				ResourceChangeListener.CHANGES + "=REMOVED"
+		}
+)
+@Designate(ocd = CanonicalURLServiceImpl.Config.class)
+public class CanonicalURLServiceImpl implements CanonicalURLService, ResourceChangeListener {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(CanonicalURLServiceImpl.class);
+
+	static final String MAPPING_ROOT = "/etc/map";
+
+	/* Host used in cache keys for URLs mapped without a request */
+	private static final String NO_HOST = "";
+
+	@ObjectClassDefinition(
+			name = "Fred Hutch Canonical URL Service",
+			description = "Caches the result of mapping page paths to canonical URLs"
+	)
+	public @interface Config {
+
+		@AttributeDefinition(name = "Maximum entries", description = "Least recently used URLs are evicted past this size")
+		int maxEntries() default 20000;
+
+		@AttributeDefinition(name = "Time to live", description = "Seconds a mapped URL may be served before it is mapped again")
+		long ttlSeconds() default 3600;
+
+	}
+
+	@Reference
+	private SiteProfileService siteProfileService;
+
+	private volatile LruCache<CacheKey, String> urls;
+
+	@Activate
+	@Modified
+	protected void activate(Config config) {
+
+		urls = new LruCache<CacheKey, String>(Math.max(1, config.maxEntries()), config.ttlSeconds() * 1000L, CacheKey.PATH);
+
+	}
+
+	@Override
+	public String getCanonicalURL(SlingHttpServletRequest request, Page page) throws IllegalArgumentException {
+
+		if (request == null || page == null) {
+
+			throw new IllegalArgumentException();
+
+		}
+
+		SiteProfile site = siteProfileService.getSiteProfile(page.getPath());
+		CacheKey key = new CacheKey(page.getPath(), request.getRequestPathInfo().getExtension(), request.getServerName(), site);
+		LruCache<CacheKey, String> cache = urls;
+		String url = lookup(cache, key);
+
+		if (url == null) {
+
+			url = Utils.getCanonicalURL(request.getResourceResolver(), request, page, site);
+			cache.put(key, url);
+
+		}
+
+		return url;
+
+	}
+
+	@Override
+	public String getCanonicalURL(ResourceResolver resourceResolver, Page page, String extension) throws IllegalArgumentException {
+
+		if (resourceResolver == null || page == null) {
+
+			throw new IllegalArgumentException();
+
+		}
+
+		SiteProfile site = siteProfileService.getSiteProfile(page.getPath());
+		CacheKey key = new CacheKey(page.getPath(), extension, NO_HOST, site);
+		LruCache<CacheKey, String> cache = urls;
+		String url = lookup(cache, key);
+
+		if (url == null) {
+
+			url = Utils.getCanonicalURL(resourceResolver, page, extension, site);
+			cache.put(key, url);
+
+		}
+
+		return url;
+
+	}
+
+	@Override
+	public List<String> getCanonicalURLs(SlingHttpServletRequest request, Collection<Page> pages) throws IllegalArgumentException {
+
+		if (request == null) {
+
+			throw new IllegalArgumentException();
+
+		}
+
+		List<String> result = new ArrayList<String>(pages.size());
+		ResourceResolver resourceResolver = request.getResourceResolver();
+		String extension = request.getRequestPathInfo().getExtension();
+		String host = request.getServerName();
+		LruCache<CacheKey, String> cache = urls;
+
+		for (Page page : pages) {
+
+			if (page == null) {
+
+				result.add("");
+				continue;
+
+			}
+
+			SiteProfile site = siteProfileService.getSiteProfile(page.getPath());
+			CacheKey key = new CacheKey(page.getPath(), extension, host, site);
+			String url = lookup(cache, key);
+
+			if (url == null) {
+
+				try {
+
+					url = Utils.getCanonicalURL(resourceResolver, request, page, site);
+					cache.put(key, url);
+
+				} catch (IllegalArgumentException e) {
+
+					// One page that cannot be mapped does not fail the rest of the listing
+					LOGGER.error("Could not create canonical URL for {}", page.getPath());
+					url = "";
+
+				}
+
+			}
+
+			result.add(url);
+
+		}
+
+		return result;
+
+	}
+
+	@Override
+	public void invalidate(String path) {
+
+		if (path == null) {
+
+			return;
+
+		}
+
+		urls.invalidate(Collections.singletonList(path));
+
+	}
+
+	@Override
+	public void clear() {
+
+		urls.clear();
+
+	}
+
+	@Override
+	public void onChange(List<ResourceChange> changes) {
+
+		List<String> paths = new ArrayList<String>(changes.size());
+
+		for (ResourceChange change : changes) {
+
+			if (isMappingChange(change.getPath())) {
+
+				LOGGER.debug("Mapping configuration changed at {}, clearing canonical URLs", change.getPath());
+				clear();
+				return;
+
+			}
+
+			paths.add(change.getPath());
+
+		}
+
+		urls.invalidate(paths);
+
+	}
+
+	/**
+	 * @return true if the path is part of the mapping configuration, whose
+	 * changes can alter the URL of any page
+	 */
+	static boolean isMappingChange(String path) {
+
+		return path.equals(MAPPING_ROOT) || path.startsWith(MAPPING_ROOT + "/");
+
+	}
+
+	private static String lookup(LruCache<CacheKey, String> cache, CacheKey key) {
+
+		String url = cache.get(key);
+
+		if (url == null) {
+
+			SocialMetrics.URL_CACHE_MISSES.increment();
+
+		} else {
+
+			SocialMetrics.URL_CACHE_HITS.increment();
+
+		}
+
+		return url;
+
+	}
+
+	private static final class CacheKey {
+
+		static final LruCache.KeyPath<CacheKey> PATH = new LruCache.KeyPath<CacheKey>() {
+
+			@Override
+			public String getPath(CacheKey key) {
+
+				return key.path;
+
+			}
+
+		};
+
+		private final String path;
+		private final String extension;
+		private final String host;
+		private final long site;
+		private final int hash;
+
+		CacheKey(String path, String extension, String host, SiteProfile site) {
+
+			this.path = path;
+			this.extension = extension == null ? "" : extension;
+			this.host = host == null ? NO_HOST : host;
+			this.site = site.getFingerprint();
+			this.hash = 31 * (31 * (31 * path.hashCode() + this.extension.hashCode()) + this.host.hashCode())
+					+ (int) (this.site ^ (this.site >>> 32));
+
+		}
+
+		@Override
+		public boolean equals(Object o) {
+
+			if (this == o) {
+
+				return true;
+
+			}
+
+			if (!(o instanceof CacheKey)) {
+
+				return false;
+
+			}
+
+			CacheKey other = (CacheKey) o;
+
+			return site == other.site && path.equals(other.path) && extension.equals(other.extension)
+					&& host.equals(other.host);
+
+		}
+
+		@Override
+		public int hashCode() {
+
+			return hash;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,160 @@
+package org.fhcrc.www.core.services.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.fhcrc.www.core.metrics.SocialMetrics;
+import org.fhcrc.www.core.services.ImageInfo;
+import org.fhcrc.www.core.services.ImageMetadataService;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.dam.api.DamConstants;
+
+/**
+ * Caches the social media rendition of DAM images by asset path. Paths that
+ * are not assets are cached too, so a missing image is not looked up again.
+ * Any change under /content/dam drops the entries for the assets it touches.
+ */
+@Component(
+		service = {ImageMetadataService.class, ResourceChangeListener.class},
+		property = {
+				ResourceChangeListener.PATHS + "=" + DamConstants.MOUNTPOINT_ASSETS,
+				ResourceChangeListener.CHANGES + "=ADDED",
+				ResourceChangeListener.CHANGES + "=CHANGED",
+				ResourceChangeListener.CHANGES + "=REMOVED"
+		}
+)
+@Designate(ocd = ImageMetadataServiceImpl.Config.class)
+public class ImageMetadataServiceImpl implements ImageMetadataService, ResourceChangeListener {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(ImageMetadataServiceImpl.class);
+
+	@ObjectClassDefinition(
+			name = "Fred Hutch Social Media Image Metadata",
+			description = "Caches the rendition, size and type of images used in og:image"
+	)
+	public @interface Config {
+
+		@AttributeDefinition(name = "Preferred width", description = "The smallest rendition at least this many pixels wide is used for og:image")
+		int preferredWidth() default ImageInfo.DEFAULT_PREFERRED_WIDTH;
+
+		@AttributeDefinition(name = "Maximum entries", description = "Least recently used entries are evicted past this size")
+		int maxEntries() default 10000;
+
+		@AttributeDefinition(name = "Time to live", description = "Seconds an entry may be served before the asset is read again")
+		long ttlSeconds() default 86400;
+
+	}
+
+	private static final LruCache.KeyPath<String> ASSET_PATH = new LruCache.KeyPath<String>() {
+
+		@Override
+		public String getPath(String assetPath) {
+
+			return assetPath;
+
+		}
+
+	};
+
+	/* Cached for paths that are not DAM assets */
+	private static final ImageInfo NOT_AN_ASSET = new ImageInfo(null, 0, 0, null);
+
+	private volatile int preferredWidth;
+	private volatile LruCache<String, ImageInfo> images;
+
+	@Activate
+	@Modified
+	protected void activate(Config config) {
+
+		preferredWidth = config.preferredWidth();
+		images = new LruCache<String, ImageInfo>(Math.max(1, config.maxEntries()), config.ttlSeconds() * 1000L, ASSET_PATH);
+
+		LOGGER.info("Social media image metadata preferred width: {}, max entries: {}, ttl: {}s",
+				preferredWidth, config.maxEntries(), config.ttlSeconds());
+
+	}
+
+	@Override
+	public ImageInfo getImageInfo(ResourceResolver resourceResolver, String assetPath) {
+
+		if (resourceResolver == null || assetPath == null || assetPath.isEmpty()) {
+
+			return null;
+
+		}
+
+		LruCache<String, ImageInfo> cache = images;
+		ImageInfo info = cache.get(assetPath);
+
+		if (info == null) {
+
+			SocialMetrics.IMAGE_CACHE_MISSES.increment();
+			info = ImageInfo.read(resourceResolver, assetPath, preferredWidth);
+
+			if (info == null) {
+
+				info = NOT_AN_ASSET;
+
+			}
+
+			cache.put(assetPath, info);
+
+		} else {
+
+			SocialMetrics.IMAGE_CACHE_HITS.increment();
+
+		}
+
+		return info == NOT_AN_ASSET ? null : info;
+
+	}
+
+	@Override
+	public void invalidate(String path) {
+
+		if (path == null) {
+
+			return;
+
+		}
+
+		images.invalidate(Collections.singletonList(path));
+
+	}
+
+	@Override
+	public void clear() {
+
+		images.clear();
+
+	}
+
+	@Override
+	public void onChange(List<ResourceChange> changes) {
+
+		List<String> paths = new ArrayList<String>(changes.size());
+
+		for (ResourceChange change : changes) {
+
+			LOGGER.debug("Invalidating image metadata for {}", change.getPath());
+			paths.add(change.getPath());
+
+		}
+
+		images.invalidate(paths);
+
+	}
+
+}
@@ -0,0 +1,306 @@
+package org.fhcrc.www.core.services.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A thread-safe cache with least-recently-used eviction past a maximum size
+ * and a fixed time to live per entry. Used by the caching services in this
+ * package, which are read far more often than written.
+ *
+ * Entries are split into segments by the page path of their key, each with
+ * its own lock and its own share of the maximum size, so requests for
+ * different pages do not wait on each other. A sorted index from page path
+ * to keys finds the entries a change applies to without looking at the
+ * others: the changed path's ancestors are looked up one by one, and its
+ * descendants are one range of the index.
+ */
+final class LruCache<K, V> {
+
+	/**
+	 * Gives the page or asset path a key belongs to.
+	 */
+	interface KeyPath<K> {
+
+		String getPath(K key);
+
+	}
+
+	private static final int MAX_SEGMENTS = 16;
+
+	/* The character after '/', so path + "/" up to path + DESCENDANTS_END spans the descendants */
+	static final char DESCENDANTS_END = '/' + 1;
+
+	private final List<Segment> segments;
+	private final NavigableMap<String, Set<K>> index = new ConcurrentSkipListMap<String, Set<K>>();
+	private final KeyPath<K> keyPath;
+	private final long ttlMillis;
+
+	LruCache(int maxEntries, long ttlMillis, KeyPath<K> keyPath) {
+
+		int count = Math.max(1, Math.min(MAX_SEGMENTS, maxEntries));
+
+		this.ttlMillis = ttlMillis;
+		this.keyPath = keyPath;
+		this.segments = new ArrayList<Segment>(count);
+
+		for (int i = 0; i < count; i++) {
+
+			segments.add(new Segment((maxEntries + count - 1) / count));
+
+		}
+
+	}
+
+	/**
+	 * @return the live value for key, or null if there is none
+	 */
+	V get(K key) {
+
+		return segmentFor(keyPath.getPath(key)).get(key, System.currentTimeMillis());
+
+	}
+
+	void put(K key, V value) {
+
+		String path = keyPath.getPath(key);
+
+		segmentFor(path).put(key, path, new CacheEntry<V>(value, System.currentTimeMillis() + ttlMillis));
+
+	}
+
+	/**
+	 * Removes every entry for paths at, above or below any of the changed
+	 * paths.
+	 */
+	void invalidate(Collection<String> changedPaths) {
+
+		Set<String> paths = new HashSet<String>();
+
+		for (String changed : changedPaths) {
+
+			for (String path = changed; !path.isEmpty(); path = getParent(path)) {
+
+				if (index.containsKey(path)) {
+
+					paths.add(path);
+
+				}
+
+			}
+
+			paths.addAll(index.subMap(changed + "/", changed + DESCENDANTS_END).keySet());
+
+		}
+
+		for (String path : paths) {
+
+			segmentFor(path).removePath(path);
+
+		}
+
+	}
+
+	void clear() {
+
+		for (Segment segment : segments) {
+
+			segment.clear();
+
+		}
+
+	}
+
+	int size() {
+
+		int size = 0;
+
+		for (Segment segment : segments) {
+
+			size += segment.size();
+
+		}
+
+		return size;
+
+	}
+
+	/**
+	 * A change is related to a page if it is the page itself, something
+	 * inside the page (e.g. its jcr:content) or one of its ancestors.
+	 */
+	static boolean isRelatedPath(String pagePath, String changedPath) {
+
+		return isSameOrDescendant(changedPath, pagePath) || isSameOrDescendant(pagePath, changedPath);
+
+	}
+
+	private static boolean isSameOrDescendant(String path, String ancestor) {
+
+		return path.startsWith(ancestor)
+				&& (path.length() == ancestor.length() || path.charAt(ancestor.length()) == '/');
+
+	}
+
+	static String getParent(String path) {
+
+		int slash = path.lastIndexOf('/');
+		return slash <= 0 ? "" : path.substring(0, slash);
+
+	}
+
+	/**
+	 * Every key of a path lives in the same segment, so the index entry of a
+	 * path is only ever changed under that segment's lock.
+	 */
+	private Segment segmentFor(String path) {
+
+		int hash = path.hashCode();
+		return segments.get(((hash ^ (hash >>> 16)) & 0x7fffffff) % segments.size());
+
+	}
+
+	private final class Segment {
+
+		private final Map<K, CacheEntry<V>> entries;
+
+		Segment(final int maxEntries) {
+
+			this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+
+					if (size() <= maxEntries) {
+
+						return false;
+
+					}
+
+					unindex(eldest.getKey());
+					return true;
+
+				}
+
+			};
+
+		}
+
+		synchronized V get(K key, long now) {
+
+			CacheEntry<V> entry = entries.get(key);
+
+			if (entry == null) {
+
+				return null;
+
+			}
+
+			if (entry.isExpired(now)) {
+
+				entries.remove(key);
+				unindex(key);
+				return null;
+
+			}
+
+			return entry.value;
+
+		}
+
+		synchronized void put(K key, String path, CacheEntry<V> entry) {
+
+			if (entries.put(key, entry) == null) {
+
+				Set<K> keys = index.get(path);
+
+				if (keys == null) {
+
+					keys = new HashSet<K>(4);
+					index.put(path, keys);
+
+				}
+
+				keys.add(key);
+
+			}
+
+		}
+
+		synchronized void removePath(String path) {
+
+			Set<K> keys = index.remove(path);
+
+			if (keys != null) {
+
+				entries.keySet().removeAll(keys);
+
+			}
+
+		}
+
+		synchronized void clear() {
+
+			Iterator<K> keys = entries.keySet().iterator();
+
+			while (keys.hasNext()) {
+
+				unindex(keys.next());
+				keys.remove();
+
+			}
+
+		}
+
+		synchronized int size() {
+
+			return entries.size();
+
+		}
+
+		private void unindex(K key) {
+
+			String path = keyPath.getPath(key);
+			Set<K> keys = index.get(path);
+
+			if (keys != null && keys.remove(key) && keys.isEmpty()) {
+
+				index.remove(path);
+
+			}
+
+		}
+
+	}
+
+	private static final class CacheEntry<V> {
+
+		private final V value;
+		private final long expires;
+
+		CacheEntry(V value, long expires) {
+
+			this.value = value;
+			this.expires = expires;
+
+		}
+
+		boolean isExpired(long now) {
+
+			return now >= expires;
+
+		}
+
+	}
+
+}
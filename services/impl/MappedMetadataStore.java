@@ -0,0 +1,932 @@
+package org.fhcrc.www.core.services.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.fhcrc.www.core.MetadataProperty;
+
+/**
+ * A metadata store in a memory-mapped file, so cached metadata survives a
+ * restart and is kept off the heap. The file has three regions:
+ *
+ * header: magic, format version, slot count, data capacity, write position,
+ *         live records, stale bytes, used slots, property table fingerprint
+ * index:  a fixed number of 40 byte slots, open addressed by a 64 bit hash
+ *         of the page path, extension and host: hash, lastModified, stored
+ *         at, record offset, record length, site fingerprint
+ * data:   records appended one after the other, each the page path and host
+ *         followed by its activation snapshot (see SocialMetadataSnapshot),
+ *         with known tag names written as one byte
+ *
+ * A record is only served for the lastModified time and site profile it
+ * was stored with and within the time to live, so a page edited, or a site
+ * reconfigured, while the instance was down is never served stale. Replaced and invalidated records stay in the data
+ * region until it fills up, when the live records are compacted to the
+ * front of it and the index is rebuilt. Besides the mapping, the heap only
+ * holds the page path of each live record and a sorted index from page
+ * path to slots, read from the file when it is opened, so invalidation
+ * finds the records of a change the way LruCache does, without decoding
+ * any of them.
+ *
+ * A record is written before the slot that points to it, so a crash part
+ * way through a write leaves at worst an unreferenced record. A file with a
+ * different format or size is reset when it is opened. So is a file
+ * written by a build with a different list of MetadataProperty constants,
+ * since tag names are stored as their position in that list.
+ */
+final class MappedMetadataStore {
+
+	private static final int MAGIC = 0x534d4431;
+	private static final int FORMAT_VERSION = 3;
+
+	private static final int MAGIC_OFFSET = 0;
+	private static final int VERSION_OFFSET = 4;
+	private static final int SLOT_COUNT_OFFSET = 8;
+	private static final int DATA_CAPACITY_OFFSET = 12;
+	private static final int WRITE_POSITION_OFFSET = 16;
+	private static final int LIVE_RECORDS_OFFSET = 20;
+	private static final int STALE_BYTES_OFFSET = 24;
+	private static final int USED_SLOTS_OFFSET = 28;
+	private static final int PROPERTY_TABLE_OFFSET = 32;
+	private static final int HEADER_BYTES = 64;
+
+	private static final int SLOT_HASH = 0;
+	private static final int SLOT_LAST_MODIFIED = 8;
+	private static final int SLOT_STORED_AT = 16;
+	private static final int SLOT_OFFSET = 24;
+	private static final int SLOT_LENGTH = 28;
+	private static final int SLOT_SITE = 32;
+	private static final int SLOT_BYTES = 40;
+
+	/* Record offsets are never 0, since the header comes first */
+	private static final int EMPTY = 0;
+	private static final int DELETED = -1;
+
+	/* Tag names that are not known properties are written out in full */
+	private static final int LITERAL = 0;
+	private static final MetadataProperty[] PROPERTIES = MetadataProperty.values();
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private static final long PROPERTY_TABLE = fingerprint(PROPERTIES);
+
+	/* Null once the store is closed */
+	private MappedByteBuffer buffer;
+	private final int slotCount;
+	private final int dataStart;
+	private final int capacity;
+	private final long ttlMillis;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/* The page path of the record in each slot, and the slots of each page path; both guarded by the lock */
+	private final String[] slotPaths;
+	private final NavigableMap<String, Set<Integer>> index = new TreeMap<String, Set<Integer>>();
+
+	/**
+	 * Opens the store, keeping its records if the file has the same format
+	 * and size, and resetting it otherwise.
+	 * @param slots the number of index slots, rounded up to a power of two;
+	 * at most three quarters of them are used
+	 * @param dataBytes the size of the data region
+	 */
+	MappedMetadataStore(File file, int slots, int dataBytes, long ttlMillis) throws IOException {
+
+		this.slotCount = Integer.highestOneBit(Math.max(2, slots) - 1) << 1;
+		this.dataStart = HEADER_BYTES + slotCount * SLOT_BYTES;
+		this.slotPaths = new String[slotCount];
+		this.ttlMillis = ttlMillis;
+
+		long size = (long) dataStart + dataBytes;
+
+		if (size > Integer.MAX_VALUE) {
+
+			throw new IllegalArgumentException("The metadata store cannot be larger than 2 GB");
+
+		}
+
+		this.capacity = (int) size;
+
+		File directory = file.getParentFile();
+
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+
+			throw new IOException("Could not create " + directory);
+
+		}
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+
+			boolean reset = raf.length() != size;
+
+			if (reset) {
+
+				raf.setLength(size);
+
+			}
+
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+			if (reset || !hasCurrentHeader()) {
+
+				clear();
+
+			} else {
+
+				loadIndex();
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * @param host the server name the snapshot was built for
+	 * @param site the fingerprint of the page's site profile
+	 * @return the snapshot stored for this version of the page, or null
+	 */
+	String[] get(String path, long lastModified, String extension, String host, long site) {
+
+		long hash = hash(path, extension, host);
+
+		lock.readLock().lock();
+
+		try {
+
+			if (buffer == null) {
+
+				return null;
+
+			}
+
+			int slot = findSlot(hash, path, host);
+
+			if (slot < 0 || buffer.getLong(slot + SLOT_LAST_MODIFIED) != lastModified || buffer.getLong(slot + SLOT_SITE) != site
+					|| isExpired(slot, System.currentTimeMillis())) {
+
+				return null;
+
+			}
+
+			String[] record = readRecord(buffer.getInt(slot + SLOT_OFFSET), buffer.getInt(slot + SLOT_LENGTH));
+			return record == null ? null : Arrays.copyOfRange(record, 2, record.length);
+
+		} finally {
+
+			lock.readLock().unlock();
+
+		}
+
+	}
+
+	/**
+	 * Stores the snapshot of a page, replacing any older version of it.
+	 * @param host the server name the snapshot was built for
+	 * @param site the fingerprint of the site profile the snapshot was built with
+	 * @return false if there was no room for it, even after compaction
+	 */
+	boolean put(String path, long lastModified, String extension, String host, long site, String[] snapshot) {
+
+		long hash = hash(path, extension, host);
+		byte[] record = encode(path, host, snapshot);
+
+		lock.writeLock().lock();
+
+		try {
+
+			if (buffer == null) {
+
+				return false;
+
+			}
+
+			if (!hasRoom(record.length)) {
+
+				compact();
+
+				if (!hasRoom(record.length)) {
+
+					return false;
+
+				}
+
+			}
+
+			int slot = findSlot(hash, path, host);
+
+			if (slot >= 0) {
+
+				release(slot);
+
+			}
+
+			slot = findFreeSlot(hash);
+
+			if (buffer.getInt(slot + SLOT_OFFSET) == EMPTY) {
+
+				setHeader(USED_SLOTS_OFFSET, getHeader(USED_SLOTS_OFFSET) + 1);
+
+			}
+
+			int offset = getHeader(WRITE_POSITION_OFFSET);
+
+			writeBytes(offset, record);
+			setHeader(WRITE_POSITION_OFFSET, offset + record.length);
+			writeSlot(slot, hash, lastModified, System.currentTimeMillis(), offset, record.length, site);
+			setHeader(LIVE_RECORDS_OFFSET, getHeader(LIVE_RECORDS_OFFSET) + 1);
+			index(slot, path);
+
+			return true;
+
+		} finally {
+
+			lock.writeLock().unlock();
+
+		}
+
+	}
+
+	/**
+	 * Removes every record for pages at, above or below any of the paths.
+	 * The ancestors of each path are looked up one by one in the path index
+	 * and its descendants are one range of it, so no record is read.
+	 */
+	void invalidate(Collection<String> paths) {
+
+		if (paths.isEmpty()) {
+
+			return;
+
+		}
+
+		lock.writeLock().lock();
+
+		try {
+
+			if (buffer == null) {
+
+				return;
+
+			}
+
+			Set<Integer> slots = new HashSet<Integer>();
+
+			for (String changed : paths) {
+
+				for (String path = changed; !path.isEmpty(); path = LruCache.getParent(path)) {
+
+					Set<Integer> pathSlots = index.get(path);
+
+					if (pathSlots != null) {
+
+						slots.addAll(pathSlots);
+
+					}
+
+				}
+
+				for (Set<Integer> pathSlots : index.subMap(changed + "/", changed + LruCache.DESCENDANTS_END).values()) {
+
+					slots.addAll(pathSlots);
+
+				}
+
+			}
+
+			for (int slot : slots) {
+
+				release(slot);
+
+			}
+
+		} finally {
+
+			lock.writeLock().unlock();
+
+		}
+
+	}
+
+	/**
+	 * Removes every record.
+	 */
+	void clear() {
+
+		lock.writeLock().lock();
+
+		try {
+
+			if (buffer == null) {
+
+				return;
+
+			}
+
+			for (int i = HEADER_BYTES; i < dataStart; i += 8) {
+
+				buffer.putLong(i, 0L);
+
+			}
+
+			Arrays.fill(slotPaths, null);
+			index.clear();
+
+			buffer.putInt(MAGIC_OFFSET, MAGIC);
+			buffer.putInt(VERSION_OFFSET, FORMAT_VERSION);
+			buffer.putInt(SLOT_COUNT_OFFSET, slotCount);
+			buffer.putInt(DATA_CAPACITY_OFFSET, capacity - dataStart);
+			setHeader(WRITE_POSITION_OFFSET, dataStart);
+			setHeader(LIVE_RECORDS_OFFSET, 0);
+			setHeader(STALE_BYTES_OFFSET, 0);
+			setHeader(USED_SLOTS_OFFSET, 0);
+			buffer.putLong(PROPERTY_TABLE_OFFSET, PROPERTY_TABLE);
+
+		} finally {
+
+			lock.writeLock().unlock();
+
+		}
+
+	}
+
+	/**
+	 * Writes the mapped pages out to the file.
+	 */
+	void flush() {
+
+		lock.writeLock().lock();
+
+		try {
+
+			if (buffer != null) {
+
+				buffer.force();
+
+			}
+
+		} finally {
+
+			lock.writeLock().unlock();
+
+		}
+
+	}
+
+	/**
+	 * Writes the mapped pages out and lets go of the mapping. Waits for
+	 * reads and writes in progress; any that come later find nothing and
+	 * store nothing, so the file can be opened again straight away. The
+	 * mapping itself is released when the buffer is garbage collected.
+	 */
+	void close() {
+
+		lock.writeLock().lock();
+
+		try {
+
+			if (buffer != null) {
+
+				buffer.force();
+				buffer = null;
+
+			}
+
+		} finally {
+
+			lock.writeLock().unlock();
+
+		}
+
+	}
+
+	int getLiveRecords() {
+
+		lock.readLock().lock();
+
+		try {
+
+			return buffer == null ? 0 : getHeader(LIVE_RECORDS_OFFSET);
+
+		} finally {
+
+			lock.readLock().unlock();
+
+		}
+
+	}
+
+	private boolean hasCurrentHeader() {
+
+		return buffer.getInt(MAGIC_OFFSET) == MAGIC
+				&& buffer.getInt(VERSION_OFFSET) == FORMAT_VERSION
+				&& buffer.getInt(SLOT_COUNT_OFFSET) == slotCount
+				&& buffer.getInt(DATA_CAPACITY_OFFSET) == capacity - dataStart
+				&& getHeader(WRITE_POSITION_OFFSET) >= dataStart
+				&& getHeader(WRITE_POSITION_OFFSET) <= capacity
+				&& buffer.getLong(PROPERTY_TABLE_OFFSET) == PROPERTY_TABLE;
+
+	}
+
+	private boolean hasRoom(int recordLength) {
+
+		// Deleted slots still lengthen probe sequences, so they count until compaction
+		return getHeader(USED_SLOTS_OFFSET) < slotCount / 4 * 3
+				&& capacity - getHeader(WRITE_POSITION_OFFSET) >= recordLength;
+
+	}
+
+	/**
+	 * Moves the live, unexpired records to the front of the data region in
+	 * their current order, so every record only ever moves towards the
+	 * start, and rebuilds the index without the deleted slots.
+	 */
+	private void compact() {
+
+		long now = System.currentTimeMillis();
+		int live = 0;
+		long[][] slots = new long[getHeader(LIVE_RECORDS_OFFSET)][];
+
+		for (int slot = HEADER_BYTES; slot < dataStart && live < slots.length; slot += SLOT_BYTES) {
+
+			if (buffer.getInt(slot + SLOT_OFFSET) > EMPTY && !isExpired(slot, now)) {
+
+				slots[live++] = new long[] {
+						buffer.getLong(slot + SLOT_HASH),
+						buffer.getLong(slot + SLOT_LAST_MODIFIED),
+						buffer.getLong(slot + SLOT_STORED_AT),
+						buffer.getInt(slot + SLOT_OFFSET),
+						buffer.getInt(slot + SLOT_LENGTH),
+						buffer.getLong(slot + SLOT_SITE),
+						slot
+				};
+
+			}
+
+		}
+
+		long[][] liveSlots = Arrays.copyOf(slots, live);
+
+		Arrays.sort(liveSlots, new Comparator<long[]>() {
+
+			@Override
+			public int compare(long[] a, long[] b) {
+
+				return Long.compare(a[3], b[3]);
+
+			}
+
+		});
+
+		for (int i = HEADER_BYTES; i < dataStart; i += 8) {
+
+			buffer.putLong(i, 0L);
+
+		}
+
+		String[] paths = slotPaths.clone();
+		Arrays.fill(slotPaths, null);
+		index.clear();
+
+		int position = dataStart;
+
+		for (long[] slot : liveSlots) {
+
+			int offset = (int) slot[3];
+			int length = (int) slot[4];
+
+			if (offset != position) {
+
+				writeBytes(position, readBytes(offset, length));
+
+			}
+
+			int free = findFreeSlot(slot[0]);
+
+			writeSlot(free, slot[0], slot[1], slot[2], position, length, slot[5]);
+			index(free, paths[slotIndex((int) slot[6])]);
+			position += length;
+
+		}
+
+		setHeader(WRITE_POSITION_OFFSET, position);
+		setHeader(LIVE_RECORDS_OFFSET, live);
+		setHeader(STALE_BYTES_OFFSET, 0);
+		setHeader(USED_SLOTS_OFFSET, live);
+
+	}
+
+	/**
+	 * @return the slot holding the record for the page and host, or -1. The
+	 * extension is part of the hash; the snapshot in the record repeats it.
+	 */
+	private int findSlot(long hash, String path, String host) {
+
+		int index = (int) (hash & (slotCount - 1));
+
+		for (int probes = 0; probes < slotCount; probes++) {
+
+			int slot = HEADER_BYTES + index * SLOT_BYTES;
+			int offset = buffer.getInt(slot + SLOT_OFFSET);
+
+			if (offset == EMPTY) {
+
+				return -1;
+
+			}
+
+			if (offset != DELETED && buffer.getLong(slot + SLOT_HASH) == hash) {
+
+				String[] key = readKey(offset, buffer.getInt(slot + SLOT_LENGTH));
+
+				if (key != null && path.equals(key[0]) && host.equals(key[1])) {
+
+					return slot;
+
+				}
+
+			}
+
+			index = (index + 1) & (slotCount - 1);
+
+		}
+
+		return -1;
+
+	}
+
+	/**
+	 * @return the first empty or deleted slot in the probe sequence of the hash
+	 */
+	private int findFreeSlot(long hash) {
+
+		int index = (int) (hash & (slotCount - 1));
+
+		while (true) {
+
+			int slot = HEADER_BYTES + index * SLOT_BYTES;
+
+			if (buffer.getInt(slot + SLOT_OFFSET) <= EMPTY) {
+
+				return slot;
+
+			}
+
+			index = (index + 1) & (slotCount - 1);
+
+		}
+
+	}
+
+	private void writeSlot(int slot, long hash, long lastModified, long storedAt, int offset, int length, long site) {
+
+		buffer.putLong(slot + SLOT_HASH, hash);
+		buffer.putLong(slot + SLOT_SITE, site);
+		buffer.putLong(slot + SLOT_LAST_MODIFIED, lastModified);
+		buffer.putLong(slot + SLOT_STORED_AT, storedAt);
+		buffer.putInt(slot + SLOT_LENGTH, length);
+		buffer.putInt(slot + SLOT_OFFSET, offset);
+
+	}
+
+	/**
+	 * Marks a slot deleted, leaving its record as stale bytes until the next compaction.
+	 */
+	private void release(int slot) {
+
+		buffer.putInt(slot + SLOT_OFFSET, DELETED);
+		setHeader(LIVE_RECORDS_OFFSET, getHeader(LIVE_RECORDS_OFFSET) - 1);
+		setHeader(STALE_BYTES_OFFSET, getHeader(STALE_BYTES_OFFSET) + buffer.getInt(slot + SLOT_LENGTH));
+
+		String path = slotPaths[slotIndex(slot)];
+
+		if (path != null) {
+
+			slotPaths[slotIndex(slot)] = null;
+
+			Set<Integer> slots = index.get(path);
+			slots.remove(slot);
+
+			if (slots.isEmpty()) {
+
+				index.remove(path);
+
+			}
+
+		}
+
+	}
+
+	private void index(int slot, String path) {
+
+		slotPaths[slotIndex(slot)] = path;
+
+		Set<Integer> slots = index.get(path);
+
+		if (slots == null) {
+
+			slots = new HashSet<Integer>();
+			index.put(path, slots);
+
+		}
+
+		slots.add(slot);
+
+	}
+
+	/**
+	 * Reads the page path of every live record into the path index when an
+	 * existing file is opened. Records that cannot be read are released.
+	 */
+	private void loadIndex() {
+
+		for (int slot = HEADER_BYTES; slot < dataStart; slot += SLOT_BYTES) {
+
+			int offset = buffer.getInt(slot + SLOT_OFFSET);
+
+			if (offset <= EMPTY) {
+
+				continue;
+
+			}
+
+			String[] key = readKey(offset, buffer.getInt(slot + SLOT_LENGTH));
+
+			if (key == null) {
+
+				release(slot);
+
+			} else {
+
+				index(slot, key[0]);
+
+			}
+
+		}
+
+	}
+
+	private static int slotIndex(int slot) {
+
+		return (slot - HEADER_BYTES) / SLOT_BYTES;
+
+	}
+
+	private boolean isExpired(int slot, long now) {
+
+		return ttlMillis > 0 && now - buffer.getLong(slot + SLOT_STORED_AT) > ttlMillis;
+
+	}
+
+	private int getHeader(int offset) {
+
+		return buffer.getInt(offset);
+
+	}
+
+	private void setHeader(int offset, int value) {
+
+		buffer.putInt(offset, value);
+
+	}
+
+	private byte[] readBytes(int offset, int length) {
+
+		byte[] bytes = new byte[length];
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset);
+		view.get(bytes);
+
+		return bytes;
+
+	}
+
+	private void writeBytes(int offset, byte[] bytes) {
+
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset);
+		view.put(bytes);
+
+	}
+
+	/**
+	 * @return the path and host a record was stored for, or null if the record is damaged
+	 */
+	private String[] readKey(int offset, int length) {
+
+		if (!isInData(offset, length)) {
+
+			return null;
+
+		}
+
+		try {
+
+			ByteBuffer view = buffer.duplicate();
+			view.position(offset).limit(offset + length);
+			view.getShort();
+
+			return new String[] { readString(view), readString(view) };
+
+		} catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+
+			return null;
+
+		}
+
+	}
+
+	/**
+	 * @return the path and host followed by the snapshot, or null if the record is damaged
+	 */
+	private String[] readRecord(int offset, int length) {
+
+		if (!isInData(offset, length)) {
+
+			return null;
+
+		}
+
+		try {
+
+			ByteBuffer view = buffer.duplicate();
+			view.position(offset).limit(offset + length);
+
+			String[] record = new String[view.getShort()];
+
+			for (int i = 0; i < record.length; i++) {
+
+				record[i] = readString(view);
+
+			}
+
+			return record;
+
+		} catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+
+			return null;
+
+		}
+
+	}
+
+	private boolean isInData(int offset, int length) {
+
+		return offset >= dataStart && length > 0 && offset <= capacity - length;
+
+	}
+
+	private static String readString(ByteBuffer view) {
+
+		int code = view.get() & 0xff;
+
+		if (code != LITERAL) {
+
+			return PROPERTIES[code - 1].getName();
+
+		}
+
+		int length = view.getInt();
+
+		if (length < 0 || length > view.remaining()) {
+
+			throw new IllegalArgumentException("Damaged record");
+
+		}
+
+		byte[] bytes = new byte[length];
+		view.get(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+
+	}
+
+	private static byte[] encode(String path, String host, String[] snapshot) {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		try {
+
+			out.writeShort(snapshot.length + 2);
+			writeString(out, path);
+			writeString(out, host);
+
+			for (String value : snapshot) {
+
+				writeString(out, value == null ? "" : value);
+
+			}
+
+		} catch (IOException e) {
+
+			// A ByteArrayOutputStream does not throw
+			throw new IllegalStateException(e);
+
+		}
+
+		return bytes.toByteArray();
+
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+
+		MetadataProperty property = MetadataProperty.forName(value);
+
+		if (property != null) {
+
+			out.writeByte(property.ordinal() + 1);
+			return;
+
+		}
+
+		byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+		out.writeByte(LITERAL);
+		out.writeInt(utf8.length);
+		out.write(utf8);
+
+	}
+
+	/**
+	 * @return a 64 bit FNV-1a hash of the property names in order, which
+	 * changes when a property is added, removed, renamed or moved
+	 */
+	private static long fingerprint(MetadataProperty[] properties) {
+
+		long hash = FNV_OFFSET_BASIS;
+
+		for (MetadataProperty property : properties) {
+
+			String name = property.getName();
+
+			for (int i = 0; i < name.length(); i++) {
+
+				hash = (hash ^ name.charAt(i)) * FNV_PRIME;
+
+			}
+
+			hash = (hash ^ '\n') * FNV_PRIME;
+
+		}
+
+		return hash;
+
+	}
+
+	/**
+	 * 64 bit FNV-1a, so two pages only share a hash by accident once in a
+	 * very long while; the path and host stored with the record settle it
+	 * when they do.
+	 */
+	private static long hash(String path, String extension, String host) {
+
+		long hash = FNV_OFFSET_BASIS;
+
+		for (int i = 0; i < path.length(); i++) {
+
+			hash = (hash ^ path.charAt(i)) * FNV_PRIME;
+
+		}
+
+		hash = (hash ^ '.') * FNV_PRIME;
+
+		if (extension != null) {
+
+			for (int i = 0; i < extension.length(); i++) {
+
+				hash = (hash ^ extension.charAt(i)) * FNV_PRIME;
+
+			}
+
+		}
+
+		hash = (hash ^ '@') * FNV_PRIME;
+
+		for (int i = 0; i < host.length(); i++) {
+
+			hash = (hash ^ host.charAt(i)) * FNV_PRIME;
+
+		}
+
+		return hash;
+
+	}
+
+}
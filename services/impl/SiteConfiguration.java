@@ -0,0 +1,89 @@
+package org.fhcrc.www.core.services.impl;
+
+import org.fhcrc.www.core.Constants;
+import org.fhcrc.www.core.SiteProfile;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One site or microsite hosted on the instance. Each factory configuration
+ * is a service holding the SiteProfile for its content root, which the
+ * SiteProfileService picks up; unset values fall back to the
+ * www.fredhutch.org settings. There is no modified method, so a changed
+ * configuration reactivates the component and the service is registered
+ * again with the new profile.
+ */
+@Component(
+		service = SiteConfiguration.class,
+		configurationPolicy = ConfigurationPolicy.REQUIRE
+)
+@Designate(ocd = SiteConfiguration.Config.class, factory = true)
+public class SiteConfiguration {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(SiteConfiguration.class);
+
+	@ObjectClassDefinition(
+			name = "Fred Hutch Social Media Site",
+			description = "Domain and social media accounts for the pages under a content root"
+	)
+	public @interface Config {
+
+		@AttributeDefinition(name = "Content root", description = "Pages at or below this path belong to the site, e.g. /content/microsite")
+		String contentRoot();
+
+		@AttributeDefinition(name = "Domain", description = "Host name used for canonical and image URLs")
+		String domain() default Constants.WWW_DOMAIN;
+
+		@AttributeDefinition(name = "Organization name", description = "Used for og:site_name")
+		String organizationName() default Constants.ORGANIZATION_NAME;
+
+		@AttributeDefinition(name = "Facebook app ID", description = "Used for fb:app_id")
+		String facebookAppId() default Constants.FACEBOOK_APP_ID;
+
+		@AttributeDefinition(name = "Facebook page", description = "Used for article:publisher")
+		String facebookUrl() default Constants.FACEBOOK_URL;
+
+		@AttributeDefinition(name = "Twitter handle", description = "Without the @, used for twitter:site and share links")
+		String twitterUserName() default Constants.TWITTER_USER_NAME;
+
+		@AttributeDefinition(name = "Locale", description = "Used for og:locale")
+		String locale() default Constants.WWW_LOCALE;
+
+		String webconsole_configurationFactory_nameHint() default "{contentRoot} ({domain})";
+
+	}
+
+	private volatile SiteProfile profile;
+
+	@Activate
+	protected void activate(Config config) {
+
+		if (config.contentRoot() == null || !config.contentRoot().startsWith("/")) {
+
+			LOGGER.error("Site configuration needs an absolute content root, got {}", config.contentRoot());
+			return;
+
+		}
+
+		profile = new SiteProfile(config.contentRoot(), config.domain(), config.organizationName(),
+				config.facebookAppId(), config.facebookUrl(), config.twitterUserName(), config.locale());
+		LOGGER.info("Configured site {} for {}", config.domain(), config.contentRoot());
+
+	}
+
+	/**
+	 * @return the site's profile, or null if the configuration is invalid
+	 */
+	public SiteProfile getProfile() {
+
+		return profile;
+
+	}
+
+}
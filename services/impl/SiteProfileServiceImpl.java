@@ -0,0 +1,84 @@
+package org.fhcrc.www.core.services.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.fhcrc.www.core.SiteProfile;
+import org.fhcrc.www.core.SiteProfiles;
+import org.fhcrc.www.core.services.SiteProfileService;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+
+/**
+ * Keeps every active SiteConfiguration and compiles a new, immutable
+ * {@link SiteProfiles} each time one is added or removed. A changed
+ * configuration reactivates its component, so it is removed and added
+ * again. Lookups read the current profiles without locking.
+ */
+@Component(service = SiteProfileService.class)
+public class SiteProfileServiceImpl implements SiteProfileService {
+
+	/* Sorted by ServiceReference, i.e. ascending ranking */
+	private final Map<ServiceReference<SiteConfiguration>, SiteProfile> sites =
+			new TreeMap<ServiceReference<SiteConfiguration>, SiteProfile>();
+
+	private volatile SiteProfiles profiles = new SiteProfiles(Collections.<SiteProfile>emptyList());
+
+	@Reference(
+			service = SiteConfiguration.class,
+			cardinality = ReferenceCardinality.MULTIPLE,
+			policy = ReferencePolicy.DYNAMIC
+	)
+	protected void bindSite(ServiceReference<SiteConfiguration> reference, SiteConfiguration site) {
+
+		if (site.getProfile() == null) {
+
+			return;
+
+		}
+
+		synchronized (sites) {
+
+			sites.put(reference, site.getProfile());
+			compile();
+
+		}
+
+	}
+
+	protected void unbindSite(ServiceReference<SiteConfiguration> reference, SiteConfiguration site) {
+
+		synchronized (sites) {
+
+			if (sites.remove(reference) != null) {
+
+				compile();
+
+			}
+
+		}
+
+	}
+
+	@Override
+	public SiteProfile getSiteProfile(String path) {
+
+		return profiles.forPath(path);
+
+	}
+
+	private void compile() {
+
+		List<SiteProfile> ranked = new ArrayList<SiteProfile>(sites.values());
+		Collections.reverse(ranked);
+		profiles = new SiteProfiles(ranked);
+
+	}
+
+}
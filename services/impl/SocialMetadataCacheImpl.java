@@ -0,0 +1,399 @@
+package org.fhcrc.www.core.services.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.fhcrc.www.core.Constants;
+import org.fhcrc.www.core.SiteProfile;
+import org.fhcrc.www.core.components.impl.SocialMetadataSnapshot;
+import org.fhcrc.www.core.metrics.SocialMetrics;
+import org.fhcrc.www.core.services.SocialMetadataCache;
+import org.fhcrc.www.core.services.SocialMetadataEntry;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the most recently used metadata maps in memory. Entries are evicted
+ * once the cache grows past its maximum size or once they are older than
+ * the configured time to live. Any change under /content also drops the
+ * entries for the pages it touches, which covers edits that do not update
+ * cq:lastModified (moves, deletes, replication of older versions). A change
+ * to the mapping configuration under /etc/map clears everything, since it
+ * can change the og:url of any page. Entries are kept per host, since
+ * og:url and the share links depend on it. Entries record the fingerprint of the
+ * site profile they were built with, so once a site's configuration
+ * changes its pages miss and are built again.
+ *
+ * Optionally, entries are also written to a memory-mapped store in the
+ * bundle's data area, which is read when an entry is not in memory. The
+ * store outlives restarts and deployments, so a restarted instance serves
+ * the metadata it had already built straight away, and it keeps the bulk
+ * of the cached metadata off the heap. It is invalidated along with the
+ * in-memory entries.
+ */
+@Component(
+		service = {SocialMetadataCache.class, ResourceChangeListener.class},
+		property = {
+				ResourceChangeListener.PATHS + "=" + Constants.INTERNAL_LINK_PREFIX,
+				ResourceChangeListener.PATHS + "=" + CanonicalURLServiceImpl.MAPPING_ROOT,
+				ResourceChangeListener.CHANGES + "=ADDED",
+				ResourceChangeListener.CHANGES + "=CHANGED",
+				ResourceChangeListener.CHANGES + "=REMOVED"
+		}
+)
+@Designate(ocd = SocialMetadataCacheImpl.Config.class)
+public class SocialMetadataCacheImpl implements SocialMetadataCache, ResourceChangeListener {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(SocialMetadataCacheImpl.class);
+
+	@ObjectClassDefinition(
+			name = "Fred Hutch Social Media Metadata Cache",
+			description = "Shares computed social media metadata between requests"
+	)
+	public @interface Config {
+
+		@AttributeDefinition(name = "Enabled", description = "Turns the metadata cache on or off")
+		boolean enabled() default true;
+
+		@AttributeDefinition(name = "Maximum entries", description = "Least recently used entries are evicted past this size")
+		int maxEntries() default 5000;
+
+		@AttributeDefinition(name = "Time to live", description = "Seconds an entry may be served before it is recomputed")
+		long ttlSeconds() default 3600;
+
+		@AttributeDefinition(name = "Persistent store", description = "Also keep entries in a memory-mapped file that survives restarts")
+		boolean persistentStore() default false;
+
+		@AttributeDefinition(name = "Persistent store entries", description = "Index slots in the persistent store; three quarters of them can be used")
+		int persistentStoreSlots() default 65536;
+
+		@AttributeDefinition(name = "Persistent store size (MB)", description = "Space for metadata in the persistent store")
+		int persistentStoreMegabytes() default 128;
+
+	}
+
+	private static final String STORE_FILE = "social-metadata.store";
+	private static final int BYTES_PER_MEGABYTE = 1024 * 1024;
+
+	private volatile boolean enabled;
+	private volatile LruCache<CacheKey, SocialMetadataEntry> entries;
+	private volatile MappedMetadataStore store;
+
+	private BundleContext bundleContext;
+
+	@Activate
+	protected void activate(BundleContext bundleContext, Config config) {
+
+		this.bundleContext = bundleContext;
+		configure(config);
+
+	}
+
+	@Modified
+	protected void configure(Config config) {
+
+		enabled = config.enabled();
+		entries = new LruCache<CacheKey, SocialMetadataEntry>(Math.max(1, config.maxEntries()), config.ttlSeconds() * 1000L,
+				CacheKey.PATH);
+		closeStore();
+
+		if (enabled && config.persistentStore()) {
+
+			store = openStore(config);
+
+		}
+
+		LOGGER.info("Social media metadata cache enabled: {}, max entries: {}, ttl: {}s, persistent store: {}",
+				enabled, config.maxEntries(), config.ttlSeconds(), store != null);
+
+	}
+
+	@Deactivate
+	protected void deactivate() {
+
+		closeStore();
+
+	}
+
+	private MappedMetadataStore openStore(Config config) {
+
+		File file = bundleContext.getDataFile(STORE_FILE);
+
+		if (file == null) {
+
+			LOGGER.warn("The framework has no data area for the persistent social media metadata store");
+			return null;
+
+		}
+
+		try {
+
+			MappedMetadataStore opened = new MappedMetadataStore(file, config.persistentStoreSlots(),
+					Math.max(1, config.persistentStoreMegabytes()) * BYTES_PER_MEGABYTE, config.ttlSeconds() * 1000L);
+			LOGGER.info("Opened the persistent social media metadata store {} with {} entries", file, opened.getLiveRecords());
+			return opened;
+
+		} catch (IOException | IllegalArgumentException e) {
+
+			LOGGER.error("Could not open the persistent social media metadata store {}", file, e);
+			return null;
+
+		}
+
+	}
+
+	/**
+	 * Closes the current store, waiting for any read or write through it, so
+	 * nothing writes through the old mapping once the file is opened again.
+	 */
+	private void closeStore() {
+
+		MappedMetadataStore closing = store;
+		store = null;
+
+		if (closing != null) {
+
+			closing.close();
+
+		}
+
+	}
+
+	@Override
+	public SocialMetadataEntry get(String pagePath, long lastModified, String extension, String host, SiteProfile site) {
+
+		if (!enabled || pagePath == null || host == null || site == null) {
+
+			return null;
+
+		}
+
+		CacheKey key = new CacheKey(pagePath, lastModified, extension, host, site.getFingerprint());
+		SocialMetadataEntry entry = entries.get(key);
+
+		if (entry == null) {
+
+			SocialMetrics.METADATA_CACHE_MISSES.increment();
+			entry = getStoredEntry(key);
+
+		} else {
+
+			SocialMetrics.METADATA_CACHE_HITS.increment();
+
+		}
+
+		return entry;
+
+	}
+
+	/**
+	 * Reads an entry from the persistent store and keeps it in memory again.
+	 */
+	private SocialMetadataEntry getStoredEntry(CacheKey key) {
+
+		MappedMetadataStore current = store;
+
+		if (current == null) {
+
+			return null;
+
+		}
+
+		Map<String, String> metadata = SocialMetadataSnapshot.read(current.get(key.path, key.lastModified, key.extension, key.host, key.site),
+				key.lastModified, key.extension);
+
+		if (metadata == null) {
+
+			SocialMetrics.PERSISTENT_CACHE_MISSES.increment();
+			return null;
+
+		}
+
+		SocialMetrics.PERSISTENT_CACHE_HITS.increment();
+
+		SocialMetadataEntry entry = new SocialMetadataEntry(metadata);
+		entries.put(key, entry);
+
+		return entry;
+
+	}
+
+	@Override
+	public void put(String pagePath, long lastModified, String extension, String host, SiteProfile site, SocialMetadataEntry value) {
+
+		if (!enabled || pagePath == null || host == null || site == null || value == null) {
+
+			return;
+
+		}
+
+		entries.put(new CacheKey(pagePath, lastModified, extension, host, site.getFingerprint()), value);
+
+		MappedMetadataStore current = store;
+
+		// An incomplete entry is still being filled in, so only a complete one is worth persisting
+		if (current != null && value.isComplete() && !current.put(pagePath, lastModified, extension, host, site.getFingerprint(),
+				SocialMetadataSnapshot.write(value.getMetadata(), lastModified, extension))) {
+
+			LOGGER.debug("The persistent social media metadata store is full, {} was only cached in memory", pagePath);
+
+		}
+
+	}
+
+	@Override
+	public void invalidate(String path) {
+
+		if (path == null) {
+
+			return;
+
+		}
+
+		invalidate(Collections.singletonList(path));
+
+	}
+
+	/**
+	 * Drops the entries for every path, looking up only the affected pages
+	 * in memory and making one pass over the persistent store.
+	 */
+	private void invalidate(List<String> paths) {
+
+		entries.invalidate(paths);
+
+		MappedMetadataStore current = store;
+
+		if (current != null) {
+
+			current.invalidate(paths);
+
+		}
+
+	}
+
+	@Override
+	public void clear() {
+
+		entries.clear();
+
+		MappedMetadataStore current = store;
+
+		if (current != null) {
+
+			current.clear();
+
+		}
+
+	}
+
+	@Override
+	public void onChange(List<ResourceChange> changes) {
+
+		List<String> paths = new ArrayList<String>(changes.size());
+
+		for (ResourceChange change : changes) {
+
+			if (CanonicalURLServiceImpl.isMappingChange(change.getPath())) {
+
+				LOGGER.debug("Mapping configuration changed at {}, clearing social media metadata", change.getPath());
+				clear();
+				return;
+
+			}
+
+			LOGGER.debug("Invalidating social media metadata for {}", change.getPath());
+			paths.add(change.getPath());
+
+		}
+
+		invalidate(paths);
+
+	}
+
+	private static final class CacheKey {
+
+		static final LruCache.KeyPath<CacheKey> PATH = new LruCache.KeyPath<CacheKey>() {
+
+			@Override
+			public String getPath(CacheKey key) {
+
+				return key.path;
+
+			}
+
+		};
+
+		private final String path;
+		private final long lastModified;
+		private final String extension;
+		private final String host;
+		private final long site;
+		private final int hash;
+
+		CacheKey(String path, long lastModified, String extension, String host, long site) {
+
+			this.path = path;
+			this.lastModified = lastModified;
+			this.extension = extension;
+			this.host = host;
+			this.site = site;
+
+			int h = path.hashCode();
+			h = 31 * h + (int) (lastModified ^ (lastModified >>> 32));
+			h = 31 * h + (extension == null ? 0 : extension.hashCode());
+			h = 31 * h + host.hashCode();
+			h = 31 * h + (int) (site ^ (site >>> 32));
+			this.hash = h;
+
+		}
+
+		@Override
+		public boolean equals(Object o) {
+
+			if (this == o) {
+
+				return true;
+
+			}
+
+			if (!(o instanceof CacheKey)) {
+
+				return false;
+
+			}
+
+			CacheKey other = (CacheKey) o;
+
+			return lastModified == other.lastModified
+					&& site == other.site
+					&& path.equals(other.path)
+					&& host.equals(other.host)
+					&& (extension == null ? other.extension == null : extension.equals(other.extension));
+
+		}
+
+		@Override
+		public int hashCode() {
+
+			return hash;
+
+		}
+
+	}
+
+}
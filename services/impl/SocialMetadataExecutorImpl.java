@@ -0,0 +1,129 @@
+package org.fhcrc.www.core.services.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.fhcrc.www.core.services.SocialMetadataExecutor;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fixed size thread pool with a bounded queue. Idle threads time out, so
+ * the pool costs nothing between batches. A task that cannot be queued, or
+ * that arrives while the pool is being replaced, runs on the caller's
+ * thread, which slows the caller down instead of losing the task.
+ */
+@Component(service = SocialMetadataExecutor.class)
+@Designate(ocd = SocialMetadataExecutorImpl.Config.class)
+public class SocialMetadataExecutorImpl implements SocialMetadataExecutor {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(SocialMetadataExecutorImpl.class);
+
+	@ObjectClassDefinition(
+			name = "Fred Hutch Social Media Metadata Threads",
+			description = "Threads shared by batch metadata builds and the cache warm-up"
+	)
+	public @interface Config {
+
+		@AttributeDefinition(name = "Threads", description = "Threads in the pool; 0 uses half of the available processors")
+		int threads() default 0;
+
+		@AttributeDefinition(name = "Queue size", description = "Tasks waiting for a thread before callers run them themselves")
+		int queueSize() default 1000;
+
+	}
+
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	private static final RejectedExecutionHandler RUN_ON_CALLER = new RejectedExecutionHandler() {
+
+		@Override
+		public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+
+			task.run();
+
+		}
+
+	};
+
+	private volatile ThreadPoolExecutor pool;
+
+	@Activate
+	@Modified
+	protected void activate(Config config) {
+
+		int threads = config.threads() > 0 ? config.threads() : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+		ThreadPoolExecutor created = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, config.queueSize())), new DaemonThreads(), RUN_ON_CALLER);
+		created.allowCoreThreadTimeOut(true);
+
+		ThreadPoolExecutor replaced = pool;
+		pool = created;
+
+		if (replaced != null) {
+
+			// Queued tasks still run; new ones go to the new pool
+			replaced.shutdown();
+
+		}
+
+		LOGGER.info("Social media metadata pool has {} threads", threads);
+
+	}
+
+	@Deactivate
+	protected void deactivate() {
+
+		ThreadPoolExecutor closing = pool;
+
+		if (closing != null) {
+
+			closing.shutdown();
+
+		}
+
+	}
+
+	@Override
+	public void execute(Runnable task) {
+
+		pool.execute(task);
+
+	}
+
+	@Override
+	public int getThreads() {
+
+		return pool.getMaximumPoolSize();
+
+	}
+
+	private static final class DaemonThreads implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable task) {
+
+			Thread thread = new Thread(task, "social-metadata-" + count.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,343 @@
+package org.fhcrc.www.core.services.impl;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.fhcrc.www.core.Constants;
+import org.fhcrc.www.core.components.impl.SocialMediaHelperImpl;
+import org.fhcrc.www.core.services.ExportResult;
+import org.fhcrc.www.core.services.SiteProfileService;
+import org.fhcrc.www.core.services.SocialMetadataEntry;
+import org.fhcrc.www.core.services.SocialMetadataExporter;
+import org.fhcrc.www.core.services.SocialMetadataProviderRegistry;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Walks a content tree on one thread and hands each page path to a
+ * fork-join pool, where the same providers as SocialMediaHelperImpl run
+ * without a request. Resource resolvers are not thread-safe, so every
+ * worker borrows one of a fixed set of service resolvers. The number of
+ * pages waiting to be processed is capped, which keeps memory bounded no
+ * matter how large the tree is; results are streamed to the output file as
+ * they complete.
+ */
+@Component(service = SocialMetadataExporter.class)
+@Designate(ocd = SocialMetadataExporterImpl.Config.class)
+public class SocialMetadataExporterImpl implements SocialMetadataExporter {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(SocialMetadataExporterImpl.class);
+
+	@ObjectClassDefinition(
+			name = "Fred Hutch Social Media Metadata Exporter",
+			description = "Exports social media metadata for a content tree as NDJSON"
+	)
+	public @interface Config {
+
+		@AttributeDefinition(name = "Parallelism", description = "Worker threads; 0 uses one per available processor")
+		int parallelism() default 0;
+
+		@AttributeDefinition(name = "Maximum pages in flight", description = "Pages queued for the workers before the tree walk waits")
+		int maxInFlight() default 1000;
+
+		@AttributeDefinition(name = "Progress interval", description = "Log progress after this many pages")
+		int progressInterval() default 10000;
+
+	}
+
+	@Reference
+	private ResourceResolverFactory resourceResolverFactory;
+
+	@Reference
+	private SocialMetadataProviderRegistry providerRegistry;
+
+	@Reference
+	private SiteProfileService siteProfileService;
+
+	private int parallelism;
+	private int maxInFlight;
+	private int progressInterval;
+
+	@Activate
+	@Modified
+	protected void activate(Config config) {
+
+		parallelism = config.parallelism() > 0 ? config.parallelism() : Runtime.getRuntime().availableProcessors();
+		maxInFlight = Math.max(parallelism, config.maxInFlight());
+		progressInterval = Math.max(1, config.progressInterval());
+
+	}
+
+	@Override
+	public ExportResult export(String rootPath, Path output) throws IOException {
+
+		long start = System.currentTimeMillis();
+		BlockingQueue<ResourceResolver> resolvers = new ArrayBlockingQueue<ResourceResolver>(parallelism);
+		ResourceResolver walker = null;
+		ForkJoinPool pool = null;
+
+		try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+
+			walker = login();
+
+			for (int i = 0; i < parallelism; i++) {
+
+				resolvers.add(login());
+
+			}
+
+			PageManager pageManager = walker.adaptTo(PageManager.class);
+			Page root = pageManager == null ? null : pageManager.getPage(rootPath);
+
+			if (root == null) {
+
+				throw new IllegalArgumentException("There is no page at " + rootPath);
+
+			}
+
+			pool = new ForkJoinPool(parallelism);
+			Export export = new Export(writer, resolvers, start);
+			walk(root, pool, export);
+			export.awaitCompletion();
+
+			ExportResult result = new ExportResult(export.pages.get(), export.errors.get(), System.currentTimeMillis() - start);
+			LOGGER.info("Exported social media metadata under {} to {}: {}", rootPath, output, result);
+			return result;
+
+		} catch (LoginException e) {
+
+			throw new IOException("Could not log in as the " + Constants.SOCIAL_METADATA_SUBSERVICE + " service user", e);
+
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new IOException("Export of " + rootPath + " was interrupted", e);
+
+		} finally {
+
+			if (pool != null) {
+
+				pool.shutdownNow();
+
+			}
+
+			if (walker != null) {
+
+				walker.close();
+
+			}
+
+			for (ResourceResolver resolver : resolvers) {
+
+				resolver.close();
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * Depth-first walk that only holds one child iterator per level.
+	 */
+	private void walk(Page root, ForkJoinPool pool, Export export) throws InterruptedException {
+
+		Deque<Iterator<Page>> levels = new ArrayDeque<Iterator<Page>>();
+		submit(root, pool, export);
+		levels.push(root.listChildren());
+
+		while (!levels.isEmpty()) {
+
+			Iterator<Page> children = levels.peek();
+
+			if (!children.hasNext()) {
+
+				levels.pop();
+				continue;
+
+			}
+
+			Page child = children.next();
+			submit(child, pool, export);
+			levels.push(child.listChildren());
+
+		}
+
+	}
+
+	private void submit(Page page, ForkJoinPool pool, final Export export) throws InterruptedException {
+
+		if (!page.hasContent()) {
+
+			return;
+
+		}
+
+		final String path = page.getPath();
+		export.inFlight.acquire();
+
+		pool.execute(new Runnable() {
+
+			@Override
+			public void run() {
+
+				try {
+
+					export.exportPage(path);
+
+				} finally {
+
+					export.inFlight.release();
+
+				}
+
+			}
+
+		});
+
+	}
+
+	private ResourceResolver login() throws LoginException {
+
+		Map<String, Object> authInfo = Collections.<String, Object>singletonMap(ResourceResolverFactory.SUBSERVICE, Constants.SOCIAL_METADATA_SUBSERVICE);
+		return resourceResolverFactory.getServiceResourceResolver(authInfo);
+
+	}
+
+	/**
+	 * State shared by the workers of one export.
+	 */
+	private final class Export {
+
+		private final Writer writer;
+		private final BlockingQueue<ResourceResolver> resolvers;
+		private final long start;
+		private final int permits = maxInFlight;
+		private final Semaphore inFlight = new Semaphore(permits);
+		private final AtomicLong pages = new AtomicLong();
+		private final AtomicLong errors = new AtomicLong();
+
+		Export(Writer writer, BlockingQueue<ResourceResolver> resolvers, long start) {
+
+			this.writer = writer;
+			this.resolvers = resolvers;
+			this.start = start;
+
+		}
+
+		void exportPage(String path) {
+
+			ResourceResolver resolver = null;
+
+			try {
+
+				resolver = resolvers.take();
+				PageManager pageManager = resolver.adaptTo(PageManager.class);
+				Page page = pageManager == null ? null : pageManager.getPage(path);
+
+				if (page == null) {
+
+					return;
+
+				}
+
+				SocialMediaHelperImpl helper = new SocialMediaHelperImpl(page, resolver, null, providerRegistry, siteProfileService);
+				String line = toJson(path, helper.getLastModified(), helper.getMetadata());
+
+				synchronized (writer) {
+
+					writer.write(line);
+					writer.write(Constants.NEWLINE);
+
+				}
+
+				long count = pages.incrementAndGet();
+
+				if (count % progressInterval == 0) {
+
+					long elapsed = Math.max(1, System.currentTimeMillis() - start);
+					LOGGER.info("Exported {} pages ({} pages/s)", count, count * 1000 / elapsed);
+
+				}
+
+			} catch (InterruptedException e) {
+
+				Thread.currentThread().interrupt();
+				errors.incrementAndGet();
+
+			} catch (IOException | RuntimeException e) {
+
+				LOGGER.warn("Could not export social media metadata for {}", path, e);
+				errors.incrementAndGet();
+
+			} finally {
+
+				if (resolver != null) {
+
+					resolvers.add(resolver);
+
+				}
+
+			}
+
+		}
+
+		/**
+		 * Waits for every submitted page to be written.
+		 */
+		void awaitCompletion() throws InterruptedException {
+
+			while (!inFlight.tryAcquire(permits, 10, TimeUnit.SECONDS)) {
+
+				LOGGER.debug("Waiting for {} pages to finish exporting", permits - inFlight.availablePermits());
+
+			}
+
+			inFlight.release(permits);
+
+		}
+
+	}
+
+	private static String toJson(String path, long lastModified, Map<String, String> metadata) throws IOException {
+
+		StringWriter line = new StringWriter(512);
+		JsonWriter json = new JsonWriter(line);
+
+		SocialMetadataEntry.writeJson(json, path, lastModified, metadata);
+		json.flush();
+
+		return line.toString();
+
+	}
+
+}
@@ -0,0 +1,131 @@
+package org.fhcrc.www.core.services.impl;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.fhcrc.www.core.Constants;
+import org.fhcrc.www.core.components.impl.SocialMediaHelperImpl;
+import org.fhcrc.www.core.components.impl.SocialMetadataSnapshot;
+import org.fhcrc.www.core.services.SocialMetadataProviderRegistry;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.replication.Preprocessor;
+import com.day.cq.replication.ReplicationAction;
+import com.day.cq.replication.ReplicationActionType;
+import com.day.cq.replication.ReplicationOptions;
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+
+/**
+ * Computes the parts of a page's social media metadata that depend only on
+ * the page itself just before it is activated, and stores them on the
+ * page's jcr:content as a snapshot, so that publish instances can read them
+ * with a single property read. The canonical URL, site settings and image
+ * details are left out: this runs on author with a service resolver and no
+ * request, so its URL mapping, site configuration and DAM are not the ones
+ * publish serves from. Failures are logged and never block replication;
+ * publish computes whatever the snapshot does not have.
+ */
+@Component(service = Preprocessor.class)
+public class SocialMetadataPreprocessor implements Preprocessor {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(SocialMetadataPreprocessor.class);
+
+	@Reference
+	private ResourceResolverFactory resourceResolverFactory;
+
+	@Reference
+	private SocialMetadataProviderRegistry providerRegistry;
+
+	@Override
+	public void preprocess(ReplicationAction action, ReplicationOptions options) {
+
+		if (action == null || action.getType() != ReplicationActionType.ACTIVATE) {
+
+			return;
+
+		}
+
+		String path = action.getPath();
+
+		if (path == null || !path.startsWith(Constants.INTERNAL_LINK_PREFIX + "/")) {
+
+			return;
+
+		}
+
+		Map<String, Object> authInfo = Collections.<String, Object>singletonMap(ResourceResolverFactory.SUBSERVICE, Constants.SOCIAL_METADATA_SUBSERVICE);
+		ResourceResolver resourceResolver = null;
+
+		try {
+
+			resourceResolver = resourceResolverFactory.getServiceResourceResolver(authInfo);
+			PageManager pageManager = resourceResolver.adaptTo(PageManager.class);
+			Page page = pageManager == null ? null : pageManager.getPage(path);
+
+			if (page == null || page.getContentResource() == null) {
+
+				return;
+
+			}
+
+			writeSnapshot(page, resourceResolver);
+
+		} catch (LoginException e) {
+
+			LOGGER.error("Could not log in as the {} service user", Constants.SOCIAL_METADATA_SUBSERVICE, e);
+
+		} catch (PersistenceException | RuntimeException e) {
+
+			LOGGER.error("Could not store social media metadata snapshot for {}", path, e);
+
+		} finally {
+
+			if (resourceResolver != null) {
+
+				resourceResolver.close();
+
+			}
+
+		}
+
+	}
+
+	private void writeSnapshot(Page page, ResourceResolver resourceResolver) throws PersistenceException {
+
+		SocialMediaHelperImpl helper = new SocialMediaHelperImpl(page, resourceResolver, null, providerRegistry, null);
+		long lastModified = helper.getLastModified();
+		String extension = helper.getExtension();
+
+		if (SocialMetadataSnapshot.isCurrent(page, lastModified)) {
+
+			LOGGER.debug("Social media metadata snapshot for {} is already current", page.getPath());
+			return;
+
+		}
+
+		ModifiableValueMap properties = page.getContentResource().adaptTo(ModifiableValueMap.class);
+
+		if (properties == null) {
+
+			LOGGER.warn("Cannot modify {} to store social media metadata snapshot", page.getPath());
+			return;
+
+		}
+
+		properties.put(Constants.PN_SOCIAL_METADATA_SNAPSHOT,
+				SocialMetadataSnapshot.writePageContent(helper.getMetadata(), lastModified, extension));
+		resourceResolver.commit();
+		LOGGER.debug("Stored social media metadata snapshot for {}", page.getPath());
+
+	}
+
+}
@@ -0,0 +1,151 @@
+package org.fhcrc.www.core.services.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.sling.api.resource.ValueMap;
+import org.fhcrc.www.core.services.SocialMetadataProvider;
+import org.fhcrc.www.core.services.SocialMetadataProviderRegistry;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps every registered SocialMetadataProvider in service ranking order
+ * and rebuilds an immutable lookup table each time one is added or removed.
+ * Lookups read the current table without locking.
+ */
+@Component(service = SocialMetadataProviderRegistry.class)
+public class SocialMetadataProviderRegistryImpl implements SocialMetadataProviderRegistry {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(SocialMetadataProviderRegistryImpl.class);
+
+	/* Sorted by ServiceReference, i.e. ascending ranking */
+	private final Map<ServiceReference<SocialMetadataProvider>, SocialMetadataProvider> providers =
+			new TreeMap<ServiceReference<SocialMetadataProvider>, SocialMetadataProvider>();
+
+	private volatile LookupTable table = new LookupTable(Collections.<SocialMetadataProvider>emptyList());
+
+	@Reference(
+			service = SocialMetadataProvider.class,
+			cardinality = ReferenceCardinality.MULTIPLE,
+			policy = ReferencePolicy.DYNAMIC
+	)
+	protected void bindProvider(ServiceReference<SocialMetadataProvider> reference, SocialMetadataProvider provider) {
+
+		synchronized (providers) {
+
+			providers.put(reference, provider);
+			compile();
+
+		}
+
+	}
+
+	protected void unbindProvider(ServiceReference<SocialMetadataProvider> reference, SocialMetadataProvider provider) {
+
+		synchronized (providers) {
+
+			providers.remove(reference);
+			compile();
+
+		}
+
+	}
+
+	@Override
+	public SocialMetadataProvider getProvider(String template, String resourceType, ValueMap properties) {
+
+		return table.lookup(template, resourceType, properties);
+
+	}
+
+	private void compile() {
+
+		List<SocialMetadataProvider> ranked = new ArrayList<SocialMetadataProvider>(providers.values());
+		Collections.reverse(ranked);
+		table = new LookupTable(ranked);
+		LOGGER.debug("Compiled social metadata provider table from {} providers", ranked.size());
+
+	}
+
+	/**
+	 * Immutable dispatch table compiled from the providers, highest ranked first.
+	 */
+	private static final class LookupTable {
+
+		private final Map<String, SocialMetadataProvider> byTemplate = new HashMap<String, SocialMetadataProvider>();
+		private final Map<String, SocialMetadataProvider> byResourceType = new HashMap<String, SocialMetadataProvider>();
+		private final List<SocialMetadataProvider> byProperty = new ArrayList<SocialMetadataProvider>();
+
+		LookupTable(List<SocialMetadataProvider> ranked) {
+
+			for (SocialMetadataProvider provider : ranked) {
+
+				for (String template : provider.getTemplates()) {
+
+					if (!byTemplate.containsKey(template)) {
+
+						byTemplate.put(template, provider);
+
+					}
+
+				}
+
+				for (String resourceType : provider.getResourceTypes()) {
+
+					if (!byResourceType.containsKey(resourceType)) {
+
+						byResourceType.put(resourceType, provider);
+
+					}
+
+				}
+
+				if (provider.getRequiredProperty() != null && !provider.getRequiredProperty().isEmpty()) {
+
+					byProperty.add(provider);
+
+				}
+
+			}
+
+		}
+
+		SocialMetadataProvider lookup(String template, String resourceType, ValueMap properties) {
+
+			SocialMetadataProvider provider = template == null ? null : byTemplate.get(template);
+
+			if (provider == null && resourceType != null) {
+
+				provider = byResourceType.get(resourceType);
+
+			}
+
+			for (int i = 0; provider == null && i < byProperty.size(); i++) {
+
+				SocialMetadataProvider candidate = byProperty.get(i);
+
+				if (!properties.get(candidate.getRequiredProperty(), "").isEmpty()) {
+
+					provider = candidate;
+
+				}
+
+			}
+
+			return provider;
+
+		}
+
+	}
+
+}
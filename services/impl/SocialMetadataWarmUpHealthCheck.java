@@ -0,0 +1,49 @@
+package org.fhcrc.www.core.services.impl;
+
+import org.apache.sling.hc.api.HealthCheck;
+import org.apache.sling.hc.api.Result;
+import org.fhcrc.www.core.services.SocialMetadataWarmer;
+import org.fhcrc.www.core.services.WarmUpResult;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * Reports WARN while the social media metadata cache is being warmed, so a
+ * load balancer or readiness probe that watches the "warmup" tag can hold
+ * traffic back until the most requested pages are cached. Once the
+ * warm-up has finished, or run out of its time budget, the check is OK and
+ * reports how far the warm-up got.
+ */
+@Component(
+		service = HealthCheck.class,
+		property = {
+				HealthCheck.NAME + "=Social Media Metadata Cache Warm-up",
+				HealthCheck.TAGS + "=warmup",
+				HealthCheck.MBEAN_NAME + "=socialMetadataWarmUp"
+		}
+)
+public class SocialMetadataWarmUpHealthCheck implements HealthCheck {
+
+	@Reference
+	private SocialMetadataWarmer warmer;
+
+	@Override
+	public Result execute() {
+
+		WarmUpResult status = warmer.getStatus();
+
+		if (warmer.isRunning()) {
+
+			return new Result(Result.Status.WARN, status == null
+					? "Ranking pages to warm"
+					: "Warming the social media metadata cache: " + status);
+
+		}
+
+		return new Result(Result.Status.OK, status == null
+				? "No warm-up has run"
+				: "Last warm-up: " + status);
+
+	}
+
+}
@@ -0,0 +1,524 @@
+package org.fhcrc.www.core.services.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.commons.scheduler.Scheduler;
+import org.fhcrc.www.core.Constants;
+import org.fhcrc.www.core.components.impl.SocialMediaHelperImpl;
+import org.fhcrc.www.core.metrics.SocialMetrics;
+import org.fhcrc.www.core.services.CanonicalURLService;
+import org.fhcrc.www.core.services.ImageMetadataService;
+import org.fhcrc.www.core.services.SiteProfileService;
+import org.fhcrc.www.core.services.SocialMetadataCache;
+import org.fhcrc.www.core.services.SocialMetadataExecutor;
+import org.fhcrc.www.core.services.SocialMetadataProviderRegistry;
+import org.fhcrc.www.core.services.SocialMetadataWarmer;
+import org.fhcrc.www.core.services.WarmUpResult;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+
+/**
+ * Warms the metadata cache when the bundle starts, which happens on every
+ * instance restart and every deployment of this bundle, and on demand from
+ * the JMX console. Pages are ranked from the end of the access logs, or
+ * taken from a list of paths, and resolved to pages on one thread. The
+ * run on start is a Sling scheduler job. A fixed number of workers, each
+ * with its own service resolver, then build the metadata of the ranked
+ * pages in order until they run out of pages or the time budget runs out.
+ * The workers run on the bundle's shared SocialMetadataExecutor, so the
+ * warm-up and large listings together never use more threads than that
+ * pool has.
+ */
+@Component(service = SocialMetadataWarmer.class)
+@Designate(ocd = SocialMetadataWarmerImpl.Config.class)
+public class SocialMetadataWarmerImpl implements SocialMetadataWarmer {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(SocialMetadataWarmerImpl.class);
+
+	private static final String SLING_HOME = "sling.home";
+	private static final String JOB_NAME = "social-metadata-warmup";
+	private static final String COMMENT = "#";
+	private static final long BYTES_PER_MEGABYTE = 1024L * 1024L;
+
+	@ObjectClassDefinition(
+			name = "Fred Hutch Social Media Metadata Cache Warm-up",
+			description = "Builds the social media metadata of the most requested pages when the bundle starts"
+	)
+	public @interface Config {
+
+		@AttributeDefinition(name = "Warm up on start", description = "Warm the cache when the bundle starts, e.g. after a restart or deployment")
+		boolean warmUpOnStart() default true;
+
+		@AttributeDefinition(name = "Access logs", description = "NCSA-style access logs to rank pages from; relative paths are resolved against sling.home")
+		String[] accessLogs() default {"logs/access.log"};
+
+		@AttributeDefinition(name = "Access log tail (MB)", description = "Only the last part of each log is read")
+		int accessLogTailMegabytes() default 64;
+
+		@AttributeDefinition(name = "Path list", description = "A file with one page or URL path per line, most important first; used instead of the access logs when set")
+		String pathList() default "";
+
+		@AttributeDefinition(name = "Content root", description = "Only pages at or below this path are warmed")
+		String contentRoot() default "/content/fredhutch";
+
+		@AttributeDefinition(name = "Maximum pages", description = "How many of the top pages to warm")
+		int maxPages() default 500;
+
+		@AttributeDefinition(name = "Time budget (seconds)", description = "Pages not reached in this time are left for requests to build")
+		int timeBudgetSeconds() default 60;
+
+		@AttributeDefinition(name = "Concurrent pages", description = "Pages built at the same time on the shared social media metadata threads; 0 or more than that pool has uses all of them")
+		int concurrentPages() default 0;
+
+	}
+
+	@Reference
+	private ResourceResolverFactory resourceResolverFactory;
+
+	@Reference
+	private SocialMetadataCache metadataCache;
+
+	@Reference
+	private CanonicalURLService canonicalURLService;
+
+	@Reference
+	private SocialMetadataProviderRegistry providerRegistry;
+
+	@Reference
+	private ImageMetadataService imageMetadataService;
+
+	@Reference
+	private SiteProfileService siteProfileService;
+
+	@Reference
+	private SocialMetadataExecutor executor;
+
+	@Reference
+	private Scheduler scheduler;
+
+	private Config config;
+	private Path slingHome;
+
+	private final AtomicBoolean running = new AtomicBoolean();
+	private volatile boolean cancelled;
+	private volatile WarmUp current;
+	private volatile WarmUpResult lastResult;
+
+	@Activate
+	protected void activate(BundleContext bundleContext, Config config) {
+
+		String home = bundleContext.getProperty(SLING_HOME);
+
+		this.slingHome = home == null ? Paths.get("") : Paths.get(home);
+		configure(config);
+		cancelled = false;
+
+		if (config.warmUpOnStart()) {
+
+			Runnable job = new Runnable() {
+
+				@Override
+				public void run() {
+
+					try {
+
+						warmUp();
+
+					} catch (IOException | IllegalStateException e) {
+
+						LOGGER.warn("Social media metadata cache was not warmed: {}", e.getMessage());
+
+					}
+
+				}
+
+			};
+
+			if (!scheduler.schedule(job, scheduler.NOW().name(JOB_NAME).canRunConcurrently(false))) {
+
+				LOGGER.warn("Could not schedule the social media metadata cache warm-up");
+
+			}
+
+		}
+
+	}
+
+	@Modified
+	protected void configure(Config config) {
+
+		this.config = config;
+
+	}
+
+	@Deactivate
+	protected void deactivate() {
+
+		// A running warm-up stops at its next page
+		cancelled = true;
+		scheduler.unschedule(JOB_NAME);
+
+	}
+
+	/**
+	 * @return how many pages to build at once, at most one per thread of the shared pool
+	 */
+	private int getConcurrentPages(Config settings) {
+
+		int threads = executor.getThreads();
+		return settings.concurrentPages() > 0 ? Math.min(settings.concurrentPages(), threads) : threads;
+
+	}
+
+	@Override
+	public WarmUpResult warmUp() throws IOException {
+
+		if (!running.compareAndSet(false, true)) {
+
+			throw new IllegalStateException("A warm-up is already running");
+
+		}
+
+		Config settings = config;
+		long start = System.currentTimeMillis();
+		long deadline = start + settings.timeBudgetSeconds() * 1000L;
+		ResourceResolver resolver = null;
+
+		try {
+
+			resolver = login();
+
+			List<String> pagePaths = getPagePaths(resolver, settings, deadline);
+			WarmUp warmUp = new WarmUp(pagePaths, start, deadline, getConcurrentPages(settings));
+			current = warmUp;
+
+			LOGGER.info("Warming the social media metadata of {} pages, {} at a time", pagePaths.size(), warmUp.workers);
+			warmUp.run();
+
+			WarmUpResult result = warmUp.getResult();
+			lastResult = result;
+			LOGGER.info("Warmed the social media metadata cache: {}", result);
+
+			return result;
+
+		} catch (LoginException e) {
+
+			throw new IOException("Could not log in as the " + Constants.SOCIAL_METADATA_SUBSERVICE + " service user", e);
+
+		} finally {
+
+			current = null;
+			running.set(false);
+
+			if (resolver != null) {
+
+				resolver.close();
+
+			}
+
+		}
+
+	}
+
+	@Override
+	public boolean isRunning() {
+
+		return running.get();
+
+	}
+
+	@Override
+	public WarmUpResult getStatus() {
+
+		WarmUp warmUp = current;
+		return warmUp == null ? lastResult : warmUp.getResult();
+
+	}
+
+	/**
+	 * @return the paths of the pages to warm, most requested first, at most
+	 * maxPages of them
+	 */
+	private List<String> getPagePaths(ResourceResolver resolver, Config settings, long deadline) throws IOException {
+
+		List<String> requestPaths = settings.pathList().isEmpty()
+				? rankAccessLogs(settings)
+				: readPathList(resolve(settings.pathList()));
+		PageManager pageManager = resolver.adaptTo(PageManager.class);
+		Set<String> pagePaths = new LinkedHashSet<String>();
+		String root = settings.contentRoot();
+
+		for (String requestPath : requestPaths) {
+
+			if (pagePaths.size() >= settings.maxPages() || System.currentTimeMillis() >= deadline || cancelled) {
+
+				break;
+
+			}
+
+			// Logs from the dispatcher or CDN have mapped URLs such as /en/news
+			Resource resource = requestPath.startsWith(root) ? resolver.getResource(requestPath) : resolver.resolve(requestPath);
+
+			if (resource == null || ResourceUtil.isNonExistingResource(resource) || pageManager == null) {
+
+				continue;
+
+			}
+
+			Page page = pageManager.getContainingPage(resource);
+
+			if (page != null && (page.getPath().equals(root) || page.getPath().startsWith(root + "/"))) {
+
+				pagePaths.add(page.getPath());
+
+			}
+
+		}
+
+		return new ArrayList<String>(pagePaths);
+
+	}
+
+	private List<String> rankAccessLogs(Config settings) throws IOException {
+
+		AccessLogRanking ranking = new AccessLogRanking();
+		long maxBytes = settings.accessLogTailMegabytes() * BYTES_PER_MEGABYTE;
+		int read = 0;
+
+		for (String accessLog : settings.accessLogs()) {
+
+			Path log = resolve(accessLog);
+
+			if (!Files.isReadable(log)) {
+
+				LOGGER.debug("Access log {} is not readable", log);
+				continue;
+
+			}
+
+			ranking.read(log, maxBytes);
+			read++;
+
+		}
+
+		if (read == 0) {
+
+			throw new IOException("None of the access logs " + String.join(", ", settings.accessLogs()) + " could be read");
+
+		}
+
+		LOGGER.debug("Ranked pages from {} access log lines", ranking.getLines());
+		return ranking.getRankedPaths();
+
+	}
+
+	private static List<String> readPathList(Path pathList) throws IOException {
+
+		List<String> paths = new ArrayList<String>();
+
+		try (BufferedReader reader = Files.newBufferedReader(pathList, StandardCharsets.UTF_8)) {
+
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+
+				line = line.trim();
+
+				if (!line.isEmpty() && !line.startsWith(COMMENT)) {
+
+					int dot = line.indexOf('.', line.lastIndexOf('/'));
+					paths.add(dot > 0 ? line.substring(0, dot) : line);
+
+				}
+
+			}
+
+		}
+
+		return paths;
+
+	}
+
+	private Path resolve(String file) {
+
+		return slingHome.resolve(file);
+
+	}
+
+	private ResourceResolver login() throws LoginException {
+
+		Map<String, Object> authInfo = Collections.<String, Object>singletonMap(ResourceResolverFactory.SUBSERVICE, Constants.SOCIAL_METADATA_SUBSERVICE);
+		return resourceResolverFactory.getServiceResourceResolver(authInfo);
+
+	}
+
+	/**
+	 * One run over the ranked pages. Workers take the next page in rank
+	 * order, so when the budget runs out the pages left over are the least
+	 * requested ones.
+	 */
+	private final class WarmUp {
+
+		private final List<String> pagePaths;
+		private final long start;
+		private final long deadline;
+		private final int workers;
+		private final AtomicInteger next = new AtomicInteger();
+		private final AtomicLong built = new AtomicLong();
+		private final AtomicLong alreadyCached = new AtomicLong();
+		private final AtomicLong errors = new AtomicLong();
+		private volatile long end;
+
+		WarmUp(List<String> pagePaths, long start, long deadline, int workers) {
+
+			this.pagePaths = pagePaths;
+			this.start = start;
+			this.deadline = deadline;
+			this.workers = Math.max(1, Math.min(workers, pagePaths.size()));
+
+		}
+
+		void run() throws LoginException {
+
+			List<ResourceResolver> resolvers = new ArrayList<ResourceResolver>(workers);
+
+			try {
+
+				for (int i = 0; i < workers; i++) {
+
+					resolvers.add(login());
+
+				}
+
+				List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>(workers);
+
+				for (final ResourceResolver resolver : resolvers) {
+
+					futures.add(CompletableFuture.runAsync(new Runnable() {
+
+						@Override
+						public void run() {
+
+							warmPages(resolver);
+
+						}
+
+					}, executor));
+
+				}
+
+				CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+
+			} finally {
+
+				end = System.currentTimeMillis();
+
+				for (ResourceResolver resolver : resolvers) {
+
+					resolver.close();
+
+				}
+
+			}
+
+		}
+
+		private void warmPages(ResourceResolver resolver) {
+
+			PageManager pageManager = resolver.adaptTo(PageManager.class);
+			int index;
+
+			while ((index = next.getAndIncrement()) < pagePaths.size()) {
+
+				if (cancelled || System.currentTimeMillis() >= deadline) {
+
+					return;
+
+				}
+
+				String path = pagePaths.get(index);
+
+				try {
+
+					Page page = pageManager == null ? null : pageManager.getPage(path);
+
+					if (page == null) {
+
+						errors.incrementAndGet();
+						continue;
+
+					}
+
+					SocialMediaHelperImpl helper = new SocialMediaHelperImpl(page, resolver, metadataCache,
+							canonicalURLService, providerRegistry, imageMetadataService, siteProfileService);
+
+					if (helper.warmUp()) {
+
+						built.incrementAndGet();
+						SocialMetrics.WARMUP_PAGES_BUILT.increment();
+
+					} else {
+
+						alreadyCached.incrementAndGet();
+
+					}
+
+				} catch (RuntimeException e) {
+
+					LOGGER.warn("Could not warm the social media metadata of {}", path, e);
+					errors.incrementAndGet();
+
+				}
+
+			}
+
+		}
+
+		WarmUpResult getResult() {
+
+			long finished = end;
+			long duration = (finished == 0L ? System.currentTimeMillis() : finished) - start;
+			long builtPages = built.get();
+			long cachedPages = alreadyCached.get();
+			long failedPages = errors.get();
+			boolean complete = finished != 0L && builtPages + cachedPages + failedPages == pagePaths.size();
+
+			return new WarmUpResult(pagePaths.size(), builtPages, cachedPages, failedPages, duration, complete);
+
+		}
+
+	}
+
+}
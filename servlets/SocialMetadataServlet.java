@@ -0,0 +1,199 @@
+package org.fhcrc.www.core.servlets;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.api.wrappers.SlingHttpServletRequestWrapper;
+import org.apache.sling.models.factory.ModelFactory;
+import org.fhcrc.www.core.Constants;
+import org.fhcrc.www.core.components.SocialMediaHelper;
+import org.fhcrc.www.core.services.SocialMetadataEntry;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Serves a page's social media metadata as JSON at page.social.json, for
+ * crawlers and apps that only need the metadata. The response carries a
+ * strong ETag and Last-Modified taken from the page's last modified time,
+ * and conditional requests are answered with 304 before any metadata is
+ * built.
+ */
+@Component(
+		service = Servlet.class,
+		property = {
+				"sling.servlet.resourceTypes=cq/Page",
+				"sling.servlet.selectors=" + Constants.SOCIAL_SELECTOR,
+				"sling.servlet.extensions=json",
+				"sling.servlet.methods=GET"
+		}
+)
+public class SocialMetadataServlet extends SlingSafeMethodsServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(SocialMetadataServlet.class);
+
+	private static final String PAGE_EXTENSION = "html";
+	private static final String[] NO_SELECTORS = new String[0];
+
+	@Reference
+	private transient ModelFactory modelFactory;
+
+	@Override
+	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+
+		PageManager pageManager = request.getResourceResolver().adaptTo(PageManager.class);
+		Page page = pageManager == null ? null : pageManager.getContainingPage(request.getResource());
+
+		if (page == null) {
+
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+
+		}
+
+		long lastModified = page.getLastModified() == null ? 0L : page.getLastModified().getTimeInMillis();
+
+		if (lastModified > 0) {
+
+			String etag = "\"" + Long.toHexString(lastModified) + "\"";
+			response.setHeader("ETag", etag);
+			response.setDateHeader("Last-Modified", lastModified);
+
+			if (isNotModified(request, etag, lastModified)) {
+
+				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+
+			}
+
+		}
+
+		// The metadata describes the HTML page, so it is built as if for page.html
+		SocialMediaHelper helper = modelFactory.createModel(new PageRequest(request), SocialMediaHelper.class);
+		Map<String, String> metadata = helper.getMetadata();
+
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+
+		JsonWriter json = new JsonWriter(response.getWriter());
+		SocialMetadataEntry.writeJson(json, page.getPath(), lastModified, metadata);
+		json.flush();
+
+		LOGGER.debug("Served social metadata for {}", page.getPath());
+
+	}
+
+	/**
+	 * If-None-Match takes precedence over If-Modified-Since, as in RFC 7232.
+	 */
+	private static boolean isNotModified(SlingHttpServletRequest request, String etag, long lastModified) {
+
+		String ifNoneMatch = request.getHeader("If-None-Match");
+
+		if (ifNoneMatch != null) {
+
+			return ifNoneMatch.trim().equals("*") || ifNoneMatch.contains(etag);
+
+		}
+
+		try {
+
+			long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+			// HTTP dates have whole seconds
+			return ifModifiedSince >= 0 && lastModified / 1000L <= ifModifiedSince / 1000L;
+
+		} catch (IllegalArgumentException e) {
+
+			return false;
+
+		}
+
+	}
+
+	/**
+	 * Presents the request as a plain page.html request, so the canonical URL
+	 * and the metadata cache entry are the same as for the rendered page.
+	 */
+	private static final class PageRequest extends SlingHttpServletRequestWrapper {
+
+		private final RequestPathInfo pathInfo;
+
+		PageRequest(SlingHttpServletRequest request) {
+
+			super(request);
+
+			final RequestPathInfo wrapped = request.getRequestPathInfo();
+
+			pathInfo = new RequestPathInfo() {
+
+				@Override
+				public String getResourcePath() {
+
+					return wrapped.getResourcePath();
+
+				}
+
+				@Override
+				public String getExtension() {
+
+					return PAGE_EXTENSION;
+
+				}
+
+				@Override
+				public String getSelectorString() {
+
+					return null;
+
+				}
+
+				@Override
+				public String[] getSelectors() {
+
+					return NO_SELECTORS;
+
+				}
+
+				@Override
+				public String getSuffix() {
+
+					return wrapped.getSuffix();
+
+				}
+
+				@Override
+				public Resource getSuffixResource() {
+
+					return wrapped.getSuffixResource();
+
+				}
+
+			};
+
+		}
+
+		@Override
+		public RequestPathInfo getRequestPathInfo() {
+
+			return pathInfo;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,106 @@
+package org.fhcrc.www.core.servlets;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.jcr.RepositoryException;
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.jackrabbit.api.security.user.Group;
+import org.apache.jackrabbit.api.security.user.User;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.fhcrc.www.core.metrics.SocialMetrics;
+import org.osgi.service.component.annotations.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Returns the social media metadata metrics as JSON, for monitoring tools
+ * that cannot read JMX. Only administrators and members of the
+ * administrators group are answered; anyone else, including anonymous
+ * requests on publish, gets a 403. The path should not be allowed through
+ * the dispatcher either.
+ */
+@Component(
+		service = Servlet.class,
+		property = {
+				"sling.servlet.paths=/bin/fredhutch/social-metrics",
+				"sling.servlet.methods=GET"
+		}
+)
+public class SocialMetricsServlet extends SlingSafeMethodsServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(SocialMetricsServlet.class);
+
+	private static final String ADMINISTRATORS = "administrators";
+
+	@Override
+	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+
+		if (!isAdministrator(request.getResourceResolver().adaptTo(User.class))) {
+
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+
+		}
+
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "no-store");
+
+		JsonWriter json = new JsonWriter(response.getWriter());
+		SocialMetrics.writeJson(json);
+		json.flush();
+
+	}
+
+	/**
+	 * @return true for the admin user and members of the administrators
+	 * group; false for anonymous and every other user
+	 */
+	private static boolean isAdministrator(User user) {
+
+		if (user == null) {
+
+			return false;
+
+		}
+
+		try {
+
+			if (user.isAdmin()) {
+
+				return true;
+
+			}
+
+			Iterator<Group> groups = user.memberOf();
+
+			while (groups.hasNext()) {
+
+				if (ADMINISTRATORS.equals(groups.next().getID())) {
+
+					return true;
+
+				}
+
+			}
+
+		} catch (RepositoryException e) {
+
+			LOGGER.warn("Could not read the groups of the user requesting social media metrics", e);
+
+		}
+
+		return false;
+
+	}
+
+}